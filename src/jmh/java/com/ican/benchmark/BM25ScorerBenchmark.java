@@ -0,0 +1,162 @@
+package com.ican.benchmark;
+
+import com.ican.utils.BM25Scorer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BM25 评分基准测试
+ *
+ * <p>对比 {@link BM25Scorer}(CJK 二元组分词 + 单遍倒排表 + 基本类型数组)与
+ * 引入该工具类之前 RerankServiceImpl.computeBM25Scores 的实现(按空白切分查询 + contains/indexOf 子串搜索)。</p>
+ *
+ * <p>注意: 旧实现对中文查询只得到一个"词", 命中率远低于新实现, 两者的结果不等价,
+ * 这里只衡量相同候选集上的评分耗时。</p>
+ *
+ * <p>运行: mvn -Pjmh test-compile exec:exec -Djmh.include=BM25ScorerBenchmark</p>
+ *
+ * @author 席崇援
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BM25ScorerBenchmark {
+
+    private static final String[] CJK_WORDS = {
+        "检索", "增强", "生成", "向量", "数据库", "分块", "教学", "设计", "论文", "摘要",
+        "模型", "融合", "排序", "知识库", "问答", "上下文", "相似度", "文档", "实验", "方法"
+    };
+
+    private static final String[] LATIN_WORDS = {
+        "RAG", "BM25", "embedding", "transformer", "Elasticsearch", "rerank", "LLM", "token"
+    };
+
+    /**
+     * 候选数(三层精排在候选 &gt;20 时启用)
+     */
+    @Param({"20", "100", "500"})
+    private int candidateCount;
+
+    /**
+     * 每个候选的近似字符数(与分块大小相近)
+     */
+    @Param({"500"})
+    private int docLength;
+
+    private String query;
+    private Map<Long, String> candidates;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        candidates = new LinkedHashMap<>(candidateCount * 2);
+        for (int i = 0; i < candidateCount; i++) {
+            candidates.put(1_000_000L + i, randomText(random, docLength));
+        }
+        query = "如何在知识库问答中用 BM25 和向量检索融合排序";
+    }
+
+    @Benchmark
+    public Map<Long, Double> bm25Scorer() {
+        return BM25Scorer.score(query, candidates);
+    }
+
+    /**
+     * 与 219025e 之前 RerankServiceImpl.computeBM25Scores 一致
+     */
+    @Benchmark
+    public Map<Long, Double> legacySubstringBm25() {
+        Map<Long, Double> scores = new HashMap<>();
+
+        String[] queryTokens = query.toLowerCase().split("\\s+");
+
+        Map<String, Integer> docFreq = new HashMap<>();
+        for (String doc : candidates.values()) {
+            String docLower = doc.toLowerCase();
+            Set<String> uniqueTokens = new HashSet<>();
+            for (String token : queryTokens) {
+                if (docLower.contains(token)) {
+                    uniqueTokens.add(token);
+                }
+            }
+            for (String token : uniqueTokens) {
+                docFreq.put(token, docFreq.getOrDefault(token, 0) + 1);
+            }
+        }
+
+        int totalDocs = candidates.size();
+
+        for (Map.Entry<Long, String> entry : candidates.entrySet()) {
+            String docLower = entry.getValue().toLowerCase();
+            double score = 0.0;
+
+            for (String token : queryTokens) {
+                if (docLower.contains(token)) {
+                    int tf = countOccurrences(docLower, token);
+                    int df = docFreq.getOrDefault(token, 1);
+                    double idf = Math.log((totalDocs - df + 0.5) / (df + 0.5) + 1.0);
+
+                    double k1 = 1.5;
+                    double b = 0.75;
+                    double avgDocLen = 500;
+                    double docLen = docLower.length();
+
+                    double tfScore = (tf * (k1 + 1)) / (tf + k1 * (1 - b + b * (docLen / avgDocLen)));
+                    score += idf * tfScore;
+                }
+            }
+
+            scores.put(entry.getKey(), score);
+        }
+
+        return scores;
+    }
+
+    private static int countOccurrences(String text, String substring) {
+        int count = 0;
+        int index = 0;
+        while ((index = text.indexOf(substring, index)) != -1) {
+            count++;
+            index += substring.length();
+        }
+        return count;
+    }
+
+    /**
+     * 中英混排文本, 约 1/5 为英文词, 夹杂标点
+     */
+    private static String randomText(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length + 16);
+        while (sb.length() < length) {
+            if (random.nextInt(5) == 0) {
+                sb.append(' ').append(LATIN_WORDS[random.nextInt(LATIN_WORDS.length)]).append(' ');
+            } else {
+                sb.append(CJK_WORDS[random.nextInt(CJK_WORDS.length)]);
+            }
+            if (random.nextInt(8) == 0) {
+                sb.append(random.nextBoolean() ? "，" : "。");
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,226 @@
+package com.ican.benchmark;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.mapping.DenseVectorSimilarity;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import co.elastic.clients.transport.rest_client.RestClientTransport;
+import com.ican.config.RAGConfig;
+import com.ican.repository.TenantRoutingVectorStore.VectorChunk;
+import com.ican.service.RankFusionService;
+import com.ican.service.RankFusionService.FusedHit;
+import com.ican.service.RankFusionService.RankedList;
+import com.ican.service.impl.RankFusionServiceImpl;
+import org.apache.http.HttpHost;
+import org.elasticsearch.client.RestClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 混合检索基准测试(需要 Elasticsearch 8.16+, 且许可证允许 rrf retriever)
+ *
+ * <p>在同一个临时索引、同一查询向量和过滤条件下对比:</p>
+ * <ul>
+ *   <li>nativeRrf: 与 HybridRetriever 相同的单请求 rrf retriever(knn + content 上的 BM25 match)</li>
+ *   <li>clientSideFusion: 旧流程, 分别发 kNN 和 match 两个请求, 再用 {@link RankFusionServiceImpl} 在 Java 中 RRF 融合</li>
+ * </ul>
+ *
+ * <p>查询向量固定, 不包含嵌入耗时(两条路径相同)。ES 地址取环境变量 ES_URL(默认 http://localhost:9200),
+ * JMH fork 出的 JVM 会继承环境变量。</p>
+ *
+ * <p>运行: ES_URL=http://localhost:9200 mvn -Pjmh test-compile exec:exec -Djmh.include=HybridRetrievalBenchmark</p>
+ *
+ * @author 席崇援
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HybridRetrievalBenchmark {
+
+    private static final String INDEX = "ican-bench-hybrid";
+    private static final String EMBEDDING_FIELD = "embedding";
+    private static final int DIMENSIONS = 128;
+    private static final int RRF_K = 60;
+    private static final String[] VOCABULARY = {
+        "检索", "向量", "分块", "教学", "设计", "论文", "摘要", "模型", "融合", "排序",
+        "retrieval", "vector", "chunk", "teaching", "paper", "model", "fusion", "ranking", "index", "query"
+    };
+
+    /**
+     * 索引中的分块数
+     */
+    @Param({"10000"})
+    private int docCount;
+
+    @Param({"10"})
+    private int topK;
+
+    private RestClient restClient;
+    private ElasticsearchClient client;
+    private RankFusionService rankFusionService;
+    private List<Float> queryVector;
+    private String queryText;
+    private Query filter;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        String url = System.getenv().getOrDefault("ES_URL", "http://localhost:9200");
+        restClient = RestClient.builder(HttpHost.create(url)).build();
+        client = new ElasticsearchClient(new RestClientTransport(restClient, new JacksonJsonpMapper()));
+        rankFusionService = new RankFusionServiceImpl(new RAGConfig());
+
+        client.indices().delete(d -> d.index(INDEX).ignoreUnavailable(true));
+        client.indices().create(c -> c
+            .index(INDEX)
+            .mappings(m -> m
+                .properties(EMBEDDING_FIELD, p -> p.denseVector(dv -> dv
+                    .dims(DIMENSIONS)
+                    .index(true)
+                    .similarity(DenseVectorSimilarity.Cosine)))
+                .properties("content", p -> p.text(t -> t))
+                .properties("metadata", p -> p.object(o -> o
+                    .properties("userId", mp -> mp.keyword(k -> k))))));
+
+        // 10 个租户均匀分布, 检索限定其中一个
+        Random random = new Random(42);
+        int batchSize = 1000;
+        for (int start = 0; start < docCount; start += batchSize) {
+            BulkRequest.Builder bulk = new BulkRequest.Builder();
+            for (int i = start; i < Math.min(start + batchSize, docCount); i++) {
+                VectorChunk chunk = new VectorChunk();
+                chunk.setId(String.valueOf(i));
+                chunk.setContent(randomText(random, 40));
+                chunk.setMetadata(Map.of("userId", String.valueOf(i % 10)));
+                chunk.setEmbedding(randomVector(random));
+                bulk.operations(op -> op.index(idx -> idx.index(INDEX).id(chunk.getId()).document(chunk)));
+            }
+            client.bulk(bulk.build());
+        }
+        client.indices().refresh(r -> r.index(INDEX));
+
+        float[] vector = randomVector(random);
+        queryVector = new ArrayList<>(vector.length);
+        for (float v : vector) {
+            queryVector.add(v);
+        }
+        queryText = randomText(random, 3);
+        filter = Query.of(q -> q.term(t -> t.field("metadata.userId").value("3")));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        client.indices().delete(d -> d.index(INDEX).ignoreUnavailable(true));
+        restClient.close();
+    }
+
+    /**
+     * 单请求: ES 原生 rrf retriever(请求结构与 HybridRetriever 一致)
+     */
+    @Benchmark
+    public List<String> nativeRrf() throws Exception {
+        SearchResponse<VectorChunk> response = client.search(s -> s
+            .index(INDEX)
+            .size(topK)
+            .source(src -> src.filter(f -> f.excludes(EMBEDDING_FIELD)))
+            .retriever(r -> r.rrf(rrf -> rrf
+                .retrievers(knn -> knn.knn(k -> k
+                    .field(EMBEDDING_FIELD)
+                    .queryVector(queryVector)
+                    .k(topK)
+                    .numCandidates((int) (1.5 * topK))
+                    .filter(filter)))
+                .retrievers(text -> text.standard(st -> st
+                    .query(q -> q.bool(b -> b
+                        .must(m -> m.match(mt -> mt.field("content").query(queryText)))
+                        .filter(filter)))))
+                .rankConstant(RRF_K)
+                .rankWindowSize(topK))),
+            VectorChunk.class);
+        return ids(response);
+    }
+
+    /**
+     * 两次请求 + Java 融合
+     */
+    @Benchmark
+    public List<FusedHit> clientSideFusion() throws Exception {
+        SearchResponse<VectorChunk> knnResponse = client.search(s -> s
+            .index(INDEX)
+            .size(topK)
+            .source(src -> src.filter(f -> f.excludes(EMBEDDING_FIELD)))
+            .knn(k -> k
+                .field(EMBEDDING_FIELD)
+                .queryVector(queryVector)
+                .k(topK)
+                .numCandidates((int) (1.5 * topK))
+                .filter(filter)),
+            VectorChunk.class);
+        SearchResponse<VectorChunk> textResponse = client.search(s -> s
+            .index(INDEX)
+            .size(topK)
+            .source(src -> src.filter(f -> f.excludes(EMBEDDING_FIELD)))
+            .query(q -> q.bool(b -> b
+                .must(m -> m.match(mt -> mt.field("content").query(queryText)))
+                .filter(filter))),
+            VectorChunk.class);
+
+        return rankFusionService.fuse(List.of(
+            rankedList("vector", knnResponse),
+            rankedList("fulltext", textResponse)), RankFusionService.FusionMethod.RRF, topK);
+    }
+
+    private static RankedList rankedList(String name, SearchResponse<VectorChunk> response) {
+        RankedList list = new RankedList(name, 1.0);
+        for (Hit<VectorChunk> hit : response.hits().hits()) {
+            list.add(hit.id(), hit.score() != null ? hit.score() : 0.0);
+        }
+        return list;
+    }
+
+    private static List<String> ids(SearchResponse<VectorChunk> response) {
+        List<String> ids = new ArrayList<>(response.hits().hits().size());
+        for (Hit<VectorChunk> hit : response.hits().hits()) {
+            ids.add(hit.id());
+        }
+        return ids;
+    }
+
+    private static String randomText(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            sb.append(VOCABULARY[random.nextInt(VOCABULARY.length)]).append(' ');
+        }
+        return sb.toString().trim();
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
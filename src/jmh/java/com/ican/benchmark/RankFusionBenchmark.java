@@ -0,0 +1,107 @@
+package com.ican.benchmark;
+
+import com.ican.config.RAGConfig;
+import com.ican.service.RankFusionService;
+import com.ican.service.RankFusionService.FusedHit;
+import com.ican.service.RankFusionService.RankedList;
+import com.ican.service.impl.RankFusionServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 排序融合基准测试
+ *
+ * <p>对比 {@link RankFusionServiceImpl}(int 槽位哈希表 + double[] 累加 + topK 堆)与
+ * 引入融合服务之前 DocumentServiceImpl 中的内联 RRF(HashMap&lt;Long, Double&gt; 累加 + 全量 stream 排序)。</p>
+ *
+ * <p>运行: mvn -Pjmh test-compile exec:exec -Djmh.include=RankFusionBenchmark</p>
+ *
+ * @author 席崇援
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankFusionBenchmark {
+
+    private static final int RRF_K = 60;
+
+    /**
+     * 每路结果数
+     */
+    @Param({"20", "200", "2000"})
+    private int listSize;
+
+    @Param({"10"})
+    private int topK;
+
+    private RankFusionService rankFusionService;
+    private List<Long> vectorIds;
+    private List<Long> fulltextIds;
+
+    @Setup
+    public void setup() {
+        rankFusionService = new RankFusionServiceImpl(new RAGConfig());
+
+        // 两路约一半的键重叠, 与混合检索中向量/全文同时命中的情况相近
+        Random random = new Random(42);
+        vectorIds = new ArrayList<>(listSize);
+        fulltextIds = new ArrayList<>(listSize);
+        for (int i = 0; i < listSize; i++) {
+            vectorIds.add(1_000_000L + random.nextInt(listSize * 2));
+            fulltextIds.add(1_000_000L + random.nextInt(listSize * 2));
+        }
+    }
+
+    /**
+     * 与 DocumentServiceImpl.hybridSearch 一致: 构建两路 RankedList(含键转换)后融合
+     */
+    @Benchmark
+    public List<FusedHit> rankFusionService() {
+        RankedList vectorList = new RankedList("vector", 1.0);
+        RankedList fulltextList = new RankedList("fulltext", 1.0);
+        for (int i = 0; i < listSize; i++) {
+            vectorList.add(String.valueOf(vectorIds.get(i)), 1.0 - (double) i / listSize);
+            fulltextList.add(String.valueOf(fulltextIds.get(i)), listSize - i);
+        }
+        return rankFusionService.fuse(List.of(vectorList, fulltextList), RankFusionService.FusionMethod.RRF, topK);
+    }
+
+    /**
+     * 基线: 融合服务引入前的内联 RRF 实现
+     */
+    @Benchmark
+    public List<Long> legacyInlineRrf() {
+        Map<Long, Double> rrfScores = new HashMap<>();
+        for (int i = 0; i < vectorIds.size(); i++) {
+            rrfScores.merge(vectorIds.get(i), 1.0 / (RRF_K + i + 1), Double::sum);
+        }
+        for (int i = 0; i < fulltextIds.size(); i++) {
+            rrfScores.merge(fulltextIds.get(i), 1.0 / (RRF_K + i + 1), Double::sum);
+        }
+        return rrfScores.entrySet().stream()
+            .sorted((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()))
+            .limit(topK)
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toList());
+    }
+}
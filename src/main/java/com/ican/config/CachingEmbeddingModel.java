@@ -0,0 +1,141 @@
+package com.ican.config;
+
+import com.ican.service.RetrievalMetricsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.text.Normalizer;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 带缓存的嵌入模型
+ * 
+ * <p>包装实际的嵌入模型，只缓存单条文本的 {@link #embed(String)}（检索问题、重排序候选）：</p>
+ * <ul>
+ *   <li>请求级缓存: 同一 HTTP 请求内多次检索同一问题只嵌入一次</li>
+ *   <li>进程级 LRU: 跨请求复用，容量有上限</li>
+ * </ul>
+ * 
+ * <p>批量嵌入（文档入库、语义分块）直接透传，避免大量分块文本挤掉问题缓存。</p>
+ * 
+ * @author 席崇援
+ */
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel {
+    
+    private static final String REQUEST_MEMO_ATTRIBUTE = CachingEmbeddingModel.class.getName() + ".memo";
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    
+    private final EmbeddingModel delegate;
+    private final RetrievalMetricsService retrievalMetricsService;
+    private final Map<String, float[]> lruCache;
+    
+    public CachingEmbeddingModel(EmbeddingModel delegate, RetrievalMetricsService retrievalMetricsService,
+                                 int maxSize) {
+        this.delegate = delegate;
+        this.retrievalMetricsService = retrievalMetricsService;
+        this.lruCache = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, float[]> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+    
+    @Override
+    public float[] embed(String text) {
+        String key = normalize(text);
+        
+        // 1. 请求级缓存
+        Map<String, float[]> memo = requestMemo();
+        if (memo != null) {
+            float[] cached = memo.get(key);
+            if (cached != null) {
+                retrievalMetricsService.increment("embedding.cache.request_hit");
+                return cached;
+            }
+        }
+        
+        // 2. 进程级 LRU
+        float[] embedding;
+        synchronized (lruCache) {
+            embedding = lruCache.get(key);
+        }
+        if (embedding != null) {
+            retrievalMetricsService.increment("embedding.cache.hit");
+        } else {
+            long start = System.currentTimeMillis();
+            embedding = delegate.embed(text);
+            retrievalMetricsService.increment("embedding.cache.miss");
+            retrievalMetricsService.record("embedding.call_ms", System.currentTimeMillis() - start);
+            synchronized (lruCache) {
+                lruCache.put(key, embedding);
+            }
+        }
+        
+        if (memo != null) {
+            memo.put(key, embedding);
+        }
+        return embedding;
+    }
+    
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+    
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+    
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+    
+    /**
+     * 预热固定问题的向量
+     */
+    public void warmUp(Collection<String> texts) {
+        for (String text : texts) {
+            try {
+                embed(text);
+            } catch (Exception e) {
+                log.warn("预热问题向量失败: text={}, error={}", text, e.getMessage());
+            }
+        }
+        log.info("问题向量预热完成: {} 条", texts.size());
+    }
+    
+    /**
+     * 缓存键: Unicode NFKC 归一化 + 折叠空白
+     */
+    public static String normalize(String text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(normalized.strip()).replaceAll(" ");
+    }
+    
+    @SuppressWarnings("unchecked")
+    private Map<String, float[]> requestMemo() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+        Object memo = attributes.getAttribute(REQUEST_MEMO_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (memo == null) {
+            memo = new ConcurrentHashMap<String, float[]>();
+            attributes.setAttribute(REQUEST_MEMO_ATTRIBUTE, memo, RequestAttributes.SCOPE_REQUEST);
+        }
+        return (Map<String, float[]>) memo;
+    }
+}
@@ -3,6 +3,7 @@ package com.ican.config;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.api.Advisor;
 import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.PromptChatMemoryAdvisor;
 import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
@@ -16,6 +17,9 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author 席崇援
  * @since 2024-10-08
@@ -46,11 +50,23 @@ public class ChatClientConfig {
     @Value("${advisor.memory.type:message}")
     private String memoryAdvisorType;
     
+    /**
+     * 普通聊天 ChatClient 默认顾问(默认为空: 对话历史由业务代码按 conversationId 加载)
+     */
+    @Value("${advisor.chat.default-advisors:}")
+    private List<String> chatDefaultAdvisors;
+    
+    /**
+     * RAG ChatClient 默认顾问(默认为空: 每次请求显式传入检索顾问，保证只检索一次)
+     */
+    @Value("${advisor.rag.default-advisors:}")
+    private List<String> ragDefaultAdvisors;
+    
     // ==================== ChatClient Bean 配置 ====================
     
     /**
      * 普通聊天的 ChatClient（不带 RAG）
-     * 使用 MessageChatMemoryAdvisor 自动管理对话历史
+     * 默认顾问通过 advisor.chat.default-advisors 显式开启
      */
     @Bean("normalChatClient")
     @Primary
@@ -58,7 +74,7 @@ public class ChatClientConfig {
         log.info("初始化普通聊天 ChatClient");
         
         return ChatClient.builder(openAiChatModel)
-            .defaultAdvisors(messageChatMemoryAdvisor,promptChatMemoryAdvisor,vectorStoreChatMemoryAdvisor)  // 🎯 默认使用结构化记忆顾问
+            .defaultAdvisors(resolveDefaultAdvisors(chatDefaultAdvisors, null))
             .defaultOptions(OpenAiChatOptions.builder()
                 .temperature(temperature)
                 .maxTokens(maxTokens)
@@ -69,7 +85,9 @@ public class ChatClientConfig {
     
     /**
      * RAG 聊天的 ChatClient（带向量检索增强）
-     * 使用 QuestionAnswerAdvisor 自动处理文档检索和上下文增强
+     * 
+     * <p>检索由业务代码完成并通过 PrecomputedContextAdvisor / QuestionAnswerAdvisor 按请求传入；
+     * 默认顾问(含不带用户过滤的 question-answer)需通过 advisor.rag.default-advisors 显式开启。</p>
      */
     @Bean("ragChatClient")
     public ChatClient ragChatClient() {
@@ -83,16 +101,18 @@ public class ChatClientConfig {
             .similarityThreshold(ragConfig.getRetrieval().getSimilarityThreshold())
             .build();
         
-        // 创建 QuestionAnswerAdvisor
+        // 创建 QuestionAnswerAdvisor(仅在显式开启时作为默认顾问)
         QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore)
             .searchRequest(defaultSearchRequest)
             .build();
         
         return ChatClient.builder(openAiChatModel)
-            .defaultAdvisors(messageChatMemoryAdvisor, qaAdvisor,promptChatMemoryAdvisor,vectorStoreChatMemoryAdvisor) 
+            .defaultAdvisors(resolveDefaultAdvisors(ragDefaultAdvisors, qaAdvisor))
             .defaultOptions(OpenAiChatOptions.builder()
                 .temperature(temperature)
                 .maxTokens(maxTokens)
+                // 流式响应的最后一块返回 token 用量(stream_options.include_usage)
+                .streamUsage(true)
                 .build())
             .defaultSystem("""
                 你是一个专业的AI助手，擅长基于提供的参考资料回答问题。
@@ -106,4 +126,32 @@ public class ChatClientConfig {
                 """)
             .build();
     }
+    
+    /**
+     * 按配置名称解析默认顾问
+     * 
+     * <p>可选值: message-memory / prompt-memory / vector-memory / question-answer</p>
+     */
+    private List<Advisor> resolveDefaultAdvisors(List<String> names, QuestionAnswerAdvisor qaAdvisor) {
+        List<Advisor> advisors = new ArrayList<>();
+        if (names == null) {
+            return advisors;
+        }
+        for (String name : names) {
+            switch (name.trim()) {
+                case "" -> { }
+                case "message-memory" -> advisors.add(messageChatMemoryAdvisor);
+                case "prompt-memory" -> advisors.add(promptChatMemoryAdvisor);
+                case "vector-memory" -> advisors.add(vectorStoreChatMemoryAdvisor);
+                case "question-answer" -> {
+                    if (qaAdvisor != null) {
+                        advisors.add(qaAdvisor);
+                    }
+                }
+                default -> log.warn("未知的默认顾问配置: {}", name);
+            }
+        }
+        log.info("ChatClient 默认顾问: {}", names);
+        return advisors;
+    }
 }
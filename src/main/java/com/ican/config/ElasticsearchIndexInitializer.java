@@ -6,10 +6,14 @@ import co.elastic.clients.elasticsearch._types.mapping.TextProperty;
 import co.elastic.clients.elasticsearch._types.mapping.KeywordProperty;
 import co.elastic.clients.elasticsearch._types.mapping.LongNumberProperty;
 import co.elastic.clients.elasticsearch._types.mapping.DateProperty;
+import co.elastic.clients.elasticsearch._types.mapping.IndexOptions;
+import co.elastic.clients.elasticsearch._types.mapping.IntegerNumberProperty;
 import co.elastic.clients.elasticsearch._types.mapping.TypeMapping;
-import co.elastic.clients.elasticsearch.indices.CreateIndexRequest;
 import co.elastic.clients.elasticsearch.indices.ExistsRequest;
 import co.elastic.clients.transport.endpoints.BooleanResponse;
+import com.ican.service.ChunkESService;
+import com.ican.service.DocumentESService;
+import com.ican.service.SearchIndexService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
@@ -20,7 +24,8 @@ import java.util.Map;
 
 /**
  * Elasticsearch 索引初始化器
- * 应用启动时自动创建 ican_documents 索引(如果不存在)
+ * 应用启动时按配置注册 ican_documents 和 ican_chunks 的索引模板, 别名不存在时创建 {别名}-v{时间戳},
+ * 最后对账副本数、刷新间隔和分片数(见 {@link SearchIndexService})
  * 
  * @author 席崇援
  * @since 2025-10-15
@@ -32,24 +37,49 @@ public class ElasticsearchIndexInitializer implements CommandLineRunner {
     
     private final ElasticsearchClient elasticsearchClient;
     
-    private static final String INDEX_NAME = "ican_documents";
+    private final SearchIndexService searchIndexService;
+    
+    private final FullTextIndexProperties fullTextIndexProperties;
+    
+    private static final String INDEX_NAME = DocumentESService.INDEX_NAME;
+    
+    private static final String DOCUMENT_TEMPLATE_NAME = "ican-documents-template";
+    
+    private static final String CHUNK_TEMPLATE_NAME = "ican-chunks-template";
     
     @Override
     public void run(String... args) throws Exception {
+        initDocumentIndex();
+        initChunkIndex();
         try {
-            // 检查索引是否存在
+            searchIndexService.reconcile();
+        } catch (Exception e) {
+            log.error("Elasticsearch 索引对账失败", e);
+        }
+    }
+    
+    private void initDocumentIndex() {
+        try {
+            putTemplate(DOCUMENT_TEMPLATE_NAME, INDEX_NAME, fullTextIndexProperties.getDocuments(),
+                documentMappings(fullTextIndexProperties.getDocuments().getAnalyzer()));
+            
+            // 检查索引(或别名)是否存在
             BooleanResponse exists = elasticsearchClient.indices().exists(
                 ExistsRequest.of(e -> e.index(INDEX_NAME))
             );
             
             if (exists.value()) {
                 log.info("Elasticsearch 索引已存在: {}", INDEX_NAME);
+                // 旧索引补充 kbId 映射(新增字段不需要重建索引)
+                elasticsearchClient.indices().putMapping(m -> m
+                    .index(INDEX_NAME)
+                    .properties("kbId", p -> p.long_(LongNumberProperty.of(l -> l)))
+                );
                 return;
             }
             
-            // 创建索引
-            createIndex();
-            log.info("Elasticsearch 索引创建成功: {}", INDEX_NAME);
+            // 创建版本化物理索引并挂载别名
+            searchIndexService.ensureIndex(INDEX_NAME, fullTextIndexProperties.getDocuments().getNumberOfShards());
             
         } catch (Exception e) {
             log.error("Elasticsearch 索引初始化失败: {}", INDEX_NAME, e);
@@ -57,24 +87,78 @@ public class ElasticsearchIndexInitializer implements CommandLineRunner {
         }
     }
     
+    private void initChunkIndex() {
+        try {
+            putTemplate(CHUNK_TEMPLATE_NAME, ChunkESService.INDEX_NAME, fullTextIndexProperties.getChunks(),
+                chunkMappings(fullTextIndexProperties.getChunks().getAnalyzer()));
+            
+            BooleanResponse exists = elasticsearchClient.indices().exists(
+                ExistsRequest.of(e -> e.index(ChunkESService.INDEX_NAME))
+            );
+            if (exists.value()) {
+                log.info("Elasticsearch 索引已存在: {}", ChunkESService.INDEX_NAME);
+                return;
+            }
+            searchIndexService.ensureIndex(ChunkESService.INDEX_NAME, fullTextIndexProperties.getChunks().getNumberOfShards());
+        } catch (Exception e) {
+            log.error("Elasticsearch 索引初始化失败: {}", ChunkESService.INDEX_NAME, e);
+        }
+    }
+    
     /**
-     * 创建索引并设置映射
+     * 分块索引映射: 每个分块一条记录, _id 与向量ID一致
      */
-    private void createIndex() throws Exception {
+    private TypeMapping chunkMappings(String analyzer) {
+        Map<String, Property> properties = new HashMap<>();
+        
+        // userId/documentId/kbId: keyword (只做精确过滤, 与向量索引元数据映射一致)
+        properties.put("userId", Property.of(p -> p.keyword(KeywordProperty.of(k -> k))));
+        properties.put("documentId", Property.of(p -> p.keyword(KeywordProperty.of(k -> k))));
+        properties.put("kbId", Property.of(p -> p.keyword(KeywordProperty.of(k -> k))));
+        
+        // chunkIndex: integer
+        properties.put("chunkIndex", Property.of(p -> p.integer(IntegerNumberProperty.of(i -> i))));
+        
+        // title/content: text (content 记录 offsets, 高亮直接读倒排, 不必重新分析原文)
+        properties.put("title", Property.of(p -> p.text(TextProperty.of(t -> t
+            .analyzer(analyzer)
+        ))));
+        properties.put("content", Property.of(p -> p.text(TextProperty.of(t -> t
+            .analyzer(analyzer)
+            .indexOptions(IndexOptions.Offsets)
+        ))));
+        
+        // type: keyword
+        properties.put("type", Property.of(p -> p.keyword(KeywordProperty.of(k -> k))));
+        
+        // timestamp: long
+        properties.put("timestamp", Property.of(p -> p.long_(LongNumberProperty.of(l -> l))));
+        
+        return TypeMapping.of(m -> m.properties(properties));
+    }
+    
+    /**
+     * 文档索引映射
+     */
+    private TypeMapping documentMappings(String analyzer) {
         // 构建字段映射
         Map<String, Property> properties = new HashMap<>();
         
         // userId: long
         properties.put("userId", Property.of(p -> p.long_(LongNumberProperty.of(l -> l))));
         
+        // kbId: long (知识库范围过滤)
+        properties.put("kbId", Property.of(p -> p.long_(LongNumberProperty.of(l -> l))));
+        
         // title: text (分词,用于全文搜索)
         properties.put("title", Property.of(p -> p.text(TextProperty.of(t -> t
-            .analyzer("standard")
+            .analyzer(analyzer)
         ))));
         
-        // content: text (分词,用于全文搜索)
+        // content: text (分词,用于全文搜索; 记录 offsets 供高亮使用)
         properties.put("content", Property.of(p -> p.text(TextProperty.of(t -> t
-            .analyzer("standard")
+            .analyzer(analyzer)
+            .indexOptions(IndexOptions.Offsets)
         ))));
         
         // type: keyword (不分词,用于精确匹配和聚合)
@@ -92,16 +176,25 @@ public class ElasticsearchIndexInitializer implements CommandLineRunner {
         // updateTime: date
         properties.put("updateTime", Property.of(p -> p.date(DateProperty.of(d -> d))));
         
-        // 创建索引
-        elasticsearchClient.indices().create(CreateIndexRequest.of(c -> c
-            .index(INDEX_NAME)
-            .settings(s -> s
-                .numberOfShards("1")
-                .numberOfReplicas("0")
-            )
-            .mappings(TypeMapping.of(m -> m
-                .properties(properties)
-            ))
-        ));
+        return TypeMapping.of(m -> m.properties(properties));
+    }
+    
+    /**
+     * 注册索引模板(匹配别名本身及 {别名}-v{时间戳}), 每次启动按配置覆盖
+     * 
+     * <p>模板只影响之后创建的物理索引; 副本数和刷新间隔由对账在线应用, 分片数和分词器需要 reindex 生效。</p>
+     */
+    private void putTemplate(String name, String alias, FullTextIndexProperties.IndexSettings settings,
+                             TypeMapping mappings) throws Exception {
+        elasticsearchClient.indices().putIndexTemplate(t -> t
+            .name(name)
+            .indexPatterns(alias + "*")
+            .template(tpl -> tpl
+                .settings(s -> s
+                    .numberOfShards(String.valueOf(settings.getNumberOfShards()))
+                    .numberOfReplicas(String.valueOf(settings.getNumberOfReplicas()))
+                    .refreshInterval(r -> r.time(settings.getRefreshInterval())))
+                .mappings(mappings))
+        );
     }
 }
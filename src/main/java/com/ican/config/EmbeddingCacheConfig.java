@@ -0,0 +1,61 @@
+package com.ican.config;
+
+import com.ican.service.PaperAnalysisService;
+import com.ican.service.RetrievalMetricsService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 嵌入缓存配置
+ * 
+ * <p>以 {@link CachingEmbeddingModel} 作为主 EmbeddingModel，向量存储、重排序等处注入的都是带缓存的实例。</p>
+ * 
+ * @author 席崇援
+ */
+@Slf4j
+@Configuration
+public class EmbeddingCacheConfig {
+    
+    @Value("${embedding.cache.max-size:1000}")
+    private Integer maxSize;
+    
+    @Value("${embedding.cache.warmup-enabled:true}")
+    private Boolean warmupEnabled;
+    
+    @Value("${embedding.cache.warmup-queries:}")
+    private List<String> warmupQueries;
+    
+    @Bean
+    @Primary
+    public CachingEmbeddingModel cachingEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel,
+                                                       RetrievalMetricsService retrievalMetricsService) {
+        log.info("启用嵌入缓存: maxSize={}", maxSize);
+        return new CachingEmbeddingModel(openAiEmbeddingModel, retrievalMetricsService, maxSize);
+    }
+    
+    /**
+     * 启动时预热内部固定问题
+     */
+    @Bean
+    public ApplicationRunner embeddingWarmupRunner(CachingEmbeddingModel cachingEmbeddingModel) {
+        return args -> {
+            if (!Boolean.TRUE.equals(warmupEnabled)) {
+                return;
+            }
+            List<String> queries = new ArrayList<>();
+            queries.add(PaperAnalysisService.SUMMARY_QUERY);
+            if (warmupQueries != null) {
+                warmupQueries.stream().filter(q -> q != null && !q.isBlank()).forEach(queries::add);
+            }
+            cachingEmbeddingModel.warmUp(queries);
+        };
+    }
+}
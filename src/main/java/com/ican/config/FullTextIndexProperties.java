@@ -0,0 +1,56 @@
+package com.ican.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 全文索引配置
+ * 
+ * <p>ican_documents 和 ican_chunks 均为别名, 物理索引为 {别名}-v{时间戳}, 设置来自索引模板：</p>
+ * <ul>
+ *   <li>副本数、刷新间隔: 启动时在线应用到当前物理索引</li>
+ *   <li>分片数、分词器: 需要 reindex 到新物理索引后切换别名(见 {@link com.ican.service.SearchIndexService})</li>
+ * </ul>
+ * 
+ * @author 席崇援
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "search.fulltext-index")
+public class FullTextIndexProperties {
+    
+    /**
+     * 文档级索引 ican_documents
+     */
+    private IndexSettings documents = new IndexSettings();
+    
+    /**
+     * 分块级索引 ican_chunks
+     */
+    private IndexSettings chunks = new IndexSettings();
+    
+    @Data
+    public static class IndexSettings {
+        
+        /**
+         * 分片数
+         */
+        private Integer numberOfShards = 1;
+        
+        /**
+         * 副本数
+         */
+        private Integer numberOfReplicas = 0;
+        
+        /**
+         * 刷新间隔
+         */
+        private String refreshInterval = "1s";
+        
+        /**
+         * title/content 字段分词器
+         */
+        private String analyzer = "standard";
+    }
+}
@@ -11,6 +11,10 @@ public final class MetadataKeys {
     public static final String SCORE = "score";            // 某些 VectorStore 可能返回的得分键
     public static final String DOCUMENT_ID = "documentId";
     public static final String USER_ID = "userId";
+    public static final String KB_ID = "kbId";
     public static final String CHUNK_INDEX = "chunkIndex";
+    public static final String CHUNK_ID = "chunkId";       // document_chunks 主键，已知时写入可免去引用回查
     public static final String TITLE = "title";
+    public static final String OVERLAP_LENGTH = "overlapLength"; // 与下一分块开头重叠的字符数，构建上下文时补齐
+    public static final String INDEXED_AT = "indexedAt";         // 写入 ES 的时间(毫秒)，reindex/迁移追平增量时使用
 }
@@ -0,0 +1,168 @@
+package com.ican.config;
+
+import org.springframework.ai.chat.client.ChatClientRequest;
+import org.springframework.ai.chat.client.ChatClientResponse;
+import org.springframework.ai.chat.client.advisor.api.AdvisorChain;
+import org.springframework.ai.chat.client.advisor.api.BaseAdvisor;
+import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.document.Document;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * 预检索上下文顾问
+ *
+ * <p>将业务代码已经检索、重排好的 {@link Document} 列表注入用户消息，不再访问向量库。
+ * 用于替代 "手动检索 + QuestionAnswerAdvisor 再检索一次" 的写法，保证每次 RAG 请求只检索一次。</p>
+ *
+ * <p>模板占位符: {question} 为原用户消息, {context} 为格式化后的参考资料, 其余占位符由 {@link Builder#param} 提供。
+ * 所有占位符在一次扫描中替换, 用户输入中出现的占位符文本不会被再次展开。
+ * 检索结果同时以 {@link QuestionAnswerAdvisor#RETRIEVED_DOCUMENTS} 写入顾问上下文和响应元数据，
+ * 与 QuestionAnswerAdvisor 保持一致。</p>
+ *
+ * @author 席崇援
+ */
+public class PrecomputedContextAdvisor implements BaseAdvisor {
+
+    private static final String DEFAULT_PROMPT_TEMPLATE = """
+        {question}
+
+        以下是参考资料：
+        ---------------------
+        {context}
+        ---------------------
+
+        请基于上述参考资料回答；如果参考资料中没有相关信息，请如实说明。
+        """;
+
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{(\\w+)\\}");
+
+    private final List<Document> documents;
+    private final String promptTemplate;
+    private final Function<List<Document>, String> contextFormatter;
+    private final Map<String, String> params;
+    private final int order;
+
+    private PrecomputedContextAdvisor(List<Document> documents, String promptTemplate,
+                                      Function<List<Document>, String> contextFormatter,
+                                      Map<String, String> params, int order) {
+        this.documents = documents != null ? documents : List.of();
+        this.promptTemplate = promptTemplate;
+        this.contextFormatter = contextFormatter;
+        this.params = params;
+        this.order = order;
+    }
+
+    public static Builder builder(List<Document> documents) {
+        return new Builder(documents);
+    }
+
+    @Override
+    public ChatClientRequest before(ChatClientRequest chatClientRequest, AdvisorChain advisorChain) {
+        String question = chatClientRequest.prompt().getUserMessage().getText();
+        Map<String, String> values = new HashMap<>(params);
+        values.put("question", question != null ? question : "");
+        values.put("context", contextFormatter.apply(documents));
+        String augmented = render(promptTemplate, values);
+
+        Map<String, Object> context = new HashMap<>(chatClientRequest.context());
+        context.put(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS, documents);
+
+        return chatClientRequest.mutate()
+            .prompt(chatClientRequest.prompt().augmentUserMessage(augmented))
+            .context(context)
+            .build();
+    }
+
+    /**
+     * 一次扫描替换占位符(替换结果不再参与匹配), 未知占位符原样保留
+     */
+    private static String render(String template, Map<String, String> values) {
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(template);
+        StringBuilder sb = new StringBuilder(template.length());
+        while (matcher.find()) {
+            String value = values.get(matcher.group(1));
+            matcher.appendReplacement(sb, Matcher.quoteReplacement(value != null ? value : matcher.group()));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    @Override
+    public ChatClientResponse after(ChatClientResponse chatClientResponse, AdvisorChain advisorChain) {
+        if (chatClientResponse.chatResponse() == null) {
+            return chatClientResponse;
+        }
+        ChatResponse chatResponse = ChatResponse.builder()
+            .from(chatClientResponse.chatResponse())
+            .metadata(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS, documents)
+            .build();
+        return chatClientResponse.mutate().chatResponse(chatResponse).build();
+    }
+
+    @Override
+    public int getOrder() {
+        return order;
+    }
+
+    @Override
+    public String getName() {
+        return PrecomputedContextAdvisor.class.getSimpleName();
+    }
+
+    public static class Builder {
+
+        private final List<Document> documents;
+        private String promptTemplate = DEFAULT_PROMPT_TEMPLATE;
+        private Function<List<Document>, String> contextFormatter = docs -> docs.stream()
+            .map(Document::getText)
+            .collect(Collectors.joining("\n\n"));
+        private final Map<String, String> params = new LinkedHashMap<>();
+        private int order = 0;
+
+        private Builder(List<Document> documents) {
+            this.documents = documents;
+        }
+
+        /**
+         * 提示词模板(通常包含 {question} 和 {context})
+         */
+        public Builder promptTemplate(String promptTemplate) {
+            this.promptTemplate = promptTemplate;
+            return this;
+        }
+
+        /**
+         * 参考资料格式化方式(默认按段落拼接分块文本)
+         */
+        public Builder contextFormatter(Function<List<Document>, String> contextFormatter) {
+            this.contextFormatter = contextFormatter;
+            return this;
+        }
+
+        /**
+         * 额外的模板占位符 {name}(与 {question}/{context} 同一次替换)
+         */
+        public Builder param(String name, String value) {
+            this.params.put(name, value != null ? value : "");
+            return this;
+        }
+
+        public Builder order(int order) {
+            this.order = order;
+            return this;
+        }
+
+        public PrecomputedContextAdvisor build() {
+            return new PrecomputedContextAdvisor(documents, promptTemplate, contextFormatter, Map.copyOf(params), order);
+        }
+    }
+}
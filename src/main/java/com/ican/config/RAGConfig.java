@@ -37,6 +37,21 @@ public class RAGConfig {
      */
     private HybridSearchConfig hybridSearch = new HybridSearchConfig();
     
+    /**
+     * 语义答案缓存配置
+     */
+    private AnswerCacheConfig answerCache = new AnswerCacheConfig();
+    
+    /**
+     * 检索结果缓存配置
+     */
+    private RetrievalCacheConfig retrievalCache = new RetrievalCacheConfig();
+    
+    /**
+     * 重排序配置
+     */
+    private RerankConfig rerank = new RerankConfig();
+    
     @Data
     public static class RetrievalConfig {
         /**
@@ -149,6 +164,163 @@ public class RAGConfig {
          * 全文搜索权重
          */
         private Double textWeight = 0.4;
+        
+        /**
+         * 融合方式: rrf(加权 RRF) / linear(分数归一化后加权求和)
+         */
+        private String fusionMethod = "rrf";
+        
+        /**
+         * RRF 常数 k
+         */
+        private Integer rrfK = 60;
+        
+        /**
+         * 是否使用 ES 原生 rrf retriever: kNN 与 BM25 在一次请求内召回并融合(需要 ES 8.16+ 且许可证支持 RRF)，
+         * 失败时退回客户端融合
+         */
+        private Boolean nativeRrfEnabled = false;
+        
+        /**
+         * 是否将向量精排限定在 ES 召回的候选文档内
+         */
+        private Boolean candidateRestrictionEnabled = true;
+        
+        /**
+         * 候选文档数上限，超过时不追加 documentId 过滤(退回原检索范围)
+         */
+        private Integer maxCandidateDocuments = 200;
+        
+        /**
+         * 文档搜索中向量/全文两路并行检索的截止时间(毫秒)，超时的一路不参与融合
+         */
+        private Long legTimeoutMs = 1500L;
+        
+        /**
+         * 对冲请求延迟(毫秒)：一路检索超过该时间未返回则再发起一次，0 表示不对冲
+         */
+        private Long hedgeAfterMs = 0L;
+        
+        /**
+         * 并行检索线程数
+         */
+        private Integer legThreads = 16;
+    }
+    
+    @Data
+    public static class AnswerCacheConfig {
+        /**
+         * 是否启用语义答案缓存
+         */
+        private Boolean enabled = true;
+        
+        /**
+         * 问题向量余弦相似度阈值，达到即视为同一问题
+         */
+        private Double similarityThreshold = 0.95;
+        
+        /**
+         * 每个范围(用户/文档/知识库)当前语料版本下最多缓存的问答数
+         */
+        private Integer maxEntriesPerScope = 50;
+        
+        /**
+         * 缓存过期时间(小时)
+         */
+        private Integer ttlHours = 24;
+    }
+    
+    @Data
+    public static class RetrievalCacheConfig {
+        /**
+         * 是否启用检索结果缓存(向量检索和 ES 全文检索)
+         */
+        private Boolean enabled = true;
+        
+        /**
+         * 缓存过期时间(分钟)
+         */
+        private Integer ttlMinutes = 30;
+    }
+    
+    @Data
+    public static class RerankConfig {
+        /**
+         * 评分后端: llm(大模型评分) / cross-encoder(本地 ONNX cross-encoder, 加载失败时退回 llm)
+         */
+        private String backend = "llm";
+        
+        /**
+         * 本地 cross-encoder 配置
+         */
+        private CrossEncoderConfig crossEncoder = new CrossEncoderConfig();
+        
+        /**
+         * LLM 评分方式: listwise(一次提示词为一批候选打分) / pointwise(每个候选单独调用一次)
+         */
+        private String mode = "listwise";
+        
+        /**
+         * listwise 每批候选数, 超过时拆成多个提示词
+         */
+        private Integer listwiseBatchSize = 20;
+        
+        /**
+         * 送入 LLM 的单个候选最大字符数
+         */
+        private Integer maxDocumentChars = 500;
+        
+        /**
+         * 整个重排序的截止时间(毫秒), 超时后未评分的候选保持原有顺序
+         */
+        private Long timeoutMs = 5000L;
+        
+        /**
+         * LLM 评分并发调用数(所有请求共享)
+         */
+        private Integer parallelism = 8;
+        
+        /**
+         * 是否缓存评分结果: (归一化问题, vectorId, 评分器版本) -> 分数, 命中的候选不再调用评分器
+         */
+        private Boolean scoreCacheEnabled = true;
+        
+        /**
+         * 评分缓存最大条目数(进程内 LRU)
+         */
+        private Integer scoreCacheSize = 20000;
+        
+        /**
+         * 评分器版本号, 更换聊天模型或评分提示词后递增, 使已缓存的分数失效
+         */
+        private String scorerVersion = "1";
+    }
+    
+    @Data
+    public static class CrossEncoderConfig {
+        /**
+         * ONNX 模型文件路径(如导出的 bge-reranker-base/model.onnx)
+         */
+        private String modelPath;
+        
+        /**
+         * tokenizer.json 路径(为空时使用模型同目录下的 tokenizer.json)
+         */
+        private String tokenizerPath;
+        
+        /**
+         * 问题 + 候选的最大 token 数(超出时截断候选)
+         */
+        private Integer maxLength = 512;
+        
+        /**
+         * 每次推理的 (问题, 候选) 对数
+         */
+        private Integer batchSize = 16;
+        
+        /**
+         * 推理线程数(<=0 表示 CPU 核数)
+         */
+        private Integer threads = 0;
     }
 }
-
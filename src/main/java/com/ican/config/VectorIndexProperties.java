@@ -0,0 +1,111 @@
+package com.ican.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 向量索引配置
+ * 
+ * <p>向量索引由 {@link com.ican.repository.TenantRoutingVectorStore} 直接管理：</p>
+ * <ul>
+ *   <li>共享索引: 所有普通租户共用，写入和检索均以 userId 作为 _routing</li>
+ *   <li>独享索引: 大租户(分块数超过阈值或显式配置)使用独立索引，检索成本只随自身语料增长</li>
+ * </ul>
+ * 
+ * @author 席崇援
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "search.vector-index")
+public class VectorIndexProperties {
+    
+    /**
+     * 共享向量索引名称
+     */
+    private String indexName = "spring-ai-document-index";
+    
+    /**
+     * 向量维度 (需与 embedding 模型匹配)
+     */
+    private Integer dimensions = 1536;
+    
+    /**
+     * 相似度算法: cosine / l2_norm / dot_product
+     */
+    private String similarity = "cosine";
+    
+    /**
+     * 向量字段名
+     */
+    private String embeddingField = "embedding";
+    
+    /**
+     * 共享索引分片数(创建索引时生效, 修改后通过 reindex 切换别名生效; routing 需要多分片才能缩小检索范围)
+     */
+    private Integer numberOfShards = 4;
+    
+    /**
+     * 副本数(写入索引模板, 启动时在线应用到已有索引)
+     */
+    private Integer numberOfReplicas = 0;
+    
+    /**
+     * 刷新间隔(写入索引模板, 启动时在线应用到已有索引)
+     */
+    private String refreshInterval = "1s";
+    
+    /**
+     * 是否按 userId 路由
+     */
+    private Boolean routingEnabled = true;
+    
+    /**
+     * 租户分块数超过该阈值时自动迁移到独享索引(<=0 表示不自动迁移)
+     */
+    private Long dedicatedIndexThreshold = 50000L;
+    
+    /**
+     * 租户规模检查间隔(毫秒)
+     */
+    private Long tenantSizeCheckIntervalMs = 600000L;
+    
+    /**
+     * 启动时是否在后台执行元数据映射迁移(Base62 字符串 -> keyword), 迁移完成前检索兼容旧数据
+     */
+    private Boolean migrateOnStartup = true;
+    
+    /**
+     * 迁移时每批读取/写入的分块数
+     */
+    private Integer migrationBatchSize = 500;
+    
+    /**
+     * 显式指定使用独享索引的用户
+     */
+    private List<Long> dedicatedUsers = new ArrayList<>();
+    
+    /**
+     * 独享索引名称
+     */
+    public String tenantIndexName(Long userId) {
+        return tenantIndexPrefix() + userId;
+    }
+    
+    /**
+     * 独享索引名称前缀
+     */
+    public String tenantIndexPrefix() {
+        return indexName + "-tenant-";
+    }
+    
+    /**
+     * 共享索引和所有独享索引
+     */
+    public List<String> allIndices() {
+        return List.of(indexName, tenantIndexPrefix() + "*");
+    }
+}
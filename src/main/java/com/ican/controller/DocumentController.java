@@ -10,6 +10,7 @@ import com.ican.service.CitationFormatService;
 import com.ican.service.DocumentService;
 import com.ican.service.DocumentTaskService;
 import com.ican.service.PaperAnalysisService;
+import com.ican.service.VectorPurgeService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -25,6 +26,7 @@ import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.util.UriUtils;
+import top.continew.starter.core.exception.BusinessException;
 
 import java.nio.charset.StandardCharsets;
 import java.util.List;
@@ -47,6 +49,7 @@ public class DocumentController {
     private final DocumentTaskService documentTaskService;
     private final PaperAnalysisService paperAnalysisService;
     private final CitationFormatService citationFormatService;
+    private final VectorPurgeService vectorPurgeService;
     
     /**
      * 上传文档（支持单个或批量）
@@ -143,7 +146,7 @@ public class DocumentController {
      */
     @Operation(summary = "搜索文档", description = "智能搜索：自动结合语义理解和关键词匹配，返回最相关的文档")
     @GetMapping("/search")
-    public List<DocumentSearchResultVO> searchDocuments(
+    public HybridSearchResultVO searchDocuments(
             @Parameter(description = "搜索关键词或问题") @RequestParam("query") String query,
             @Parameter(description = "返回结果数量") @RequestParam(value = "topK", defaultValue = "5") int topK) {
         
@@ -163,6 +166,24 @@ public class DocumentController {
         documentService.deleteDocument(documentId);
     }
     
+    /**
+     * 按条件清除向量和全文索引
+     * 
+     * @param documentId 文档ID（可选）
+     * @param kbId 知识库ID（可选）
+     * @return 清除结果（含删除数量）
+     */
+    @Operation(summary = "清除索引", description = "按文档/知识库直接在向量索引和全文索引上执行 delete-by-query，大文档异步执行并返回任务ID；同时清理分块映射并将文档重置为待索引")
+    @DeleteMapping("/index")
+    public PurgeResultVO purgeIndex(
+            @Parameter(description = "文档ID") @RequestParam(value = "documentId", required = false) Long documentId,
+            @Parameter(description = "知识库ID") @RequestParam(value = "kbId", required = false) Long kbId) {
+        if (documentId == null && kbId == null) {
+            throw new BusinessException("文档ID和知识库ID不能同时为空");
+        }
+        return vectorPurgeService.purgeWithRecords(StpUtil.getLoginIdAsLong(), documentId, kbId);
+    }
+    
     /**
      * 获取文档任务状态 (DP-01)
      * 
@@ -1,14 +1,20 @@
 package com.ican.controller;
 
 import cn.dev33.satoken.annotation.SaCheckLogin;
+import com.ican.model.vo.MetricStatVO;
 import com.ican.model.vo.RagChatResultVO;
 import com.ican.service.RAGService;
+import com.ican.service.RetrievalMetricsService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Map;
 
 /**
  * RAG 对话控制器
@@ -27,6 +33,7 @@ import org.springframework.web.bind.annotation.*;
 public class RAGController {
     
     private final RAGService ragService;
+    private final RetrievalMetricsService retrievalMetricsService;
     
     /**
      * RAG 问答（带引用）
@@ -40,6 +47,18 @@ public class RAGController {
         return ragService.ragChat(conversationId, query);
     }
     
+    /**
+     * RAG 问答（SSE 流式）
+     */
+    @Operation(summary = "RAG 问答(流式)", description = "检索完成后先推送 citations 事件，回答以 delta 事件增量推送，最后的 done 事件携带 token 用量")
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter ragChatStream(
+            @Parameter(description = "会话ID") @RequestParam String conversationId,
+            @Parameter(description = "用户问题") @RequestParam String query) {
+        
+        return ragService.ragChatStream(conversationId, query);
+    }
+    
     /**
      * 文档问答（带引用）
      */
@@ -52,6 +71,18 @@ public class RAGController {
         return ragService.documentChat(documentId, query);
     }
     
+    /**
+     * 文档问答（SSE 流式）
+     */
+    @Operation(summary = "文档问答(流式)", description = "限定单一文档上下文，事件顺序: citations → delta → done")
+    @PostMapping(value = "/document-chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter documentChatStream(
+            @Parameter(description = "文档ID") @RequestParam Long documentId,
+            @Parameter(description = "用户问题") @RequestParam String query) {
+        
+        return ragService.documentChatStream(documentId, query);
+    }
+    
     /**
      * 知识库问答（带引用）
      */
@@ -63,5 +94,25 @@ public class RAGController {
         
         return ragService.knowledgeBaseChat(knowledgeBaseId, query);
     }
+    
+    /**
+     * 知识库问答（SSE 流式）
+     */
+    @Operation(summary = "知识库问答(流式)", description = "在整个知识库中检索，事件顺序: citations → delta → done")
+    @PostMapping(value = "/knowledge-base-chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter knowledgeBaseChatStream(
+            @Parameter(description = "知识库ID") @RequestParam Long knowledgeBaseId,
+            @Parameter(description = "用户问题") @RequestParam String query) {
+        
+        return ragService.knowledgeBaseChatStream(knowledgeBaseId, query);
+    }
+    
+    /**
+     * 检索指标
+     */
+    @Operation(summary = "检索指标", description = "进程内统计的检索耗时、候选集规模、缓存命中等指标")
+    @GetMapping("/metrics")
+    public Map<String, MetricStatVO> metrics() {
+        return retrievalMetricsService.snapshot();
+    }
 }
-
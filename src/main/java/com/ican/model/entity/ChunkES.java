@@ -0,0 +1,79 @@
+package com.ican.model.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Elasticsearch 分块实体
+ * 用于分块级全文检索，与向量库中的分块一一对应
+ * 
+ * <p>索引名称: ican_chunks</p>
+ * <p>_id 与向量ID一致，混合检索时向量命中与关键词命中可按分块对齐</p>
+ * 
+ * @author 席崇援
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChunkES {
+    
+    /**
+     * 用户ID
+     * ES 字段类型: keyword
+     */
+    @JsonProperty("userId")
+    private Long userId;
+    
+    /**
+     * 文档ID
+     * ES 字段类型: keyword
+     */
+    @JsonProperty("documentId")
+    private Long documentId;
+    
+    /**
+     * 知识库ID（未归档为空）
+     * ES 字段类型: keyword
+     */
+    @JsonProperty("kbId")
+    private Long kbId;
+    
+    /**
+     * 分块序号
+     * ES 字段类型: integer
+     */
+    @JsonProperty("chunkIndex")
+    private Integer chunkIndex;
+    
+    /**
+     * 文档标题
+     * ES 字段类型: text (使用 standard 分词器)
+     */
+    @JsonProperty("title")
+    private String title;
+    
+    /**
+     * 文档类型
+     * ES 字段类型: keyword
+     */
+    @JsonProperty("type")
+    private String type;
+    
+    /**
+     * 分块内容
+     * ES 字段类型: text (使用 standard 分词器)
+     */
+    @JsonProperty("content")
+    private String content;
+    
+    /**
+     * 写入时间(毫秒)
+     * ES 字段类型: long
+     */
+    @JsonProperty("timestamp")
+    private Long timestamp;
+}
@@ -38,6 +38,13 @@ public class DocumentES {
     @JsonProperty("userId")
     private Long userId;
     
+    /**
+     * 知识库ID（未归档为空）
+     * ES 字段类型: long
+     */
+    @JsonProperty("kbId")
+    private Long kbId;
+    
     /**
      * 文档标题
      * ES 字段类型: text (使用 standard 分词器)
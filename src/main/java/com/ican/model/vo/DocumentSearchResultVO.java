@@ -30,6 +30,16 @@ public class DocumentSearchResultVO {
      */
     private Long documentId;
     
+    /**
+     * 分块ID(与向量ID一致, 仅分块级全文搜索返回)
+     */
+    private String chunkId;
+    
+    /**
+     * 分块序号(仅分块级全文搜索返回)
+     */
+    private Integer chunkIndex;
+    
     /**
      * 文档标题
      */
@@ -67,6 +77,7 @@ public class DocumentSearchResultVO {
     /**
      * 搜索来源类型
      * - "fulltext": ES 全文搜索
+     * - "chunk": ES 分块全文搜索
      * - "vector": 向量相似度搜索
      * - "hybrid": RRF 混合搜索
      */
@@ -0,0 +1,34 @@
+package com.ican.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 混合检索结果 VO
+ *
+ * <p>向量检索与全文检索并行执行，任一路超时或失败时仅用已完成的一路融合，
+ * legs 记录每一路的状态和耗时</p>
+ *
+ * @author 席崇援
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "混合检索结果")
+public class HybridSearchResultVO {
+
+    @Schema(description = "融合后的搜索结果")
+    private List<DocumentSearchResultVO> results;
+
+    @Schema(description = "各检索路执行情况")
+    private List<SearchLegVO> legs;
+
+    @Schema(description = "总耗时(毫秒)")
+    private Long tookMs;
+}
@@ -0,0 +1,32 @@
+package com.ican.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 检索指标统计 VO
+ *
+ * @author 席崇援
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "检索指标统计")
+public class MetricStatVO {
+
+    @Schema(description = "记录次数")
+    private Long count;
+
+    @Schema(description = "累计值(耗时为毫秒)")
+    private Long sum;
+
+    @Schema(description = "平均值")
+    private Double avg;
+
+    @Schema(description = "最大值")
+    private Long max;
+}
@@ -0,0 +1,55 @@
+package com.ican.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 索引清除结果 VO
+ * 
+ * <p>同步清除时返回实际删除数量；大文档走异步清除时返回匹配数量与 ES 任务ID</p>
+ *
+ * @author 席崇援
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "索引清除结果")
+public class PurgeResultVO {
+
+    @Schema(description = "用户ID")
+    private Long userId;
+
+    @Schema(description = "文档ID(为空表示不限定文档)")
+    private Long documentId;
+
+    @Schema(description = "知识库ID(为空表示不限定知识库)")
+    private Long kbId;
+
+    @Schema(description = "向量索引中匹配的分块数量")
+    private Long vectorMatched;
+
+    @Schema(description = "向量索引中已删除的分块数量(异步清除时为空)")
+    private Long vectorDeleted;
+
+    @Schema(description = "全文索引中已删除的文档数量(异步清除时为空)")
+    private Long fulltextDeleted;
+
+    @Schema(description = "是否异步清除")
+    private Boolean async;
+
+    @Schema(description = "向量索引异步删除任务ID")
+    private String vectorTaskId;
+
+    @Schema(description = "全文索引异步删除任务ID")
+    private String fulltextTaskId;
+
+    @Schema(description = "数据库中重置为待索引状态的文档数量")
+    private Integer documentsReset;
+
+    @Schema(description = "耗时(毫秒)")
+    private Long tookMs;
+}
@@ -0,0 +1,38 @@
+package com.ican.model.vo;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 混合检索单路执行情况 VO
+ *
+ * @author 席崇援
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "混合检索单路执行情况")
+public class SearchLegVO {
+
+    @Schema(description = "检索路: vector / fulltext")
+    private String name;
+
+    @Schema(description = "执行状态: ok / timeout / error")
+    private String status;
+
+    @Schema(description = "是否参与了融合")
+    private Boolean contributed;
+
+    @Schema(description = "是否发起了对冲请求")
+    private Boolean hedged;
+
+    @Schema(description = "返回结果数量")
+    private Integer resultCount;
+
+    @Schema(description = "耗时(毫秒)，超时时为等待时长")
+    private Long tookMs;
+}
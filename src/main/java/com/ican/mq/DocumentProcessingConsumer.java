@@ -78,6 +78,7 @@ public class DocumentProcessingConsumer {
                 documentESService.indexDocument(
                     documentId,
                     document.getUserId(),
+                    document.getKbId(),
                     document.getTitle(),
                     content,
                     document.getType(),
@@ -1,8 +1,12 @@
 package com.ican.repository;
 
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
 import co.elastic.clients.elasticsearch.core.*;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.SourceConfig;
 import com.ican.model.entity.DocumentES;
+import com.ican.service.DocumentESService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Repository;
@@ -10,6 +14,7 @@ import org.springframework.stereotype.Repository;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
@@ -27,7 +32,19 @@ public class DocumentESRepository {
     
     private final ElasticsearchClient elasticsearchClient;
     
-    private static final String INDEX_NAME = "ican_documents";
+    private static final String INDEX_NAME = DocumentESService.INDEX_NAME;
+    
+    /**
+     * 列表/检索类查询不返回正文, 避免每条命中都把整篇 content 传回 JVM
+     */
+    private static final SourceConfig WITHOUT_CONTENT = SourceConfig.of(s -> s.filter(f -> f.excludes("content")));
+    
+    /**
+     * findByUserId 每页条数
+     */
+    private static final int PAGE_SIZE = 500;
+    
+    private static final String PIT_KEEP_ALIVE = "1m";
     
     /**
      * 保存文档到 Elasticsearch
@@ -74,39 +91,54 @@ public class DocumentESRepository {
     }
     
     /**
-     * 根据用户ID查询文档
+     * 根据用户ID查询文档(不含正文)
+     * 
+     * <p>PIT + search_after 分页读取全部文档, 不再受单次 size 上限限制。</p>
      */
     public List<DocumentES> findByUserId(Long userId) {
+        List<DocumentES> documents = new ArrayList<>();
+        String pitId = null;
         try {
-            SearchResponse<DocumentES> response = elasticsearchClient.search(s -> s
+            pitId = elasticsearchClient.openPointInTime(o -> o
                 .index(INDEX_NAME)
-                .query(q -> q
-                    .term(t -> t
-                        .field("userId")
-                        .value(userId)
-                    )
-                )
-                .size(1000),  // 最多返回1000条
-                DocumentES.class
-            );
+                .keepAlive(k -> k.time(PIT_KEEP_ALIVE))
+            ).id();
             
-            return response.hits().hits().stream()
-                .map(hit -> {
-                    DocumentES doc = hit.source();
-                    if (doc != null && hit.id() != null) {
-                        doc.setId(Long.parseLong(hit.id()));
+            List<FieldValue> searchAfter = null;
+            while (true) {
+                final String currentPit = pitId;
+                final List<FieldValue> after = searchAfter;
+                SearchResponse<DocumentES> response = elasticsearchClient.search(s -> {
+                    s.query(q -> q.term(t -> t.field("userId").value(userId)))
+                        .source(WITHOUT_CONTENT)
+                        .size(PAGE_SIZE)
+                        .pit(p -> p.id(currentPit).keepAlive(k -> k.time(PIT_KEEP_ALIVE)))
+                        .sort(so -> so.field(f -> f.field("_shard_doc")));
+                    if (after != null) {
+                        s.searchAfter(after);
                     }
-                    return doc;
-                })
-                .collect(Collectors.toList());
+                    return s;
+                }, DocumentES.class);
+                
+                List<Hit<DocumentES>> hits = response.hits().hits();
+                documents.addAll(toDocuments(hits));
+                if (hits.size() < PAGE_SIZE) {
+                    break;
+                }
+                pitId = response.pitId() != null ? response.pitId() : pitId;
+                searchAfter = hits.get(hits.size() - 1).sort();
+            }
+            return documents;
         } catch (IOException e) {
             log.error("根据用户ID查询文档失败: userId={}", userId, e);
             return new ArrayList<>();
+        } finally {
+            closePointInTime(pitId);
         }
     }
     
     /**
-     * 根据用户ID和标题模糊查询
+     * 根据用户ID和标题模糊查询(不含正文)
      */
     public List<DocumentES> findByUserIdAndTitleContaining(Long userId, String title) {
         try {
@@ -118,19 +150,12 @@ public class DocumentESRepository {
                         .must(m -> m.match(t -> t.field("title").query(title)))
                     )
                 )
+                .source(WITHOUT_CONTENT)
                 .size(100),
                 DocumentES.class
             );
             
-            return response.hits().hits().stream()
-                .map(hit -> {
-                    DocumentES doc = hit.source();
-                    if (doc != null && hit.id() != null) {
-                        doc.setId(Long.parseLong(hit.id()));
-                    }
-                    return doc;
-                })
-                .collect(Collectors.toList());
+            return toDocuments(response.hits().hits());
         } catch (IOException e) {
             log.error("根据标题查询文档失败: userId={}, title={}", userId, title, e);
             return new ArrayList<>();
@@ -138,7 +163,7 @@ public class DocumentESRepository {
     }
     
     /**
-     * 根据用户ID和内容模糊查询
+     * 根据用户ID和内容模糊查询(不含正文)
      */
     public List<DocumentES> findByUserIdAndContentContaining(Long userId, String content) {
         try {
@@ -150,19 +175,12 @@ public class DocumentESRepository {
                         .must(m -> m.match(t -> t.field("content").query(content)))
                     )
                 )
+                .source(WITHOUT_CONTENT)
                 .size(100),
                 DocumentES.class
             );
             
-            return response.hits().hits().stream()
-                .map(hit -> {
-                    DocumentES doc = hit.source();
-                    if (doc != null && hit.id() != null) {
-                        doc.setId(Long.parseLong(hit.id()));
-                    }
-                    return doc;
-                })
-                .collect(Collectors.toList());
+            return toDocuments(response.hits().hits());
         } catch (IOException e) {
             log.error("根据内容查询文档失败: userId={}, content={}", userId, content, e);
             return new ArrayList<>();
@@ -186,7 +204,7 @@ public class DocumentESRepository {
     }
     
     /**
-     * 全文搜索 - 在标题和内容中搜索
+     * 全文搜索 - 在标题和内容中搜索(不含正文)
      */
     public List<DocumentES> fullTextSearch(Long userId, String query, int size) {
         try {
@@ -201,22 +219,39 @@ public class DocumentESRepository {
                         ))
                     )
                 )
+                .source(WITHOUT_CONTENT)
                 .size(size),
                 DocumentES.class
             );
             
-            return response.hits().hits().stream()
-                .map(hit -> {
-                    DocumentES doc = hit.source();
-                    if (doc != null && hit.id() != null) {
-                        doc.setId(Long.parseLong(hit.id()));
-                    }
-                    return doc;
-                })
-                .collect(Collectors.toList());
+            return toDocuments(response.hits().hits());
         } catch (IOException e) {
             log.error("全文搜索失败: userId={}, query={}", userId, query, e);
             return new ArrayList<>();
         }
     }
+    
+    private List<DocumentES> toDocuments(List<Hit<DocumentES>> hits) {
+        return hits.stream()
+            .map(hit -> {
+                DocumentES doc = hit.source();
+                if (doc != null && hit.id() != null) {
+                    doc.setId(Long.parseLong(hit.id()));
+                }
+                return doc;
+            })
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+    }
+    
+    private void closePointInTime(String pitId) {
+        if (pitId == null) {
+            return;
+        }
+        try {
+            elasticsearchClient.closePointInTime(c -> c.id(pitId));
+        } catch (Exception e) {
+            log.warn("关闭 PIT 失败: {}", e.getMessage());
+        }
+    }
 }
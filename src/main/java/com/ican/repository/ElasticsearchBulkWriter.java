@@ -0,0 +1,236 @@
+package com.ican.repository;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
+import co.elastic.clients.elasticsearch._helpers.bulk.BulkListener;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.bulk.BulkOperation;
+import co.elastic.clients.elasticsearch.core.bulk.BulkResponseItem;
+import com.ican.service.RetrievalMetricsService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Elasticsearch 批量写入器
+ *
+ * <p>基于 Java 客户端的 {@link BulkIngester}：写操作先进入缓冲区，达到条数/字节数阈值或定时刷新时
+ * 合并为一个 bulk 请求发送。并发 bulk 请求数达到上限时 add 会阻塞调用方(背压)，避免突发写入压垮 ES。</p>
+ *
+ * <p>写入是异步的，失败按条记录日志和指标(es.bulk.*)，不会抛给调用方。</p>
+ *
+ * <p>多个 bulk 请求可能并发执行，先后提交的操作不保证按顺序落盘。依赖顺序的操作(如 delete-by-query
+ * 必须在之前的写入之后执行)先调用 {@link #flushAndWait()} 等待已提交的操作完成。</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class ElasticsearchBulkWriter {
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final RetrievalMetricsService retrievalMetricsService;
+
+    /**
+     * 单个 bulk 请求最多包含的操作数
+     */
+    @Value("${search.bulk.max-operations:500}")
+    private Integer maxOperations;
+
+    /**
+     * 单个 bulk 请求最大字节数
+     */
+    @Value("${search.bulk.max-size-bytes:5242880}")
+    private Long maxSizeBytes;
+
+    /**
+     * 最大并发 bulk 请求数, 超过后 add 阻塞
+     */
+    @Value("${search.bulk.max-concurrent-requests:2}")
+    private Integer maxConcurrentRequests;
+
+    /**
+     * 定时刷新间隔(毫秒)
+     */
+    @Value("${search.bulk.flush-interval-ms:1000}")
+    private Long flushIntervalMs;
+
+    /**
+     * flushAndWait 最长等待时间(毫秒)
+     */
+    @Value("${search.bulk.await-timeout-ms:30000}")
+    private Long awaitTimeoutMs;
+
+    private BulkIngester<Operation> ingester;
+
+    /**
+     * 操作序号
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * 已提交但尚未得到响应的操作序号
+     */
+    private final ConcurrentSkipListSet<Long> pending = new ConcurrentSkipListSet<>();
+
+    @PostConstruct
+    public void init() {
+        ingester = BulkIngester.of(b -> b
+            .client(elasticsearchClient)
+            .maxOperations(maxOperations)
+            .maxSize(maxSizeBytes)
+            .maxConcurrentRequests(maxConcurrentRequests)
+            .flushInterval(flushIntervalMs, TimeUnit.MILLISECONDS)
+            .listener(new LoggingListener()));
+    }
+
+    @PreDestroy
+    public void close() {
+        if (ingester != null) {
+            // 关闭前刷出缓冲区中剩余的操作
+            ingester.close();
+        }
+    }
+
+    /**
+     * 写入(覆盖)文档
+     */
+    public void index(String index, String id, Object document) {
+        add(BulkOperation.of(op -> op.index(i -> i.index(index).id(id).document(document))),
+            "index " + index + "/" + id);
+    }
+
+    /**
+     * 局部更新文档字段(不需要先读取原文档)
+     */
+    public void update(String index, String id, Map<String, Object> fields) {
+        add(BulkOperation.of(op -> op.update(u -> u.index(index).id(id)
+                .action(a -> a.doc(fields)))),
+            "update " + index + "/" + id);
+    }
+
+    /**
+     * 删除文档
+     */
+    public void delete(String index, String id) {
+        add(BulkOperation.of(op -> op.delete(d -> d.index(index).id(id))),
+            "delete " + index + "/" + id);
+    }
+
+    /**
+     * 立即发送缓冲区中的操作(不等待响应)
+     */
+    public void flush() {
+        ingester.flush();
+    }
+
+    /**
+     * 发送缓冲区并等待调用前已提交的操作全部得到响应(成功或失败)
+     *
+     * <p>之后提交的操作不影响等待。超时或线程被中断时返回 false。</p>
+     *
+     * @return 是否在超时前完成
+     */
+    public boolean flushAndWait() {
+        long last = sequence.get();
+        long deadline = System.currentTimeMillis() + awaitTimeoutMs;
+        synchronized (pending) {
+            Long oldest;
+            while ((oldest = pending.ceiling(0L)) != null && oldest <= last) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    log.warn("等待ES批量写入完成超时: pending={}, timeout={}ms", pending.size(), awaitTimeoutMs);
+                    return false;
+                }
+                // 并发请求数已满时 flush 可能未发送, 按刷新间隔重试
+                ingester.flush();
+                try {
+                    pending.wait(Math.min(remaining, flushIntervalMs));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void add(BulkOperation operation, String description) {
+        long seq = sequence.incrementAndGet();
+        pending.add(seq);
+        try {
+            ingester.add(operation, new Operation(seq, description));
+        } catch (RuntimeException e) {
+            completed(List.of(new Operation(seq, description)));
+            throw e;
+        }
+    }
+
+    private void completed(List<Operation> operations) {
+        for (Operation operation : operations) {
+            pending.remove(operation.seq());
+        }
+        synchronized (pending) {
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * bulk 操作上下文
+     *
+     * @param seq 提交序号
+     * @param description 日志描述
+     */
+    private record Operation(long seq, String description) {
+    }
+
+    /**
+     * 按条记录 bulk 结果
+     */
+    private class LoggingListener implements BulkListener<Operation> {
+
+        @Override
+        public void beforeBulk(long executionId, BulkRequest request, List<Operation> contexts) {
+            retrievalMetricsService.record("es.bulk.operations", contexts.size());
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<Operation> contexts, BulkResponse response) {
+            completed(contexts);
+            retrievalMetricsService.record("es.bulk.took_ms", response.took());
+            if (!response.errors()) {
+                return;
+            }
+            List<BulkResponseItem> items = response.items();
+            int failed = 0;
+            for (int i = 0; i < items.size(); i++) {
+                BulkResponseItem item = items.get(i);
+                if (item.error() != null) {
+                    failed++;
+                    log.warn("ES批量写入失败: op={}, status={}, type={}, reason={}",
+                        i < contexts.size() ? contexts.get(i).description() : item.id(),
+                        item.status(), item.error().type(), item.error().reason());
+                }
+            }
+            retrievalMetricsService.record("es.bulk.item_failed", failed);
+        }
+
+        @Override
+        public void afterBulk(long executionId, BulkRequest request, List<Operation> contexts, Throwable failure) {
+            completed(contexts);
+            retrievalMetricsService.increment("es.bulk.request_failed");
+            log.error("ES批量请求失败: executionId={}, operations={}", executionId, contexts.size(), failure);
+        }
+    }
+}
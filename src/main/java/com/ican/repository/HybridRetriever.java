@@ -0,0 +1,113 @@
+package com.ican.repository;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.ican.config.RAGConfig;
+import com.ican.config.VectorIndexProperties;
+import com.ican.repository.TenantRoutingVectorStore.VectorChunk;
+import com.ican.service.RetrievalCacheService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.stereotype.Repository;
+import top.continew.starter.core.exception.BusinessException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单请求混合检索
+ *
+ * <p>在向量索引上用 ES 原生 rrf retriever 组合 knn retriever(向量) 和 standard retriever(content 上的 BM25 match)，
+ * 召回与融合在一次请求内由 ES 完成。向量索引的 content 字段本身就是分块文本，两路命中按分块 _id 天然对齐，
+ * 不需要再访问 ican_chunks 或在 Java 中融合。</p>
+ *
+ * <p>两路使用相同的过滤条件(userId / kbId / documentId)，并沿用 {@link TenantRoutingVectorStore} 的租户索引和 routing。
+ * 返回文档的 score 为 RRF 分数，不再是相似度。</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class HybridRetriever {
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final EmbeddingModel embeddingModel;
+    private final VectorIndexProperties properties;
+    private final TenantRoutingVectorStore tenantRoutingVectorStore;
+    private final RetrievalCacheService retrievalCacheService;
+    private final RAGConfig ragConfig;
+
+    /**
+     * 混合检索(带检索结果缓存)
+     *
+     * @param userId 用户ID(决定索引和 routing)
+     * @param request 检索请求: query / topK / 相似度阈值(只作用于 kNN 一路) / 过滤条件
+     * @return 按 RRF 分数排序的分块
+     */
+    public List<Document> search(Long userId, SearchRequest request) {
+        return retrievalCacheService.hybridSearch(userId, request, () -> rrfSearch(userId, request));
+    }
+
+    private List<Document> rrfSearch(Long userId, SearchRequest request) {
+        String index = userId != null ? tenantRoutingVectorStore.resolveIndex(userId) : properties.getIndexName();
+        String routing = userId != null ? tenantRoutingVectorStore.resolveRouting(userId) : null;
+        String queryString = request.hasFilterExpression()
+            ? tenantRoutingVectorStore.toQueryString(request.getFilterExpression())
+            : "*";
+        Query filter = Query.of(q -> q.queryString(qs -> qs.query(queryString)));
+
+        float[] vector = embeddingModel.embed(request.getQuery());
+        List<Float> queryVector = new ArrayList<>(vector.length);
+        for (float v : vector) {
+            queryVector.add(v);
+        }
+
+        int topK = request.getTopK();
+        // 每一路都取 topK 个候选参与融合
+        int windowSize = Math.max(topK, 1);
+        float threshold = tenantRoutingVectorStore.similarityThreshold(request.getSimilarityThreshold());
+        RAGConfig.HybridSearchConfig hybridConfig = ragConfig.getHybridSearch();
+
+        try {
+            SearchResponse<VectorChunk> response = elasticsearchClient.search(s -> {
+                s.index(index)
+                    .ignoreUnavailable(true)
+                    .size(topK)
+                    .source(src -> src.filter(f -> f.excludes(properties.getEmbeddingField())))
+                    .retriever(r -> r.rrf(rrf -> rrf
+                        .retrievers(knn -> knn.knn(k -> k
+                            .field(properties.getEmbeddingField())
+                            .queryVector(queryVector)
+                            .k(windowSize)
+                            .numCandidates((int) (1.5 * windowSize))
+                            .similarity(threshold)
+                            .filter(filter)))
+                        .retrievers(text -> text.standard(st -> st
+                            .query(q -> q.bool(b -> b
+                                .must(m -> m.match(mt -> mt.field("content").query(request.getQuery())))
+                                .filter(filter)))))
+                        .rankConstant(hybridConfig.getRrfK())
+                        .rankWindowSize(windowSize)));
+                if (routing != null) {
+                    s.routing(routing);
+                }
+                return s;
+            }, VectorChunk.class);
+
+            List<Document> documents = new ArrayList<>(response.hits().hits().size());
+            for (Hit<VectorChunk> hit : response.hits().hits()) {
+                documents.add(tenantRoutingVectorStore.toRankedDocument(hit));
+            }
+            return documents;
+        } catch (Exception e) {
+            log.error("RRF 混合检索失败: index={}, routing={}", index, routing, e);
+            throw new BusinessException("RRF 混合检索失败: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,827 @@
+package com.ican.repository;
+
+import cn.hutool.core.codec.Base62;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Conflicts;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.Refresh;
+import co.elastic.clients.elasticsearch._types.mapping.DenseVectorSimilarity;
+import co.elastic.clients.elasticsearch._types.mapping.DynamicMapping;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.ican.config.MetadataKeys;
+import com.ican.config.VectorIndexProperties;
+import com.ican.service.RetrievalCacheService;
+import com.ican.service.SearchIndexService;
+import com.ican.utils.NumberConversionUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.elasticsearch.ElasticsearchAiSearchFilterExpressionConverter;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+import top.continew.starter.core.exception.BusinessException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 租户感知的向量存储
+ *
+ * <p>替代 Spring AI 默认的单索引 ElasticsearchVectorStore，按 userId 划分向量数据：</p>
+ * <ul>
+ *   <li>普通租户: 写入共享索引并以 userId 作为 _routing, 检索只访问该租户所在分片</li>
+ *   <li>大租户: 使用独享索引 {indexName}-tenant-{userId}, kNN 只在自身 HNSW 图中检索</li>
+ *   <li>无 userId 的数据(如对话记忆): 写入共享索引, 不指定 routing</li>
+ * </ul>
+ *
+ * <p>租户分块数超过 {@link VectorIndexProperties#getDedicatedIndexThreshold()} 时,
+ * 由后台线程 reindex 到独享索引(不阻塞写入路径)，之后检索成本只随该租户自身语料增长。</p>
+ *
+ * <p>Bean 名不使用 vectorStore, 避免与 Spring AI 自动配置的同名 Bean 冲突;
+ * 自动配置通过 spring.ai.vectorstore.type=none 关闭, 由 {@link Primary} 保证按类型注入时选中本实现。</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Primary
+@Repository
+@RequiredArgsConstructor
+public class TenantRoutingVectorStore implements VectorStore {
+
+    private static final String USER_ID_KEY = MetadataKeys.USER_ID;
+    private static final String DISTANCE_KEY = "distance";
+    private static final String TEMPLATE_NAME = "ican-vector-template";
+    private static final String VERSION_SEPARATOR = "-v";
+    private static final Set<String> LEGACY_ID_KEYS = Set.of(
+        MetadataKeys.USER_ID, MetadataKeys.DOCUMENT_ID, MetadataKeys.KB_ID);
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final EmbeddingModel embeddingModel;
+    private final VectorIndexProperties properties;
+    private final RetrievalCacheService retrievalCacheService;
+    private final SearchIndexService searchIndexService;
+
+    private final ElasticsearchAiSearchFilterExpressionConverter filterConverter =
+        new ElasticsearchAiSearchFilterExpressionConverter();
+
+    /**
+     * 使用独享索引的租户
+     */
+    private final Set<Long> dedicatedTenants = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 租户规模上次检查时间
+     */
+    private final Map<Long, Long> lastSizeCheck = new ConcurrentHashMap<>();
+
+    /**
+     * 租户级写锁, 避免迁移期间并发写入被清理
+     */
+    private final Map<Long, Object> tenantLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 正在检查或迁移的租户, 避免重复提交
+     */
+    private final Set<Long> promotingTenants = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 追平迁移期间写入时向前多取的时间(毫秒), 覆盖写入时间戳与服务器时钟的偏差
+     */
+    @Value("${search.index.catch-up-margin-ms:60000}")
+    private Long catchUpMarginMs;
+
+    private ThreadPoolExecutor promotionExecutor;
+
+    /**
+     * 是否兼容迁移前的索引: ID 类过滤条件同时匹配 Base62 编码值, 且检索不指定 routing(旧数据写入时无 routing)。
+     * 默认开启, 由 {@link com.ican.service.VectorIndexMigrationService} 确认所有索引完成迁移后关闭。
+     */
+    private volatile boolean legacyIdFallback = true;
+
+    @PostConstruct
+    public void init() {
+        promotionExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(100),
+            r -> {
+                Thread thread = new Thread(r, "tenant-promotion");
+                thread.setDaemon(true);
+                return thread;
+            });
+        promotionExecutor.allowCoreThreadTimeOut(true);
+        try {
+            ensureTemplate();
+            ensureIndex(properties.getIndexName(), properties.getNumberOfShards());
+            dedicatedTenants.addAll(discoverDedicatedTenants());
+            for (Long userId : properties.getDedicatedUsers()) {
+                ensureIndex(properties.tenantIndexName(userId), 1);
+                dedicatedTenants.add(userId);
+            }
+            log.info("向量索引初始化完成: sharedIndex={}, routing={}, dedicatedTenants={}",
+                properties.getIndexName(), properties.getRoutingEnabled(), dedicatedTenants);
+        } catch (Exception e) {
+            log.error("向量索引初始化失败: {}", properties.getIndexName(), e);
+            // 不抛出异常,允许应用继续启动
+        }
+    }
+
+    @PreDestroy
+    public void shutdownPromotionExecutor() {
+        if (promotionExecutor != null) {
+            promotionExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        if (documents == null || documents.isEmpty()) {
+            return;
+        }
+
+        // 1. 批量生成向量(与文档顺序一致)
+        List<String> texts = documents.stream().map(Document::getText).toList();
+        List<float[]> embeddings = embeddingModel.embed(texts);
+
+        // 2. 按租户分组, 同一租户同一索引同一 routing
+        Map<Long, List<Integer>> byTenant = new LinkedHashMap<>();
+        for (int i = 0; i < documents.size(); i++) {
+            Long userId = metadataUserId(documents.get(i).getMetadata().get(USER_ID_KEY));
+            byTenant.computeIfAbsent(userId, k -> new ArrayList<>()).add(i);
+        }
+
+        for (Map.Entry<Long, List<Integer>> entry : byTenant.entrySet()) {
+            Long userId = entry.getKey();
+            if (userId == null) {
+                bulkIndex(properties.getIndexName(), null, documents, embeddings, entry.getValue());
+                continue;
+            }
+            synchronized (tenantLock(userId)) {
+                bulkIndex(resolveIndex(userId), writeRouting(userId), documents, embeddings, entry.getValue());
+            }
+            checkTenantSize(userId);
+        }
+    }
+
+    @Override
+    public void delete(List<String> idList) {
+        if (idList == null || idList.isEmpty()) {
+            return;
+        }
+        // routing 未知, 使用 ids 查询覆盖所有分片和租户索引
+        deleteByQuery(Query.of(q -> q.ids(i -> i.values(idList))));
+    }
+
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        String queryString = toQueryString(filterExpression);
+        deleteByQuery(Query.of(q -> q.queryString(qs -> qs.query(queryString))));
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        Long userId = extractUserId(request.getFilterExpression());
+        // 相同问题/过滤条件/语料版本的检索直接走缓存, 不再计算问题向量和访问 ES
+        return retrievalCacheService.vectorSearch(userId, request, () -> knnSearch(userId, request));
+    }
+
+    private List<Document> knnSearch(Long userId, SearchRequest request) {
+        String index = userId != null ? resolveIndex(userId) : properties.getIndexName();
+        String routing = userId != null ? resolveRouting(userId) : null;
+        String queryString = request.hasFilterExpression()
+            ? toQueryString(request.getFilterExpression())
+            : "*";
+
+        float[] vector = embeddingModel.embed(request.getQuery());
+        List<Float> queryVector = new ArrayList<>(vector.length);
+        for (float v : vector) {
+            queryVector.add(v);
+        }
+
+        int topK = request.getTopK();
+        float threshold = similarityThreshold(request.getSimilarityThreshold());
+
+        try {
+            SearchResponse<VectorChunk> response = elasticsearchClient.search(s -> {
+                s.index(index)
+                    .ignoreUnavailable(true)
+                    .size(topK)
+                    .source(src -> src.filter(f -> f.excludes(properties.getEmbeddingField())))
+                    .knn(knn -> knn
+                        .field(properties.getEmbeddingField())
+                        .queryVector(queryVector)
+                        .k(topK)
+                        .numCandidates((int) (1.5 * topK))
+                        .similarity(threshold)
+                        .filter(f -> f.queryString(qs -> qs.query(queryString))));
+                if (routing != null) {
+                    s.routing(routing);
+                }
+                return s;
+            }, VectorChunk.class);
+
+            List<Document> documents = new ArrayList<>(response.hits().hits().size());
+            for (Hit<VectorChunk> hit : response.hits().hits()) {
+                documents.add(toDocument(hit));
+            }
+            return documents;
+        } catch (Exception e) {
+            log.error("向量检索失败: index={}, routing={}", index, routing, e);
+            throw new BusinessException("向量检索失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 按向量ID批量读取已存储的分块向量
+     *
+     * <p>在共享索引和所有独享索引上执行 ids 查询(不指定 routing, 覆盖全部分片), _source 只返回向量字段。
+     * 读取失败时返回空结果, 由调用方重新计算。</p>
+     *
+     * @param ids 向量ID
+     * @return 向量ID -> 向量
+     */
+    public Map<String, float[]> getEmbeddings(Collection<String> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Map.of();
+        }
+        List<String> values = new ArrayList<>(new LinkedHashSet<>(ids));
+        try {
+            SearchResponse<VectorChunk> response = elasticsearchClient.search(s -> s
+                .index(properties.allIndices())
+                .ignoreUnavailable(true)
+                .allowNoIndices(true)
+                .query(q -> q.ids(i -> i.values(values)))
+                .size(values.size())
+                .source(src -> src.filter(f -> f.includes(properties.getEmbeddingField()))),
+                VectorChunk.class);
+            Map<String, float[]> embeddings = new HashMap<>();
+            for (Hit<VectorChunk> hit : response.hits().hits()) {
+                if (hit.source() != null && hit.source().getEmbedding() != null) {
+                    embeddings.put(hit.id(), hit.source().getEmbedding());
+                }
+            }
+            return embeddings;
+        } catch (Exception e) {
+            log.warn("读取已存储向量失败: ids={}, error={}", values.size(), e.getMessage());
+            return Map.of();
+        }
+    }
+
+    /**
+     * 租户向量所在索引
+     */
+    public String resolveIndex(Long userId) {
+        if (userId != null && dedicatedTenants.contains(userId)) {
+            return properties.tenantIndexName(userId);
+        }
+        return properties.getIndexName();
+    }
+
+    /**
+     * 使用独享索引的租户
+     */
+    public Set<Long> getDedicatedTenants() {
+        return Collections.unmodifiableSet(dedicatedTenants);
+    }
+
+    /**
+     * 检索和按条件删除/更新使用的 routing(独享索引不需要 routing; 旧索引兼容期间不指定 routing, 覆盖全部分片)
+     */
+    public String resolveRouting(Long userId) {
+        if (userId == null || !Boolean.TRUE.equals(properties.getRoutingEnabled())
+            || dedicatedTenants.contains(userId) || legacyIdFallback) {
+            return null;
+        }
+        return String.valueOf(userId);
+    }
+
+    /**
+     * 写入使用的 routing
+     *
+     * <p>与兼容开关无关: 开启 routing 时共享索引中的新分块始终按 userId 路由,
+     * 兼容关闭后按 routing 检索和删除仍能命中兼容期间写入的分块。</p>
+     */
+    private String writeRouting(Long userId) {
+        if (userId == null || !Boolean.TRUE.equals(properties.getRoutingEnabled())
+            || dedicatedTenants.contains(userId)) {
+            return null;
+        }
+        return String.valueOf(userId);
+    }
+
+    /**
+     * by-query 删除/更新的目标索引
+     *
+     * <p>以共享索引名调用时覆盖共享索引和所有独享索引: 请求可能在租户迁移到独享索引的过程中排队,
+     * 不能依赖提交时解析的索引。回放到 reindex/迁移的新物理索引时只作用于该索引。</p>
+     *
+     * @param index 共享索引名, 或回放时的新物理索引
+     */
+    public List<String> mutationTargets(String index) {
+        return index.equals(properties.getIndexName()) ? properties.allIndices() : List.of(index);
+    }
+
+    /**
+     * 是否处于旧索引兼容期间(ID 类元数据可能仍为 Base62 编码, 部分分块没有 routing)
+     */
+    public boolean isLegacyIdFallback() {
+        return legacyIdFallback;
+    }
+
+    /**
+     * 开启/关闭旧索引兼容(迁移完成后关闭)
+     */
+    public void setLegacyIdFallback(boolean legacyIdFallback) {
+        if (this.legacyIdFallback != legacyIdFallback) {
+            log.info("向量索引旧数据兼容: {}", legacyIdFallback ? "开启" : "关闭");
+        }
+        this.legacyIdFallback = legacyIdFallback;
+    }
+
+    /**
+     * 过滤表达式转换为 query_string(兼容期间 ID 类条件同时匹配 Base62 编码值)
+     */
+    public String toQueryString(Filter.Expression expression) {
+        return filterConverter.convertExpression(legacyIdFallback ? withLegacyIds(expression) : expression);
+    }
+
+    /**
+     * ID 类元数据精确匹配(by-query 更新/删除用, 索引模板将其映射为 keyword)
+     *
+     * <p>兼容期间同时匹配 Base62 编码值, 与 {@link #toQueryString} 一致。</p>
+     */
+    public Query metadataIdQuery(String key, Collection<Long> ids) {
+        List<FieldValue> values = new ArrayList<>();
+        for (Long id : ids) {
+            values.add(FieldValue.of(String.valueOf(id)));
+            if (legacyIdFallback) {
+                values.add(FieldValue.of(Base62.encode(String.valueOf(id))));
+            }
+        }
+        return Query.of(q -> q.terms(t -> t
+            .field("metadata." + key)
+            .terms(tv -> tv.value(values))
+        ));
+    }
+
+    /**
+     * 将 ID 类字段的 EQ/IN 条件扩展为 IN [数值, Base62(数值)]
+     */
+    private Filter.Expression withLegacyIds(Filter.Expression expression) {
+        if (expression == null) {
+            return null;
+        }
+        switch (expression.type()) {
+            case AND, OR, NOT -> {
+                return new Filter.Expression(expression.type(),
+                    withLegacyIds(expression.left()), withLegacyIds(expression.right()));
+            }
+            case EQ, IN -> {
+                if (expression.left() instanceof Filter.Key key && LEGACY_ID_KEYS.contains(key.key())
+                    && expression.right() instanceof Filter.Value value) {
+                    List<Object> values = new ArrayList<>();
+                    Collection<?> originals = value.value() instanceof Collection<?> c ? c : List.of(value.value());
+                    for (Object original : originals) {
+                        values.add(original);
+                        if (original != null) {
+                            values.add(Base62.encode(String.valueOf(original)));
+                        }
+                    }
+                    return new Filter.Expression(Filter.ExpressionType.IN, key, new Filter.Value(values));
+                }
+                return expression;
+            }
+            default -> {
+                return expression;
+            }
+        }
+    }
+
+    private Filter.Operand withLegacyIds(Filter.Operand operand) {
+        if (operand instanceof Filter.Expression expression) {
+            return withLegacyIds(expression);
+        }
+        if (operand instanceof Filter.Group group) {
+            return new Filter.Group(withLegacyIds(group.content()));
+        }
+        return operand;
+    }
+
+    /**
+     * 将租户迁移到独享索引
+     *
+     * <p>步骤:</p>
+     * <ol>
+     *   <li>打开复制窗口(记录之后的向量删除和更新), 创建不带别名的物理索引, 全量复制租户向量, 不停写</li>
+     *   <li>按写入时间(metadata.indexedAt)追平复制期间的写入, 不停写</li>
+     *   <li>持有租户锁并停止向量写入: 再追平一轮, 回放复制窗口内的删除和更新, 挂上别名并切换写入和检索目标</li>
+     *   <li>从共享索引中清理旧数据</li>
+     * </ol>
+     *
+     * <p>别名在复制完成后才挂上, 启动时只按别名恢复独享租户, 中途失败的迁移不会被误认。</p>
+     */
+    public void promoteTenant(Long userId) {
+        if (dedicatedTenants.contains(userId)) {
+            return;
+        }
+        String sharedIndex = properties.getIndexName();
+        String alias = properties.tenantIndexName(userId);
+        String routing = resolveRouting(userId);
+        long start = System.currentTimeMillis();
+        String target = alias + VERSION_SEPARATOR + start;
+        try {
+            long copied;
+            try (SearchIndexService.CopyWindow window = searchIndexService.openCopyWindow(sharedIndex)) {
+                searchIndexService.createIndex(target, 1);
+
+                // 1. 全量复制租户向量到独享索引(清除 routing)
+                copied = copyTenant(userId, target, null);
+
+                // 2. 追平复制期间的写入
+                long catchUpStart = System.currentTimeMillis();
+                copyTenant(userId, target, start - catchUpMarginMs);
+
+                // 3. 停写后追平最后一轮并回放删除/更新, 再切换目标; 租户锁保证 add 在切换后重新解析索引
+                synchronized (tenantLock(userId)) {
+                    searchIndexService.blockWrites(sharedIndex, () -> {
+                        copyTenant(userId, target, catchUpStart - catchUpMarginMs);
+                        window.replay(target);
+                        elasticsearchClient.indices().updateAliases(u -> u
+                            .actions(a -> a.add(ad -> ad.index(target).alias(alias).isWriteIndex(true))));
+                        dedicatedTenants.add(userId);
+                        return null;
+                    });
+                }
+            }
+
+            // 4. 清理共享索引中的旧数据
+            searchIndexService.mutate(sharedIndex, index -> elasticsearchClient.deleteByQuery(d -> {
+                d.index(index)
+                    .query(tenantQuery(userId))
+                    .conflicts(Conflicts.Proceed)
+                    .refresh(true);
+                if (routing != null) {
+                    d.routing(routing);
+                }
+                return d;
+            }));
+
+            log.info("租户向量已迁移到独享索引: userId={}, index={}, copied={}, took={}ms",
+                userId, target, copied, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("租户向量迁移失败: userId={}, index={}", userId, target, e);
+            throw new BusinessException("租户向量迁移失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 复制共享索引中的租户向量, since 非空时只复制该时间之后写入的分块(metadata.indexedAt)
+     *
+     * @return 复制的分块数
+     */
+    private long copyTenant(Long userId, String target, Long since) throws Exception {
+        Query query = since == null
+            ? tenantQuery(userId)
+            : Query.of(q -> q.bool(b -> b
+                .filter(tenantQuery(userId))
+                .filter(f -> f.range(r -> r.number(n -> n
+                    .field("metadata." + MetadataKeys.INDEXED_AT)
+                    .gte((double) since))))));
+        var response = elasticsearchClient.reindex(r -> r
+            .source(src -> src.index(properties.getIndexName()).query(query))
+            .dest(d -> d.index(target))
+            .script(sc -> sc.inline(i -> i.source("ctx._routing = null")))
+            .conflicts(Conflicts.Proceed)
+            .refresh(true)
+            .waitForCompletion(true)
+        );
+        return response.total() != null ? response.total() : 0L;
+    }
+
+    /**
+     * 按间隔检查租户规模, 超过阈值时提交后台迁移(不阻塞写入)
+     */
+    private void checkTenantSize(Long userId) {
+        long threshold = properties.getDedicatedIndexThreshold() == null ? 0 : properties.getDedicatedIndexThreshold();
+        // 兼容期间共享索引中仍有 Base62 编码 userId 的旧分块, 按数值 userId 复制和清理会遗漏, 迁移完成后再晋升
+        if (threshold <= 0 || legacyIdFallback || dedicatedTenants.contains(userId)) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Long last = lastSizeCheck.get(userId);
+        if (last != null && now - last < properties.getTenantSizeCheckIntervalMs()) {
+            return;
+        }
+        lastSizeCheck.put(userId, now);
+        if (!promotingTenants.add(userId)) {
+            return;
+        }
+
+        try {
+            promotionExecutor.execute(() -> {
+                try {
+                    promoteIfOversized(userId, threshold);
+                } catch (Exception e) {
+                    log.warn("租户规模检查或迁移失败: userId={}, error={}", userId, e.getMessage());
+                } finally {
+                    promotingTenants.remove(userId);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 队列已满, 下个检查间隔再提交
+            promotingTenants.remove(userId);
+            log.warn("租户迁移队列已满, 稍后重试: userId={}", userId);
+        }
+    }
+
+    private void promoteIfOversized(Long userId, long threshold) throws Exception {
+        String routing = resolveRouting(userId);
+        long count = elasticsearchClient.count(c -> {
+            c.index(properties.getIndexName()).query(tenantQuery(userId));
+            if (routing != null) {
+                c.routing(routing);
+            }
+            return c;
+        }).count();
+        if (count > threshold) {
+            log.info("租户分块数超过阈值, 开始迁移到独享索引: userId={}, count={}, threshold={}",
+                userId, count, threshold);
+            promoteTenant(userId);
+        }
+    }
+
+    /**
+     * 批量写入分块(经写入闸门, metadata.indexedAt 记录写入时间, 供 reindex/迁移追平增量)
+     */
+    private void bulkIndex(String index, String routing, List<Document> documents,
+                           List<float[]> embeddings, List<Integer> positions) {
+        try {
+            BulkResponse response = searchIndexService.write(index, target -> {
+                long indexedAt = System.currentTimeMillis();
+                BulkRequest.Builder bulk = new BulkRequest.Builder().refresh(Refresh.True);
+                for (Integer i : positions) {
+                    Document document = documents.get(i);
+                    Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+                    metadata.put(MetadataKeys.INDEXED_AT, indexedAt);
+                    VectorChunk chunk = new VectorChunk();
+                    chunk.setId(document.getId());
+                    chunk.setContent(document.getText());
+                    chunk.setMetadata(metadata);
+                    chunk.setEmbedding(embeddings.get(i));
+                    bulk.operations(op -> op.index(idx -> {
+                        idx.index(target).id(chunk.getId()).document(chunk);
+                        if (routing != null) {
+                            idx.routing(routing);
+                        }
+                        return idx;
+                    }));
+                }
+                return elasticsearchClient.bulk(bulk.build());
+            });
+            if (response.errors()) {
+                List<String> reasons = response.items().stream()
+                    .filter(item -> item.error() != null)
+                    .map(item -> item.id() + ": " + item.error().reason())
+                    .limit(5)
+                    .toList();
+                throw new BusinessException("向量写入部分失败: " + reasons);
+            }
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("向量写入失败: index={}, routing={}, size={}", index, routing, positions.size(), e);
+            throw new BusinessException("向量写入失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 在共享索引和所有独享索引上按条件删除(经写入闸门, reindex/迁移期间回放到新索引)
+     */
+    private void deleteByQuery(Query query) {
+        try {
+            searchIndexService.mutate(properties.getIndexName(), index -> elasticsearchClient.deleteByQuery(d -> d
+                .index(mutationTargets(index))
+                .query(query)
+                .conflicts(Conflicts.Proceed)
+                .ignoreUnavailable(true)
+                .allowNoIndices(true)
+                .refresh(true)
+            ));
+        } catch (Exception e) {
+            log.error("向量删除失败", e);
+            throw new BusinessException("向量删除失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 注册向量索引模板(共享索引、独享索引及迁移生成的新索引均匹配)
+     *
+     * <p>每次启动按配置覆盖, 副本数和刷新间隔随模板下发到之后创建的物理索引。</p>
+     *
+     * <p>ID 类元数据映射为 keyword(带 doc values), 过滤和 delete-by-query 使用精确 term 匹配,
+     * 不再依赖动态映射生成的 text + keyword 子字段。</p>
+     */
+    private void ensureTemplate() throws Exception {
+        elasticsearchClient.indices().putIndexTemplate(t -> t
+            .name(TEMPLATE_NAME)
+            .indexPatterns(properties.getIndexName() + "*")
+            .template(tpl -> tpl
+                .settings(s -> s
+                    .numberOfReplicas(String.valueOf(properties.getNumberOfReplicas()))
+                    .refreshInterval(r -> r.time(properties.getRefreshInterval())))
+                .mappings(m -> m
+                    .properties(properties.getEmbeddingField(), p -> p.denseVector(dv -> dv
+                        .dims(properties.getDimensions())
+                        .index(true)
+                        .similarity(parseSimilarity(properties.getSimilarity()))))
+                    .properties("content", p -> p.text(tx -> tx))
+                    .properties("metadata", p -> p.object(o -> o
+                        .dynamic(DynamicMapping.True)
+                        .properties(MetadataKeys.USER_ID, mp -> mp.keyword(k -> k.docValues(true)))
+                        .properties(MetadataKeys.DOCUMENT_ID, mp -> mp.keyword(k -> k.docValues(true)))
+                        .properties(MetadataKeys.KB_ID, mp -> mp.keyword(k -> k.docValues(true)))
+                        .properties(MetadataKeys.CHUNK_INDEX, mp -> mp.integer(i -> i))
+                        .properties(MetadataKeys.TITLE, mp -> mp.text(tx -> tx))
+                        .properties("type", mp -> mp.keyword(k -> k))
+                        .properties("chunkType", mp -> mp.keyword(k -> k))
+                        .properties("timestamp", mp -> mp.long_(l -> l))
+                        .properties(MetadataKeys.INDEXED_AT, mp -> mp.long_(l -> l))))
+            ))
+        );
+    }
+
+    /**
+     * 创建向量索引(别名已存在则跳过, 物理索引为 {index}-v{时间戳}, 映射来自索引模板)
+     */
+    public void ensureIndex(String index, Integer shards) {
+        searchIndexService.ensureIndex(index, shards);
+    }
+
+    /**
+     * 按独享索引别名恢复租户列表
+     *
+     * <p>只认别名: 迁移在复制完成后才挂别名, 未完成迁移遗留的物理索引不会被当作独享租户。</p>
+     */
+    private Set<Long> discoverDedicatedTenants() throws Exception {
+        String prefix = properties.tenantIndexPrefix();
+        var response = elasticsearchClient.indices().getAlias(g -> g
+            .index(prefix + "*")
+            .ignoreUnavailable(true)
+            .allowNoIndices(true)
+        );
+        Set<Long> tenants = new HashSet<>();
+        for (var indexAliases : response.result().values()) {
+            for (String alias : indexAliases.aliases().keySet()) {
+                if (alias.startsWith(prefix)) {
+                    Long userId = NumberConversionUtils.toLong(alias.substring(prefix.length()));
+                    if (userId != null) {
+                        tenants.add(userId);
+                    }
+                }
+            }
+        }
+        return tenants;
+    }
+
+    /**
+     * 共享索引中的租户数据(metadata.userId 为 keyword, 精确 term 匹配)
+     */
+    private Query tenantQuery(Long userId) {
+        return Query.of(q -> q.term(t -> t.field("metadata." + USER_ID_KEY).value(String.valueOf(userId))));
+    }
+
+    /**
+     * 从过滤表达式中提取 userId (仅识别顶层 AND 链上的 userId == x)
+     */
+    private Long extractUserId(Filter.Expression expression) {
+        if (expression == null) {
+            return null;
+        }
+        if (expression.type() == Filter.ExpressionType.EQ
+            && expression.left() instanceof Filter.Key key
+            && USER_ID_KEY.equals(key.key())
+            && expression.right() instanceof Filter.Value value) {
+            return metadataUserId(value.value());
+        }
+        if (expression.type() == Filter.ExpressionType.AND) {
+            Long left = expression.left() instanceof Filter.Expression l ? extractUserId(l) : null;
+            if (left != null) {
+                return left;
+            }
+            return expression.right() instanceof Filter.Expression r ? extractUserId(r) : null;
+        }
+        return null;
+    }
+
+    /**
+     * 解析元数据中的 userId (数值, 兼容迁移前的 Base62 编码字符串)
+     */
+    private Long metadataUserId(Object value) {
+        if (value instanceof Number number) {
+            return NumberConversionUtils.numberToLong(number);
+        }
+        return value == null ? null : NumberConversionUtils.toLong(String.valueOf(value));
+    }
+
+    /**
+     * kNN 命中转换为 Document(score 为还原后的相似度, distance = 1 - score)
+     */
+    Document toDocument(Hit<VectorChunk> hit) {
+        double score = hit.score() != null ? normalizeSimilarityScore(hit.score()) : 0.0;
+        return toDocument(hit, score, true);
+    }
+
+    /**
+     * 融合检索命中转换为 Document(score 为 ES 返回的原始分数, 如 RRF 分数, 不写 distance)
+     */
+    Document toRankedDocument(Hit<VectorChunk> hit) {
+        return toDocument(hit, hit.score() != null ? hit.score() : 0.0, false);
+    }
+
+    private Document toDocument(Hit<VectorChunk> hit, double score, boolean withDistance) {
+        VectorChunk source = hit.source();
+        Map<String, Object> metadata = source != null && source.getMetadata() != null
+            ? new HashMap<>(source.getMetadata())
+            : new HashMap<>();
+        if (withDistance) {
+            metadata.put(DISTANCE_KEY, 1 - score);
+        }
+        return Document.builder()
+            .id(hit.id())
+            .text(source != null ? source.getContent() : "")
+            .metadata(metadata)
+            .score(score)
+            .build();
+    }
+
+    /**
+     * 将 ES kNN _score 还原为向量相似度(与 Spring AI ElasticsearchVectorStore 一致)
+     *
+     * <p>cosine/dot_product 的 _score 为 (1 + 相似度) / 2, l2_norm 为 1 / (1 + 距离²)。</p>
+     */
+    double normalizeSimilarityScore(double score) {
+        if ("l2_norm".equalsIgnoreCase(properties.getSimilarity())) {
+            return 1 - Math.sqrt((1 / score) - 1);
+        }
+        return (2 * score) - 1;
+    }
+
+    /**
+     * 将 [0,1] 相似度阈值换算为 ES kNN similarity 参数
+     */
+    float similarityThreshold(double threshold) {
+        if ("l2_norm".equalsIgnoreCase(properties.getSimilarity())) {
+            return (float) (1 - threshold);
+        }
+        return (float) threshold;
+    }
+
+    private DenseVectorSimilarity parseSimilarity(String similarity) {
+        for (DenseVectorSimilarity sim : DenseVectorSimilarity.values()) {
+            if (sim.jsonValue().equalsIgnoreCase(similarity)) {
+                return sim;
+            }
+        }
+        throw new IllegalArgumentException("不支持的相似度算法: " + similarity);
+    }
+
+    private Object tenantLock(Long userId) {
+        return tenantLocks.computeIfAbsent(userId, k -> new Object());
+    }
+
+    /**
+     * 向量索引中的文档结构(与 Spring AI ElasticsearchVectorStore 一致)
+     */
+    @Data
+    @NoArgsConstructor
+    public static class VectorChunk {
+        private String id;
+        private String content;
+        private Map<String, Object> metadata = Collections.emptyMap();
+        private float[] embedding;
+    }
+}
@@ -0,0 +1,32 @@
+package com.ican.service;
+
+import com.ican.model.vo.RagChatResultVO;
+
+/**
+ * 语义答案缓存服务接口
+ * 
+ * <p>同一范围(用户 / 文档 / 知识库)、同一语料版本下，问题向量相似度超过阈值即直接返回缓存的答案和引用，
+ * 跳过检索、重排序和 LLM 调用。范围内语料变更后版本号递增，旧缓存自然失效。</p>
+ * 
+ * @author 席崇援
+ */
+public interface AnswerCacheService {
+    
+    /**
+     * 查找语义相近问题的缓存答案
+     * 
+     * @param scope 范围, 见 {@link CorpusVersionService}
+     * @param query 用户问题
+     * @return 缓存答案, 未命中返回 null
+     */
+    RagChatResultVO get(String scope, String query);
+    
+    /**
+     * 缓存答案
+     * 
+     * @param scope 范围
+     * @param query 用户问题
+     * @param result 答案及引用
+     */
+    void put(String scope, String query, RagChatResultVO result);
+}
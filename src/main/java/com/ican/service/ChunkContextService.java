@@ -0,0 +1,27 @@
+package com.ican.service;
+
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * 分块上下文服务接口
+ * 
+ * <p>入库时 overlap 不拼进分块内容(避免重复嵌入), 只在元数据中记录与下一分块重叠的长度。
+ * 构建 LLM 上下文时由本服务把下一分块的开头补回各分块末尾。</p>
+ * 
+ * @author 席崇援
+ */
+public interface ChunkContextService {
+    
+    /**
+     * 为分块补齐 overlap 文本
+     * 
+     * <p>按 (documentId, chunkIndex + 1) 一次批量回查下一分块, 取其开头 overlapLength 个字符追加到分块末尾。
+     * 没有 overlap 元数据或回查不到下一分块的分块原样返回。</p>
+     * 
+     * @param docs 检索到的分块
+     * @return 与 docs 顺序一致的分块列表(用于构建上下文, 引用仍使用原始分块)
+     */
+    List<Document> withOverlap(List<Document> docs);
+}
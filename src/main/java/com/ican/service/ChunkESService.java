@@ -0,0 +1,68 @@
+package com.ican.service;
+
+import com.ican.model.vo.DocumentSearchResultVO;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * Elasticsearch 分块全文检索服务接口
+ * 
+ * <p>与 ican_documents(整篇文档一条记录)并存，每个分块一条记录，_id 与向量ID相同。
+ * BM25 评分和高亮只作用于分块文本，关键词命中可以和向量命中按分块融合。</p>
+ * 
+ * @author 席崇援
+ */
+public interface ChunkESService {
+    
+    /**
+     * 分块索引名称(别名, 指向当前版本的物理索引)
+     */
+    String INDEX_NAME = "ican_chunks";
+    
+    /**
+     * 批量索引文档分块
+     * 
+     * @param userId 用户ID
+     * @param documentId 文档ID
+     * @param kbId 知识库ID(可为空)
+     * @param title 文档标题
+     * @param type 文档类型
+     * @param chunks 已写入向量库的分块(使用其ID和 chunkIndex 元数据)
+     */
+    void indexChunks(Long userId, Long documentId, Long kbId, String title, String type, List<Document> chunks);
+    
+    /**
+     * 分块级全文检索(带高亮)
+     * 
+     * @param userId 用户ID(安全过滤)
+     * @param kbId 知识库ID(为空时不限定)
+     * @param query 搜索查询
+     * @param topK 返回分块数量
+     * @return 分块命中(含 chunkId、chunkIndex 和高亮片段)
+     */
+    default List<DocumentSearchResultVO> search(Long userId, Long kbId, String query, int topK) {
+        return search(userId, kbId, null, query, topK);
+    }
+    
+    /**
+     * 分块级全文检索(带高亮), 可限定单个文档
+     * 
+     * @param userId 用户ID(安全过滤)
+     * @param kbId 知识库ID(为空时不限定)
+     * @param documentId 文档ID(为空时不限定)
+     * @param query 搜索查询
+     * @param topK 返回分块数量
+     * @return 分块命中(含 chunkId、chunkIndex 和高亮片段)
+     */
+    List<DocumentSearchResultVO> search(Long userId, Long kbId, Long documentId, String query, int topK);
+    
+    /**
+     * 删除文档的所有分块
+     * 
+     * <p>先等待已提交的异步分块写入完成再执行 delete-by-query, 删除之前提交的分块不会在删除后落盘。</p>
+     * 
+     * @param documentId 文档ID
+     */
+    void deleteByDocument(Long documentId);
+}
@@ -0,0 +1,29 @@
+package com.ican.service;
+
+import com.ican.model.vo.CitationVO;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+
+/**
+ * 引用构建服务接口
+ * 
+ * <p>把检索到的分块转换为带分块ID、位置和高亮关键词的引用。RAG 问答、论文分析、教学设计共用。</p>
+ * 
+ * @author 席崇援
+ */
+public interface CitationService {
+    
+    /**
+     * 构建引用列表
+     * 
+     * <p>元数据中已有 chunkId 的分块直接使用；其余按 (documentId, chunkIndex) 一次批量回查分块ID，
+     * 不再逐条查询。</p>
+     * 
+     * @param docs 检索到的分块
+     * @param query 查询文本(拆分为前端高亮关键词)
+     * @param maxLen 片段最大长度, 超出截断
+     * @return 与 docs 顺序一致的引用列表
+     */
+    List<CitationVO> buildCitations(List<Document> docs, String query, int maxLen);
+}
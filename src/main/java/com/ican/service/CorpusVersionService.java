@@ -0,0 +1,41 @@
+package com.ican.service;
+
+/**
+ * 语料版本服务接口
+ * 
+ * <p>按范围(用户 / 文档 / 知识库)维护单调递增的语料版本号。文档上传、删除、重建索引、归档时递增，
+ * 依赖语料的缓存(答案缓存、检索结果缓存等)把版本号放进缓存键，版本变化即自然失效。</p>
+ * 
+ * @author 席崇援
+ */
+public interface CorpusVersionService {
+    
+    /**
+     * 获取范围当前版本
+     * 
+     * @param scope 范围, 见 {@link #userScope(Long)} / {@link #documentScope(Long)} / {@link #kbScope(Long)}
+     * @return 版本号(从未变更过为 0, 读取失败为 -1, 此时不应读写缓存)
+     */
+    long currentVersion(String scope);
+    
+    /**
+     * 文档语料变更: 递增所属用户、文档及知识库的版本
+     * 
+     * @param userId 用户ID
+     * @param documentId 文档ID(可为空)
+     * @param kbIds 受影响的知识库ID(可为空)
+     */
+    void bump(Long userId, Long documentId, Long... kbIds);
+    
+    static String userScope(Long userId) {
+        return "user:" + userId;
+    }
+    
+    static String documentScope(Long documentId) {
+        return "doc:" + documentId;
+    }
+    
+    static String kbScope(Long kbId) {
+        return "kb:" + kbId;
+    }
+}
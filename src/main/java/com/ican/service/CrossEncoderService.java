@@ -0,0 +1,29 @@
+package com.ican.service;
+
+import java.util.Map;
+
+/**
+ * 本地 cross-encoder 评分服务接口
+ * 
+ * <p>问题与候选拼接后整体输入模型，直接输出相关性分数，精度接近 LLM 评分，
+ * 但在 CPU 上每批只需数十毫秒，且不产生模型调用费用。</p>
+ * 
+ * @author 席崇援
+ */
+public interface CrossEncoderService {
+    
+    /**
+     * 模型是否已加载(未配置或加载失败时为 false, 调用方应退回其他评分方式)
+     */
+    boolean isAvailable();
+    
+    /**
+     * 批量计算相关性分数
+     * 
+     * @param query 查询问题
+     * @param candidates 候选(vectorId -> content)
+     * @param deadline 截止时间(毫秒时间戳)
+     * @return 截止时间前完成评分的候选 -> 相关性分数(0-1)
+     */
+    Map<String, Double> score(String query, Map<String, String> candidates, long deadline);
+}
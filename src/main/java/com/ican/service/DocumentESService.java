@@ -18,21 +18,30 @@ import java.util.List;
 public interface DocumentESService {
     
     /**
-     * 索引文档到 Elasticsearch
+     * 文档索引名称(别名, 指向当前版本的物理索引)
+     */
+    String INDEX_NAME = "ican_documents";
+    
+    /**
+     * 索引文档到 Elasticsearch(异步批量写入)
+     * 
+     * <p>写入失败发生在批量请求返回时, 只记录日志和 es.bulk.* 指标, 不会抛给调用方;
+     * 抛出 BusinessException 只表示操作未能提交到批量写入器(如写入器已关闭)。</p>
      * 
      * @param documentId 文档ID
      * @param userId 用户ID
+     * @param kbId 知识库ID(可为空)
      * @param title 标题
      * @param content 内容
      * @param type 类型
      * @param fileSize 文件大小
      * @param status 状态
      */
-    void indexDocument(Long documentId, Long userId, String title, String content, 
+    void indexDocument(Long documentId, Long userId, Long kbId, String title, String content, 
                       String type, Long fileSize, String status);
     
     /**
-     * 更新文档状态
+     * 更新文档状态(局部更新, 异步批量写入)
      * 
      * @param documentId 文档ID
      * @param status 状态
@@ -57,15 +66,28 @@ public interface DocumentESService {
      */
     List<DocumentSearchResultVO> fullTextSearchWithHighlight(Long userId, String query, int topK);
     
+    /**
+     * 全文搜索文档 - 限定知识库范围
+     * 
+     * @param userId 用户ID(安全过滤)
+     * @param kbId 知识库ID(为空时不限定)
+     * @param query 搜索查询
+     * @param topK 返回数量
+     * @return 搜索结果列表(含高亮片段和关键词)
+     */
+    List<DocumentSearchResultVO> fullTextSearchWithHighlight(Long userId, Long kbId, String query, int topK);
+    
     /**
      * 删除文档
      * 
+     * <p>先等待已提交的异步写入完成再提交删除, 避免删除被在途的写入覆盖。</p>
+     * 
      * @param documentId 文档ID
      */
     void deleteDocument(Long documentId);
     
     /**
-     * 获取用户的所有文档
+     * 获取用户的所有文档(不含正文 content)
      * 
      * @param userId 用户ID
      * @return 文档列表
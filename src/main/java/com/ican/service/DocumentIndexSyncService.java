@@ -0,0 +1,27 @@
+package com.ican.service;
+
+import java.util.List;
+
+/**
+ * 索引元数据同步服务接口
+ * 
+ * <p>MySQL 中文档的归属变化(如归档到知识库)需要同步到向量索引和 ican_documents 全文索引，
+ * 检索时才能直接以元数据做预过滤。</p>
+ * 
+ * <p>调用方: 批量归档、删除知识库(文档移出), 以及向量化结束时发现归属已变更的文档。
+ * 同步失败计入 index.kb_sync.* 指标。</p>
+ * 
+ * @author 席崇援
+ */
+public interface DocumentIndexSyncService {
+    
+    /**
+     * 同步文档所属知识库(update-by-query)
+     * 
+     * @param userId 用户ID(安全过滤, 同时决定向量索引和 routing)
+     * @param documentIds 文档ID列表
+     * @param kbId 知识库ID, 为空表示移出知识库
+     * @return 更新的向量分块数
+     */
+    long syncKnowledgeBase(Long userId, List<Long> documentIds, Long kbId);
+}
@@ -3,7 +3,7 @@ package com.ican.service;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.ican.model.dto.DocumentQueryDTO;
 import com.ican.model.vo.DocumentFileVO;
-import com.ican.model.vo.DocumentSearchResultVO;
+import com.ican.model.vo.HybridSearchResultVO;
 import com.ican.model.vo.DocumentUploadVO;
 import com.ican.model.vo.DocumentVO;
 import org.springframework.ai.document.Document;
@@ -80,9 +80,9 @@ public interface DocumentService {
      * 
      * @param query 搜索查询
      * @param topK 最终返回数量
-     * @return 混合搜索结果(含高亮信息)
+     * @return 混合搜索结果(含高亮信息及各检索路耗时)
      */
-    List<DocumentSearchResultVO> hybridSearch(String query, int topK);
+    HybridSearchResultVO hybridSearch(String query, int topK);
     
     /**
      * 删除文档
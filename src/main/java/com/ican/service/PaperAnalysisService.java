@@ -17,6 +17,11 @@ import java.util.List;
  */
 public interface PaperAnalysisService {
     
+    /**
+     * 论文总结的固定检索问题(启动时预热其向量)
+     */
+    String SUMMARY_QUERY = "请总结这篇论文的核心内容、主要创新点、研究方法和实验结果";
+    
     /**
      * 论文总结
      * 
@@ -1,6 +1,7 @@
 package com.ican.service;
 
 import com.ican.model.vo.RagChatResultVO;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
  * RAG 服务接口 - 核心对话功能
@@ -8,6 +9,8 @@ import com.ican.model.vo.RagChatResultVO;
  * 说明：
  * - 论文分析相关功能已迁移至 {@link PaperAnalysisService}
  * - 教学设计相关功能已迁移至 {@link TeachingPlanService}
+ * - 三种问答均提供 SSE 流式版本: 检索完成后先推送 citations 事件，回答以 delta 事件增量推送，
+ *   最后的 done 事件携带 token 用量
  * 
  * @author 席崇援
  */
@@ -23,6 +26,15 @@ public interface RAGService {
      */
     RagChatResultVO ragChat(String conversationId, String query);
     
+    /**
+     * RAG 问答（SSE 流式）
+     * 
+     * @param conversationId 会话ID
+     * @param query 用户问题
+     * @return citations → delta* → done 事件流
+     */
+    SseEmitter ragChatStream(String conversationId, String query);
+    
     /**
      * 基于文档的问答（带引用）
      * 限定在单一文档的上下文中进行问答
@@ -33,6 +45,15 @@ public interface RAGService {
      */
     RagChatResultVO documentChat(Long documentId, String query);
     
+    /**
+     * 基于文档的问答（SSE 流式）
+     * 
+     * @param documentId 文档ID
+     * @param query 用户问题
+     * @return citations → delta* → done 事件流
+     */
+    SseEmitter documentChatStream(Long documentId, String query);
+    
     /**
      * 基于知识库的问答（带引用）
      * 在指定知识库的所有文档中进行检索和问答
@@ -42,5 +63,14 @@ public interface RAGService {
      * @return AI 回答和引用列表
      */
     RagChatResultVO knowledgeBaseChat(Long knowledgeBaseId, String query);
+    
+    /**
+     * 基于知识库的问答（SSE 流式）
+     * 
+     * @param knowledgeBaseId 知识库ID
+     * @param query 用户问题
+     * @return citations → delta* → done 事件流
+     */
+    SseEmitter knowledgeBaseChatStream(Long knowledgeBaseId, String query);
 }
 
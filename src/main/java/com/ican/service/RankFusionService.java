@@ -0,0 +1,99 @@
+package com.ican.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 排序融合服务接口
+ * 
+ * <p>按键(分块ID或文档ID)融合多路排序结果，支持两种方式:</p>
+ * <ul>
+ *   <li><b>rrf</b>: 加权 RRF, score(d) = Σ w_i / (k + rank_i(d))，只看名次，不受各路分数量纲影响</li>
+ *   <li><b>linear</b>: 各路分数 min-max 归一化到 [0,1] 后加权求和，保留分数间距信息</li>
+ * </ul>
+ * 
+ * <p>同一路内分数相同的条目名次相同(如同一文档的多个分块继承文档的 BM25 名次)；
+ * 同一路内重复的键只取第一次出现。</p>
+ * 
+ * @author 席崇援
+ */
+public interface RankFusionService {
+    
+    /**
+     * 使用配置的融合方式融合多路结果
+     * 
+     * @param lists 各路排序结果(按相关度降序)
+     * @param topK 返回数量
+     * @return 融合后按分数降序的结果
+     */
+    List<FusedHit> fuse(List<RankedList> lists, int topK);
+    
+    /**
+     * 使用指定融合方式融合多路结果
+     * 
+     * @param lists 各路排序结果(按相关度降序)
+     * @param method 融合方式
+     * @param topK 返回数量
+     * @return 融合后按分数降序的结果
+     */
+    List<FusedHit> fuse(List<RankedList> lists, FusionMethod method, int topK);
+    
+    /**
+     * 融合方式
+     */
+    enum FusionMethod {
+        RRF, LINEAR;
+        
+        public static FusionMethod of(String value) {
+            return "linear".equalsIgnoreCase(value) ? LINEAR : RRF;
+        }
+    }
+    
+    /**
+     * 单路排序结果(键 + 原始分数, 按相关度降序追加)
+     */
+    @Getter
+    class RankedList {
+        private final String name;
+        private final double weight;
+        private final List<String> keys = new ArrayList<>();
+        private double[] scores = new double[16];
+        
+        public RankedList(String name, double weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+        
+        public RankedList add(String key, double score) {
+            if (keys.size() == scores.length) {
+                scores = Arrays.copyOf(scores, scores.length * 2);
+            }
+            scores[keys.size()] = score;
+            keys.add(key);
+            return this;
+        }
+        
+        public int size() {
+            return keys.size();
+        }
+        
+        public double scoreAt(int index) {
+            return scores[index];
+        }
+    }
+    
+    /**
+     * 融合结果
+     */
+    @Data
+    @AllArgsConstructor
+    class FusedHit {
+        private String key;
+        private double score;
+    }
+}
@@ -0,0 +1,35 @@
+package com.ican.service;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 重排序评分缓存服务接口
+ * 
+ * <p>缓存键: (归一化问题哈希, vectorId, 评分器版本)。分块向量ID在入库时随机生成、内容不会原地修改，
+ * 文档重新入库会产生新的 vectorId，因此无需按语料版本失效。追问、重试和刷新对同一批分块重复重排序时，
+ * 命中的候选不再调用评分器。</p>
+ * 
+ * @author 席崇援
+ */
+public interface RerankScoreCacheService {
+    
+    /**
+     * 读取已缓存的分数
+     * 
+     * @param query 查询问题
+     * @param reranker 评分器版本(评分后端、模式、模型等, 任一变化即视为不同评分器)
+     * @param vectorIds 候选 vectorId
+     * @return 命中的 vectorId -> 分数(可修改), 未启用时为空
+     */
+    Map<String, Double> getScores(String query, String reranker, Collection<String> vectorIds);
+    
+    /**
+     * 写入分数
+     * 
+     * @param query 查询问题
+     * @param reranker 评分器版本
+     * @param scores vectorId -> 分数
+     */
+    void putScores(String query, String reranker, Map<String, Double> scores);
+}
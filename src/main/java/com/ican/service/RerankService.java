@@ -13,12 +13,15 @@ public interface RerankService {
     /**
      * 对候选文档进行重排序
      * 
+     * <p>候选以向量索引中的分块ID(vectorId)标识: 向量初排直接读取入库时存储的分块向量,
+     * 评分结果按 (问题, vectorId, 评分器版本) 缓存。</p>
+     * 
      * @param query 查询问题
-     * @param candidates 候选文档列表(chunkId -> content)
+     * @param candidates 候选文档列表(vectorId -> content)
      * @param topK 返回前K个结果
-     * @return 排序后的文档ID列表
+     * @return 排序后的 vectorId 列表
      */
-    List<Long> rerank(String query, Map<Long, String> candidates, int topK);
+    List<String> rerank(String query, Map<String, String> candidates, int topK);
     
     /**
      * 计算查询和文档的相关性分数
@@ -0,0 +1,66 @@
+package com.ican.service;
+
+import com.ican.model.vo.DocumentSearchResultVO;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 检索结果缓存服务接口
+ * 
+ * <p>缓存键: (归一化问题, 过滤条件, topK, 阈值, 用户语料版本)。命中时直接返回排好序的检索结果，
+ * 既不计算问题向量也不访问 ES。用户上传、删除、清除或归档文档时语料版本递增，旧结果自然失效。</p>
+ * 
+ * @author 席崇援
+ */
+public interface RetrievalCacheService {
+    
+    /**
+     * 向量检索(带缓存)
+     * 
+     * @param userId 过滤条件中的用户ID, 为空时不缓存
+     * @param request 检索请求
+     * @param loader 未命中时执行的实际检索
+     * @return 检索结果
+     */
+    List<Document> vectorSearch(Long userId, SearchRequest request, Supplier<List<Document>> loader);
+    
+    /**
+     * 单请求混合检索(带缓存), 缓存键与向量检索相同但分属不同命名空间
+     * 
+     * @param userId 过滤条件中的用户ID, 为空时不缓存
+     * @param request 检索请求
+     * @param loader 未命中时执行的实际检索
+     * @return 检索结果
+     */
+    List<Document> hybridSearch(Long userId, SearchRequest request, Supplier<List<Document>> loader);
+    
+    /**
+     * 全文检索(带缓存)
+     * 
+     * @param userId 用户ID
+     * @param kbId 知识库ID, 可为空
+     * @param query 查询文本
+     * @param topK 返回数量
+     * @param loader 未命中时执行的实际检索
+     * @return 检索结果
+     */
+    List<DocumentSearchResultVO> fullTextSearch(Long userId, Long kbId, String query, int topK,
+                                                Supplier<List<DocumentSearchResultVO>> loader);
+    
+    /**
+     * 分块级全文检索(带缓存)
+     * 
+     * @param userId 用户ID
+     * @param kbId 知识库ID, 可为空
+     * @param documentId 文档ID, 可为空
+     * @param query 查询文本
+     * @param topK 返回数量
+     * @param loader 未命中时执行的实际检索
+     * @return 检索结果
+     */
+    List<DocumentSearchResultVO> chunkSearch(Long userId, Long kbId, Long documentId, String query, int topK,
+                                             Supplier<List<DocumentSearchResultVO>> loader);
+}
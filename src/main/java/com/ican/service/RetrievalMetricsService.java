@@ -0,0 +1,39 @@
+package com.ican.service;
+
+import com.ican.model.vo.MetricStatVO;
+
+import java.util.Map;
+
+/**
+ * 检索指标服务接口
+ * 
+ * <p>进程内统计检索链路的耗时、候选集规模和缓存命中等指标，用于对比不同检索路径的效果。</p>
+ * 
+ * @author 席崇援
+ */
+public interface RetrievalMetricsService {
+    
+    /**
+     * 记录一次数值(耗时毫秒、候选数量等)
+     * 
+     * @param name 指标名
+     * @param value 数值
+     */
+    void record(String name, long value);
+    
+    /**
+     * 计数加一
+     * 
+     * @param name 指标名
+     */
+    default void increment(String name) {
+        record(name, 1);
+    }
+    
+    /**
+     * 获取所有指标快照
+     * 
+     * @return 指标名 -> 统计值
+     */
+    Map<String, MetricStatVO> snapshot();
+}
@@ -0,0 +1,141 @@
+package com.ican.service;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 搜索索引生命周期服务接口
+ * 
+ * <p>ican_documents、ican_chunks 和向量索引对外均为别名, 物理索引命名为 {别名}-v{时间戳}：</p>
+ * <ul>
+ *   <li>映射、副本数、刷新间隔来自索引模板, 启动时按配置重新注册</li>
+ *   <li>副本数、刷新间隔为动态设置, 直接在线应用到当前物理索引</li>
+ *   <li>分片数、分词器、routing 变更需要 reindex 到新物理索引, 完成后原子切换别名</li>
+ * </ul>
+ * 
+ * <p>所有写入经 {@link #write} / {@link #mutate} 进入别名的写入闸门: 复制期间的删除和更新被记录并在切换前回放,
+ * 最后一轮追平和别名切换在 {@link #blockWrites} 内停写执行, 切换前后的写入不会丢失或被旧数据覆盖。
+ * 闸门只在本实例内生效, 多实例部署时 reindex 期间需停止其他实例的写入。</p>
+ * 
+ * @author 席崇援
+ */
+public interface SearchIndexService {
+    
+    /**
+     * 确保别名存在: 别名和同名索引都不存在时, 创建 {别名}-v{时间戳} 并挂载为写索引
+     * 
+     * <p>早期创建的同名物理索引保持不变, 首次 reindex 时会被替换为别名。</p>
+     * 
+     * @param alias 别名
+     * @param shards 分片数
+     */
+    void ensureIndex(String alias, Integer shards);
+    
+    /**
+     * 创建物理索引(映射和动态设置来自索引模板, 已存在则跳过)
+     * 
+     * @param index 物理索引名
+     * @param shards 分片数
+     */
+    void createIndex(String index, Integer shards);
+    
+    /**
+     * 将配置中的副本数和刷新间隔应用到别名当前指向的物理索引
+     * 
+     * @param alias 别名(或旧的同名物理索引)
+     */
+    void applyDynamicSettings(String alias);
+    
+    /**
+     * 后台 reindex 并切换别名
+     * 
+     * <p>按当前模板创建新物理索引, 服务端 _reindex 全量复制后按写入时间追平增量,
+     * 再停写追平最后一轮、回放复制期间的删除和更新, 原子地将别名切换到新索引并删除旧索引。
+     * 同一别名同时只运行一个任务。</p>
+     * 
+     * @param alias 别名(或旧的同名物理索引)
+     * @return 新物理索引名
+     */
+    CompletableFuture<String> reindex(String alias);
+    
+    /**
+     * 别名是否正在 reindex
+     */
+    boolean isReindexing(String alias);
+    
+    /**
+     * 启动时对账: 在线应用动态设置, 分片数与配置不一致或显式配置的别名提交后台 reindex
+     */
+    void reconcile();
+    
+    /**
+     * 执行写入(index / bulk), 别名停写期间等待切换完成
+     * 
+     * <p>向量共享索引和独享索引共用一个闸门。</p>
+     * 
+     * @param alias 写入的别名
+     * @param write 写操作
+     * @return 写操作的返回值
+     */
+    <T> T write(String alias, IndexWrite<T> write) throws Exception;
+    
+    /**
+     * 执行删除或更新(按 ID 删除、delete-by-query、update-by-query)
+     * 
+     * <p>同 {@link #write}; 该别名存在打开的复制窗口时另行记录, 由 {@link CopyWindow#replay} 回放到新索引,
+     * 复制快照之后的删除和更新不会丢失。</p>
+     * 
+     * @param alias 别名
+     * @param mutation 删除或更新操作(回放时以新物理索引名调用, 须可重复执行)
+     * @return 首次执行的返回值
+     */
+    <T> T mutate(String alias, IndexWrite<T> mutation) throws Exception;
+    
+    /**
+     * 打开复制窗口, 之后提交到该别名的删除和更新被记录, 直到窗口关闭
+     * 
+     * @param alias 别名
+     * @return 复制窗口
+     */
+    CopyWindow openCopyWindow(String alias);
+    
+    /**
+     * 停止别名的写入并执行 action(最后一轮追平、回放和别名切换)
+     * 
+     * <p>取得写锁后先等待批量写入器中已提交的操作完成, 超时则放弃。</p>
+     * 
+     * @param alias 别名
+     * @param action 停写期间执行的操作
+     * @return action 的返回值
+     */
+    <T> T blockWrites(String alias, Callable<T> action) throws Exception;
+    
+    /**
+     * 索引写操作
+     */
+    @FunctionalInterface
+    interface IndexWrite<T> {
+        
+        /**
+         * @param index 目标索引(调用时传入的别名, 回放时为新物理索引)
+         */
+        T apply(String index) throws Exception;
+    }
+    
+    /**
+     * 复制窗口
+     */
+    interface CopyWindow extends AutoCloseable {
+        
+        /**
+         * 按提交顺序将窗口内的删除和更新回放到目标索引(在 {@link #blockWrites} 内调用)
+         * 
+         * @param target 新物理索引
+         * @return 回放的操作数
+         */
+        int replay(String target) throws Exception;
+        
+        @Override
+        void close();
+    }
+}
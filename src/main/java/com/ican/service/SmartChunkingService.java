@@ -45,11 +45,12 @@ public interface SmartChunkingService {
      *   <li>添加 overlap 确保跨章节检索</li>
      * </ul>
      * 
+     * @param content 持久化的文档全文(用于定位章节在原文中的偏移量, 可为空)
      * @param metadata 文档元数据(必须包含章节信息)
      * @param overlapSize 章节间重叠大小(token数)
      * @return 分块结果列表
      */
-    List<ChunkResult> chunkBySections(DocumentMetadataVO metadata, int overlapSize);
+    List<ChunkResult> chunkBySections(String content, DocumentMetadataVO metadata, int overlapSize);
     
     /**
      * 语义分块 - 基于句子相似度
@@ -70,12 +71,19 @@ public interface SmartChunkingService {
     
     /**
      * 分块结果
+     * 
+     * <p>分块内容是源文本上的视图(source + [startPosition, endPosition)),
+     * 不再复制字符串; overlap 仅以 [overlapStart, overlapEnd) 偏移量记录,
+     * 只有在真正需要上下文的地方才通过 {@link #getOverlapText()} 解析。</p>
+     * 
+     * <p>章节分块的 source 是拼接出的章节文本, 并非持久化的文档全文, 因此另外记录
+     * [documentStart, documentEnd) 作为分块在文档全文中的偏移量(无法定位时为 -1)。</p>
      */
     class ChunkResult {
         /**
-         * 分块内容
+         * 源文本(多个分块共享同一引用)
          */
-        private String content;
+        private String source;
         
         /**
          * 分块类型: "section"=章节分块, "semantic"=语义分块
@@ -93,38 +101,118 @@ public interface SmartChunkingService {
         private Integer sectionLevel;
         
         /**
-         * 在原文档中的起始位置
+         * 在源文本中的起始位置
          */
         private int startPosition;
         
         /**
-         * 在原文档中的结束位置
+         * 在源文本中的结束位置(不含)
          */
         private int endPosition;
         
         /**
-         * Token 数量(估算)
+         * overlap 在源文本中的起始位置(无 overlap 时等于 overlapEnd)
+         */
+        private int overlapStart;
+        
+        /**
+         * overlap 在源文本中的结束位置(不含)
+         */
+        private int overlapEnd;
+        
+        /**
+         * 在持久化文档全文中的起始位置(-1 表示无法定位)
+         */
+        private int documentStart = -1;
+        
+        /**
+         * 在持久化文档全文中的结束位置(不含, -1 表示无法定位)
+         */
+        private int documentEnd = -1;
+        
+        /**
+         * Token 数量(估算, 懒计算)
          */
-        private int tokenCount;
+        private int tokenCount = -1;
         
         // Constructors
         public ChunkResult() {}
         
-        public ChunkResult(String content, String type, int startPosition, int endPosition) {
-            this.content = content;
-            this.type = type;
-            this.startPosition = startPosition;
-            this.endPosition = endPosition;
-            this.tokenCount = estimateTokenCount(content);
+        /**
+         * 创建源文本上的视图分块
+         * 
+         * @param source 源文本
+         * @param type 分块类型
+         * @param startPosition 起始位置
+         * @param endPosition 结束位置(不含)
+         * @return 分块
+         */
+        public static ChunkResult view(String source, String type, int startPosition, int endPosition) {
+            ChunkResult chunk = new ChunkResult();
+            chunk.source = source;
+            chunk.type = type;
+            chunk.startPosition = startPosition;
+            chunk.endPosition = endPosition;
+            chunk.overlapStart = endPosition;
+            chunk.overlapEnd = endPosition;
+            chunk.documentStart = startPosition;
+            chunk.documentEnd = endPosition;
+            return chunk;
+        }
+        
+        /**
+         * 物化分块内容(仅在需要 String 时调用, 如嵌入和入库)
+         */
+        public String getContent() {
+            if (source == null) {
+                return null;
+            }
+            if (startPosition == 0 && endPosition == source.length()) {
+                return source;
+            }
+            return source.substring(startPosition, endPosition);
+        }
+        
+        public void setContent(String content) {
+            this.source = content;
+            this.startPosition = 0;
+            this.endPosition = content == null ? 0 : content.length();
+            this.overlapStart = this.endPosition;
+            this.overlapEnd = this.endPosition;
+            this.documentStart = -1;
+            this.documentEnd = -1;
+            this.tokenCount = -1;
+        }
+        
+        /**
+         * 分块内容的零拷贝视图
+         */
+        public CharSequence getContentView() {
+            return source == null ? "" : java.nio.CharBuffer.wrap(source, startPosition, endPosition);
+        }
+        
+        /**
+         * 设置 overlap 范围(源文本偏移量), 超出源文本的部分会被截断
+         */
+        public void setOverlap(int overlapStart, int overlapEnd) {
+            int limit = source == null ? 0 : source.length();
+            this.overlapStart = Math.max(0, Math.min(overlapStart, limit));
+            this.overlapEnd = Math.max(this.overlapStart, Math.min(overlapEnd, limit));
         }
         
-        // Getters & Setters
-        public String getContent() { return content; }
-        public void setContent(String content) { 
-            this.content = content;
-            this.tokenCount = estimateTokenCount(content);
+        public boolean hasOverlap() {
+            return overlapEnd > overlapStart;
         }
         
+        /**
+         * 按需解析 overlap 文本(不会写入分块内容)
+         */
+        public String getOverlapText() {
+            return hasOverlap() ? source.substring(overlapStart, overlapEnd) : "";
+        }
+        
+        public String getSource() { return source; }
+        
         public String getType() { return type; }
         public void setType(String type) { this.type = type; }
         
@@ -135,12 +223,39 @@ public interface SmartChunkingService {
         public void setSectionLevel(Integer sectionLevel) { this.sectionLevel = sectionLevel; }
         
         public int getStartPosition() { return startPosition; }
-        public void setStartPosition(int startPosition) { this.startPosition = startPosition; }
         
         public int getEndPosition() { return endPosition; }
-        public void setEndPosition(int endPosition) { this.endPosition = endPosition; }
         
-        public int getTokenCount() { return tokenCount; }
+        public int getOverlapStart() { return overlapStart; }
+        
+        public int getOverlapEnd() { return overlapEnd; }
+        
+        public int getOverlapLength() { return overlapEnd - overlapStart; }
+        
+        /**
+         * 设置分块在持久化文档全文中的范围(-1 表示无法定位)
+         */
+        public void setDocumentRange(int documentStart, int documentEnd) {
+            this.documentStart = documentStart;
+            this.documentEnd = documentEnd;
+        }
+        
+        public boolean hasDocumentRange() {
+            return documentStart >= 0 && documentEnd >= documentStart;
+        }
+        
+        public int getDocumentStart() { return documentStart; }
+        
+        public int getDocumentEnd() { return documentEnd; }
+        
+        public int getLength() { return endPosition - startPosition; }
+        
+        public int getTokenCount() {
+            if (tokenCount < 0) {
+                tokenCount = estimateTokenCount(getContentView());
+            }
+            return tokenCount;
+        }
         public void setTokenCount(int tokenCount) { this.tokenCount = tokenCount; }
         
         /**
@@ -148,7 +263,7 @@ public interface SmartChunkingService {
          * 中文: ~1.5字符/token
          * 英文: ~4字符/token
          */
-        private int estimateTokenCount(String text) {
+        private int estimateTokenCount(CharSequence text) {
             if (text == null) return 0;
             // 检测是否包含中文
             boolean hasChinese = text.chars().anyMatch(c -> c >= 0x4E00 && c <= 0x9FA5);
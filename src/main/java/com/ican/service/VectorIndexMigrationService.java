@@ -0,0 +1,32 @@
+package com.ican.service;
+
+import java.util.Map;
+
+/**
+ * 向量索引迁移服务接口
+ * 
+ * <p>将旧索引(元数据 ID 为 Base62 字符串、动态映射)迁移到按索引模板创建的新索引：
+ * ID 类元数据改为数值写入并映射为 keyword，迁移完成后原索引名以别名指向新索引。</p>
+ * 
+ * @author 席崇援
+ */
+public interface VectorIndexMigrationService {
+    
+    /**
+     * 迁移共享索引和所有独享索引(已是新映射的索引会跳过)
+     * 
+     * <p>全量复制后按 metadata.timestamp 追平迁移期间的写入, 无需暂停文档向量化。</p>
+     * 
+     * @return 索引名 -> 迁移的分块数
+     */
+    Map<String, Long> migrateAll();
+    
+    /**
+     * 迁移单个索引
+     * 
+     * @param indexName 索引名(或别名)
+     * @param shared 是否为共享索引(决定分片数和 routing)
+     * @return 迁移的分块数, 无需迁移返回 0
+     */
+    long migrate(String indexName, boolean shared);
+}
@@ -0,0 +1,53 @@
+package com.ican.service;
+
+import com.ican.model.vo.PurgeResultVO;
+
+/**
+ * 索引清除服务接口
+ * 
+ * <p>按元数据条件(userId / documentId / kbId)直接在向量索引和 ican_documents
+ * 全文索引上执行 delete-by-query，不再通过空查询的相似度检索拉取向量 ID。</p>
+ * 
+ * @author 席崇援
+ */
+public interface VectorPurgeService {
+    
+    /**
+     * 按条件清除向量和全文索引
+     * 
+     * <p>匹配数量超过异步阈值时，ES 端以后台任务执行删除并立即返回任务ID。</p>
+     * 
+     * @param userId 用户ID(必填,安全过滤)
+     * @param documentId 文档ID(可选)
+     * @param kbId 知识库ID(可选)
+     * @return 清除结果(含删除数量)
+     */
+    PurgeResultVO purge(Long userId, Long documentId, Long kbId);
+    
+    /**
+     * 清除索引并同步数据库记录(面向用户的清除入口)
+     * 
+     * <p>在 {@link #purge} 之后删除匹配文档的 document_vectors / document_chunks 映射,
+     * 并把文档状态重置为 pending, 避免数据库仍显示"已完成"而索引已被清空。
+     * 文档本身和原始文件保留, 可通过重建索引恢复。</p>
+     * 
+     * <p>始终同步删除(不使用异步阈值): 返回时删除已完成, 之后立即重建索引不会被仍在执行的删除任务清掉。</p>
+     * 
+     * @param userId 用户ID(必填,安全过滤)
+     * @param documentId 文档ID(可选)
+     * @param kbId 知识库ID(可选)
+     * @return 清除结果(含删除数量和重置的文档数)
+     */
+    PurgeResultVO purgeWithRecords(Long userId, Long documentId, Long kbId);
+    
+    /**
+     * 清除单个文档的向量和全文索引
+     * 
+     * @param documentId 文档ID
+     * @param userId 用户ID
+     * @return 清除结果(含删除数量)
+     */
+    default PurgeResultVO purgeDocument(Long documentId, Long userId) {
+        return purge(userId, documentId, null);
+    }
+}
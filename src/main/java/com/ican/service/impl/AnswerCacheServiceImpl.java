@@ -0,0 +1,165 @@
+package com.ican.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ican.config.RAGConfig;
+import com.ican.model.vo.RagChatResultVO;
+import com.ican.service.AnswerCacheService;
+import com.ican.service.CorpusVersionService;
+import com.ican.service.RetrievalMetricsService;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 语义答案缓存服务实现
+ * 
+ * <p>存储结构: Redis List rag:answer:{scope}:v{version}，每个元素为一条问答(含问题向量)，
+ * 按写入时间倒序保留最多 maxEntriesPerScope 条。查找时取出该范围当前版本的所有条目，
+ * 在本地计算余弦相似度。问题向量来自带缓存的 EmbeddingModel，随后的检索会复用同一向量。</p>
+ * 
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class AnswerCacheServiceImpl implements AnswerCacheService {
+    
+    private static final String ANSWER_CACHE_PREFIX = "rag:answer:";
+    
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final CorpusVersionService corpusVersionService;
+    private final RetrievalMetricsService retrievalMetricsService;
+    private final RAGConfig ragConfig;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @Override
+    public RagChatResultVO get(String scope, String query) {
+        RAGConfig.AnswerCacheConfig config = ragConfig.getAnswerCache();
+        if (!Boolean.TRUE.equals(config.getEnabled())) {
+            return null;
+        }
+        
+        String key = cacheKey(scope);
+        if (key == null) {
+            retrievalMetricsService.increment("answer_cache.bypass");
+            return null;
+        }
+        
+        try {
+            List<Object> entries = redisTemplate.opsForList().range(key, 0, -1);
+            if (entries == null || entries.isEmpty()) {
+                retrievalMetricsService.increment("answer_cache.miss");
+                return null;
+            }
+            
+            float[] queryEmbedding = embeddingModel.embed(query);
+            CacheEntry best = null;
+            double bestSimilarity = -1;
+            for (Object raw : entries) {
+                CacheEntry entry = objectMapper.readValue(raw.toString(), CacheEntry.class);
+                double similarity = cosine(queryEmbedding, decode(entry.getEmbedding()));
+                if (similarity > bestSimilarity) {
+                    bestSimilarity = similarity;
+                    best = entry;
+                }
+            }
+            
+            if (best != null && bestSimilarity >= config.getSimilarityThreshold()) {
+                retrievalMetricsService.increment("answer_cache.hit");
+                log.info("答案缓存命中: scope={}, similarity={}, query={}, cachedQuery={}",
+                    scope, String.format("%.4f", bestSimilarity), query, best.getQuery());
+                return best.getResult();
+            }
+            retrievalMetricsService.increment("answer_cache.miss");
+            return null;
+        } catch (Exception e) {
+            log.warn("读取答案缓存失败: scope={}, error={}", scope, e.getMessage());
+            retrievalMetricsService.increment("answer_cache.error");
+            return null;
+        }
+    }
+    
+    @Override
+    public void put(String scope, String query, RagChatResultVO result) {
+        RAGConfig.AnswerCacheConfig config = ragConfig.getAnswerCache();
+        if (!Boolean.TRUE.equals(config.getEnabled()) || result == null || result.getAnswer() == null) {
+            return;
+        }
+        
+        String key = cacheKey(scope);
+        if (key == null) {
+            return;
+        }
+        
+        try {
+            CacheEntry entry = new CacheEntry();
+            entry.setQuery(query);
+            entry.setEmbedding(encode(embeddingModel.embed(query)));
+            entry.setResult(result);
+            entry.setCreatedAt(System.currentTimeMillis());
+            
+            redisTemplate.opsForList().leftPush(key, objectMapper.writeValueAsString(entry));
+            redisTemplate.opsForList().trim(key, 0, config.getMaxEntriesPerScope() - 1);
+            redisTemplate.expire(key, config.getTtlHours(), TimeUnit.HOURS);
+        } catch (Exception e) {
+            log.warn("写入答案缓存失败: scope={}, error={}", scope, e.getMessage());
+        }
+    }
+    
+    /**
+     * 缓存键(含语料版本); 版本读取失败时返回 null, 读写都跳过, 避免在 :v-1 下读到或写入失效前的答案
+     */
+    private String cacheKey(String scope) {
+        long version = corpusVersionService.currentVersion(scope);
+        return version < 0 ? null : ANSWER_CACHE_PREFIX + scope + ":v" + version;
+    }
+    
+    private static double cosine(float[] a, float[] b) {
+        if (a.length != b.length) {
+            return -1;
+        }
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return (normA == 0 || normB == 0) ? 0 : dot / (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+    
+    /**
+     * 向量以 Base64 编码的 float 字节存储，比 JSON 数组小且解析快
+     */
+    private static String encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return Base64.getEncoder().encodeToString(buffer.array());
+    }
+    
+    private static float[] decode(String encoded) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(encoded)).order(ByteOrder.LITTLE_ENDIAN);
+        float[] vector = new float[buffer.remaining() / Float.BYTES];
+        buffer.asFloatBuffer().get(vector);
+        return vector;
+    }
+    
+    @Data
+    private static class CacheEntry {
+        private String query;
+        private String embedding;
+        private RagChatResultVO result;
+        private Long createdAt;
+    }
+}
@@ -0,0 +1,126 @@
+package com.ican.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.ican.config.MetadataKeys;
+import com.ican.mapper.DocumentChunkMapper;
+import com.ican.model.entity.DocumentChunkDO;
+import com.ican.service.ChunkContextService;
+import com.ican.utils.NumberConversionUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 分块上下文服务实现
+ * 
+ * <p>下一分块按 (document_id, chunk_index) 批量回查: 每个文档一组 chunk_index IN (...) 条件,
+ * 整批只发一条 SQL, 由 idx_document_chunk 复合索引支持。</p>
+ * 
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChunkContextServiceImpl implements ChunkContextService {
+    
+    private final DocumentChunkMapper documentChunkMapper;
+    
+    @Override
+    public List<Document> withOverlap(List<Document> docs) {
+        if (docs == null || docs.isEmpty()) {
+            return docs;
+        }
+        
+        // 1. 收集需要补齐 overlap 的下一分块
+        Map<Long, Set<Integer>> pending = new LinkedHashMap<>();
+        for (Document d : docs) {
+            if (overlapLengthOf(d) <= 0) {
+                continue;
+            }
+            Long documentId = toLong(d.getMetadata().get(MetadataKeys.DOCUMENT_ID));
+            Integer chunkIndex = toInteger(d.getMetadata().get(MetadataKeys.CHUNK_INDEX));
+            if (documentId != null && chunkIndex != null) {
+                pending.computeIfAbsent(documentId, k -> new LinkedHashSet<>()).add(chunkIndex + 1);
+            }
+        }
+        if (pending.isEmpty()) {
+            return docs;
+        }
+        
+        // 2. 一次批量回查下一分块内容
+        Map<String, String> nextContents = new HashMap<>();
+        try {
+            List<DocumentChunkDO> chunks = documentChunkMapper.selectList(new LambdaQueryWrapper<DocumentChunkDO>()
+                    .select(DocumentChunkDO::getDocumentId, DocumentChunkDO::getChunkIndex, DocumentChunkDO::getContent)
+                    .and(w -> {
+                        boolean first = true;
+                        for (Map.Entry<Long, Set<Integer>> entry : pending.entrySet()) {
+                            if (!first) {
+                                w.or();
+                            }
+                            w.nested(n -> n.eq(DocumentChunkDO::getDocumentId, entry.getKey())
+                                    .in(DocumentChunkDO::getChunkIndex, entry.getValue()));
+                            first = false;
+                        }
+                    }));
+            for (DocumentChunkDO chunk : chunks) {
+                nextContents.putIfAbsent(chunkKey(chunk.getDocumentId(), chunk.getChunkIndex()), chunk.getContent());
+            }
+        } catch (Exception e) {
+            // overlap 只是补充上下文, 查询失败时退回原始分块
+            log.warn("批量查询下一分块失败: documents={}, error={}", pending.size(), e.getMessage());
+            return docs;
+        }
+        
+        // 3. 把下一分块开头追加到分块末尾
+        List<Document> result = new ArrayList<>(docs.size());
+        int extended = 0;
+        for (Document d : docs) {
+            int overlapLength = overlapLengthOf(d);
+            Long documentId = toLong(d.getMetadata().get(MetadataKeys.DOCUMENT_ID));
+            Integer chunkIndex = toInteger(d.getMetadata().get(MetadataKeys.CHUNK_INDEX));
+            String next = overlapLength > 0 && documentId != null && chunkIndex != null
+                    ? nextContents.get(chunkKey(documentId, chunkIndex + 1)) : null;
+            if (next == null || next.isEmpty() || d.getText() == null) {
+                result.add(d);
+                continue;
+            }
+            String overlap = next.substring(0, Math.min(overlapLength, next.length()));
+            result.add(Document.builder()
+                    .id(d.getId())
+                    .text(d.getText() + "\n" + overlap)
+                    .metadata(d.getMetadata())
+                    .score(d.getScore())
+                    .build());
+            extended++;
+        }
+        log.debug("补齐分块 overlap: total={}, extended={}", docs.size(), extended);
+        return result;
+    }
+    
+    private int overlapLengthOf(Document d) {
+        Integer length = toInteger(d.getMetadata().get(MetadataKeys.OVERLAP_LENGTH));
+        return length != null ? length : 0;
+    }
+    
+    private static Long toLong(Object value) {
+        return value != null ? NumberConversionUtils.toLong(String.valueOf(value)) : null;
+    }
+    
+    private static Integer toInteger(Object value) {
+        return value != null ? NumberConversionUtils.toInteger(String.valueOf(value)) : null;
+    }
+    
+    private static String chunkKey(Long documentId, Integer chunkIndex) {
+        return documentId + ":" + chunkIndex;
+    }
+}
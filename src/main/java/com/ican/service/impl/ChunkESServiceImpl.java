@@ -0,0 +1,173 @@
+package com.ican.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.ican.config.MetadataKeys;
+import com.ican.model.entity.ChunkES;
+import com.ican.model.vo.DocumentSearchResultVO;
+import com.ican.repository.ElasticsearchBulkWriter;
+import com.ican.service.ChunkESService;
+import com.ican.service.RetrievalCacheService;
+import com.ican.service.SearchIndexService;
+import com.ican.utils.NumberConversionUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Elasticsearch 分块全文检索服务实现
+ * 
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChunkESServiceImpl implements ChunkESService {
+    
+    private final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchBulkWriter bulkWriter;
+    private final RetrievalCacheService retrievalCacheService;
+    private final SearchIndexService searchIndexService;
+    
+    @Override
+    public void indexChunks(Long userId, Long documentId, Long kbId, String title, String type, List<Document> chunks) {
+        if (chunks == null || chunks.isEmpty()) {
+            return;
+        }
+        try {
+            // 由批量写入器按条数/字节数合并为 bulk 请求, 失败按条记录
+            searchIndexService.write(INDEX_NAME, index -> {
+                // 写入时间, reindex 追平增量时使用
+                long timestamp = System.currentTimeMillis();
+                for (Document chunk : chunks) {
+                    ChunkES chunkES = ChunkES.builder()
+                        .userId(userId)
+                        .documentId(documentId)
+                        .kbId(kbId)
+                        .chunkIndex(NumberConversionUtils.toInteger(
+                            String.valueOf(chunk.getMetadata().get(MetadataKeys.CHUNK_INDEX))))
+                        .title(title)
+                        .type(type)
+                        .content(chunk.getText())
+                        .timestamp(timestamp)
+                        .build();
+                    bulkWriter.index(index, chunk.getId(), chunkES);
+                }
+                return null;
+            });
+            bulkWriter.flush();
+            log.info("分块已提交ES索引: documentId={}, chunks={}", documentId, chunks.size());
+        } catch (Exception e) {
+            // 分块全文索引失败不影响向量存储, 检索时会退回文档级全文索引
+            log.error("索引分块到ES失败: documentId={}", documentId, e);
+        }
+    }
+    
+    @Override
+    public List<DocumentSearchResultVO> search(Long userId, Long kbId, Long documentId, String query, int topK) {
+        if (StrUtil.isBlank(query)) {
+            return new ArrayList<>();
+        }
+        return retrievalCacheService.chunkSearch(userId, kbId, documentId, query, topK,
+            () -> doSearch(userId, kbId, documentId, query, topK));
+    }
+    
+    private List<DocumentSearchResultVO> doSearch(Long userId, Long kbId, Long documentId, String query, int topK) {
+        try {
+            SearchResponse<ChunkES> response = elasticsearchClient.search(s -> s
+                .index(INDEX_NAME)
+                .ignoreUnavailable(true)
+                .query(q -> q
+                    .bool(b -> {
+                        b.must(m -> m.multiMatch(mm -> mm
+                                .query(query)
+                                .fields("title", "content")
+                            ))
+                            .filter(f -> f.term(t -> t.field("userId").value(String.valueOf(userId))));
+                        if (kbId != null) {
+                            b.filter(f -> f.term(t -> t.field("kbId").value(String.valueOf(kbId))));
+                        }
+                        if (documentId != null) {
+                            b.filter(f -> f.term(t -> t.field("documentId").value(String.valueOf(documentId))));
+                        }
+                        return b;
+                    })
+                )
+                // 片段由高亮生成, 不回传分块全文
+                .source(src -> src.filter(f -> f.excludes("content")))
+                .highlight(h -> h
+                    .fields("content", f -> f
+                        .fragmentSize(150)
+                        .numberOfFragments(1)
+                        .noMatchSize(150)
+                    )
+                )
+                .size(topK),
+                ChunkES.class
+            );
+            
+            List<String> keywords = Arrays.stream(query.trim().split("\\s+"))
+                .filter(StrUtil::isNotBlank)
+                .distinct()
+                .toList();
+            
+            List<DocumentSearchResultVO> results = new ArrayList<>();
+            for (Hit<ChunkES> hit : response.hits().hits()) {
+                ChunkES chunk = hit.source();
+                if (chunk == null) {
+                    continue;
+                }
+                List<String> highlights = hit.highlight() != null ? hit.highlight().get("content") : null;
+                String snippet = highlights != null && !highlights.isEmpty()
+                    ? String.join(" ... ", highlights)
+                    : "";
+                
+                results.add(DocumentSearchResultVO.builder()
+                    .documentId(chunk.getDocumentId())
+                    .chunkId(hit.id())
+                    .chunkIndex(chunk.getChunkIndex())
+                    .title(chunk.getTitle())
+                    .type(chunk.getType())
+                    .snippet(snippet)
+                    .keywords(keywords)
+                    .score(hit.score() != null ? hit.score() : 0.0)
+                    .source("chunk")
+                    .build());
+            }
+            
+            log.info("ES分块搜索完成: userId={}, kbId={}, query={}, topK={}, results={}",
+                userId, kbId, query, topK, results.size());
+            return results;
+            
+        } catch (Exception e) {
+            log.error("ES分块搜索失败: userId={}, query={}", userId, query, e);
+            return new ArrayList<>();  // 降级处理
+        }
+    }
+    
+    @Override
+    public void deleteByDocument(Long documentId) {
+        try {
+            // 分块写入是异步批量的, 先等已提交的写入落盘, 避免在途的旧分块在删除之后写入
+            if (!bulkWriter.flushAndWait()) {
+                log.warn("等待分块写入完成超时, 仍执行删除: documentId={}", documentId);
+            }
+            searchIndexService.mutate(INDEX_NAME, index -> elasticsearchClient.deleteByQuery(d -> d
+                .index(index)
+                .ignoreUnavailable(true)
+                .query(q -> q.term(t -> t.field("documentId").value(String.valueOf(documentId))))
+            ));
+            log.info("从ES删除文档分块: documentId={}", documentId);
+        } catch (Exception e) {
+            log.error("从ES删除文档分块失败: documentId={}", documentId, e);
+            // 不抛出异常
+        }
+    }
+}
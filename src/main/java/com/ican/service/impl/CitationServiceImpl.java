@@ -0,0 +1,159 @@
+package com.ican.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ican.config.MetadataKeys;
+import com.ican.mapper.DocumentChunkMapper;
+import com.ican.model.entity.DocumentChunkDO;
+import com.ican.model.vo.CitationVO;
+import com.ican.service.CitationService;
+import com.ican.utils.NumberConversionUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 引用构建服务实现
+ * 
+ * <p>分块ID按 (document_id, chunk_index) 批量回查: 每个文档一组 chunk_index IN (...) 条件，
+ * 整批引用只发一条 SQL，由 document_chunks 上的 idx_document_chunk 复合索引支持，只取 id 和键列。</p>
+ * 
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CitationServiceImpl implements CitationService {
+    
+    private final DocumentChunkMapper documentChunkMapper;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @Override
+    public List<CitationVO> buildCitations(List<Document> docs, String query, int maxLen) {
+        if (docs == null || docs.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        // 提取关键词列表(前端用于高亮)
+        List<String> keywords = query == null || query.isBlank() 
+            ? List.of() 
+            : Arrays.stream(query.trim().split("\\s+"))
+                .filter(kw -> !kw.isBlank())
+                .toList();
+        
+        Map<String, Long> chunkIds = resolveChunkIds(docs);
+        
+        List<CitationVO> citations = new ArrayList<>(docs.size());
+        for (Document d : docs) {
+            Long documentId = toLong(d.getMetadata().get(MetadataKeys.DOCUMENT_ID));
+            Integer chunkIndex = toInteger(d.getMetadata().get(MetadataKeys.CHUNK_INDEX));
+            String title = d.getMetadata().getOrDefault(MetadataKeys.TITLE, "未知文档").toString();
+            String text = d.getText();
+            if (text != null && text.length() > maxLen) {
+                text = text.substring(0, maxLen) + "...";
+            }
+            
+            Long chunkId = chunkIdOf(d);
+            if (chunkId == null && documentId != null && chunkIndex != null) {
+                chunkId = chunkIds.get(chunkKey(documentId, chunkIndex));
+            }
+            String position = chunkId != null && chunkIndex != null ? "第 " + (chunkIndex + 1) + " 段" : null;
+            
+            // 序列化元数据为JSON（可选，用于调试）
+            String metadataJson = null;
+            if (!d.getMetadata().isEmpty()) {
+                try {
+                    metadataJson = objectMapper.writeValueAsString(d.getMetadata());
+                } catch (Exception ignored) {
+                    metadataJson = d.getMetadata().toString();
+                }
+            }
+            
+            citations.add(CitationVO.builder()
+                    .documentId(documentId)
+                    .title(title)
+                    .chunkId(chunkId)
+                    .chunkIndex(chunkIndex)
+                    .score(d.getScore())  // 使用Document自带的score，而不是从metadata获取
+                    .snippet(text)
+                    .keywords(keywords)  // 提供给前端用于高亮
+                    .position(position)
+                    .metadata(metadataJson)
+                    .build());
+        }
+        return citations;
+    }
+    
+    /**
+     * 批量回查元数据中没有 chunkId 的分块
+     * 
+     * @return "documentId:chunkIndex" -> 分块ID
+     */
+    private Map<String, Long> resolveChunkIds(List<Document> docs) {
+        Map<Long, Set<Integer>> pending = new LinkedHashMap<>();
+        for (Document d : docs) {
+            if (chunkIdOf(d) != null) {
+                continue;
+            }
+            Long documentId = toLong(d.getMetadata().get(MetadataKeys.DOCUMENT_ID));
+            Integer chunkIndex = toInteger(d.getMetadata().get(MetadataKeys.CHUNK_INDEX));
+            if (documentId != null && chunkIndex != null) {
+                pending.computeIfAbsent(documentId, k -> new LinkedHashSet<>()).add(chunkIndex);
+            }
+        }
+        if (pending.isEmpty()) {
+            return Map.of();
+        }
+        
+        Map<String, Long> chunkIds = new HashMap<>();
+        try {
+            List<DocumentChunkDO> chunks = documentChunkMapper.selectList(new LambdaQueryWrapper<DocumentChunkDO>()
+                    .select(DocumentChunkDO::getId, DocumentChunkDO::getDocumentId, DocumentChunkDO::getChunkIndex)
+                    .and(w -> {
+                        boolean first = true;
+                        for (Map.Entry<Long, Set<Integer>> entry : pending.entrySet()) {
+                            if (!first) {
+                                w.or();
+                            }
+                            w.nested(n -> n.eq(DocumentChunkDO::getDocumentId, entry.getKey())
+                                    .in(DocumentChunkDO::getChunkIndex, entry.getValue()));
+                            first = false;
+                        }
+                    }));
+            for (DocumentChunkDO chunk : chunks) {
+                chunkIds.putIfAbsent(chunkKey(chunk.getDocumentId(), chunk.getChunkIndex()), chunk.getId());
+            }
+        } catch (Exception e) {
+            // 分块ID只用于前端定位, 查询失败不影响回答
+            log.warn("批量查询chunkId失败: documents={}, error={}", pending.size(), e.getMessage());
+        }
+        return chunkIds;
+    }
+    
+    private Long chunkIdOf(Document d) {
+        return toLong(d.getMetadata().get(MetadataKeys.CHUNK_ID));
+    }
+    
+    private static Long toLong(Object value) {
+        return value != null ? NumberConversionUtils.toLong(String.valueOf(value)) : null;
+    }
+    
+    private static Integer toInteger(Object value) {
+        return value != null ? NumberConversionUtils.toInteger(String.valueOf(value)) : null;
+    }
+    
+    private static String chunkKey(Long documentId, Integer chunkIndex) {
+        return documentId + ":" + chunkIndex;
+    }
+}
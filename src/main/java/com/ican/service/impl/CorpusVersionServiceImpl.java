@@ -0,0 +1,63 @@
+package com.ican.service.impl;
+
+import com.ican.service.CorpusVersionService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 语料版本服务实现(Redis INCR)
+ * 
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CorpusVersionServiceImpl implements CorpusVersionService {
+    
+    private static final String VERSION_KEY_PREFIX = "rag:corpus:version:";
+    
+    private final RedisTemplate<String, Object> redisTemplate;
+    
+    @Override
+    public long currentVersion(String scope) {
+        try {
+            Object value = redisTemplate.opsForValue().get(VERSION_KEY_PREFIX + scope);
+            return value == null ? 0 : Long.parseLong(value.toString());
+        } catch (Exception e) {
+            // Redis 不可用时返回 -1, 调用方据此跳过缓存读写(版本未知, 无法判断缓存是否已失效)
+            log.warn("读取语料版本失败: scope={}, error={}", scope, e.getMessage());
+            return -1;
+        }
+    }
+    
+    @Override
+    public void bump(Long userId, Long documentId, Long... kbIds) {
+        List<String> scopes = new ArrayList<>();
+        if (userId != null) {
+            scopes.add(CorpusVersionService.userScope(userId));
+        }
+        if (documentId != null) {
+            scopes.add(CorpusVersionService.documentScope(documentId));
+        }
+        if (kbIds != null) {
+            for (Long kbId : kbIds) {
+                if (kbId != null) {
+                    scopes.add(CorpusVersionService.kbScope(kbId));
+                }
+            }
+        }
+        for (String scope : scopes) {
+            try {
+                redisTemplate.opsForValue().increment(VERSION_KEY_PREFIX + scope);
+            } catch (Exception e) {
+                log.warn("递增语料版本失败: scope={}, error={}", scope, e.getMessage());
+            }
+        }
+        log.debug("语料版本已递增: {}", scopes);
+    }
+}
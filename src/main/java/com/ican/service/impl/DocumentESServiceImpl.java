@@ -7,7 +7,10 @@ import co.elastic.clients.elasticsearch.core.search.Hit;
 import com.ican.model.entity.DocumentES;
 import com.ican.model.vo.DocumentSearchResultVO;
 import com.ican.repository.DocumentESRepository;
+import com.ican.repository.ElasticsearchBulkWriter;
 import com.ican.service.DocumentESService;
+import com.ican.service.RetrievalCacheService;
+import com.ican.service.SearchIndexService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -17,7 +20,9 @@ import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -35,13 +40,30 @@ public class DocumentESServiceImpl implements DocumentESService {
     
     private final ElasticsearchClient elasticsearchClient;
     
+    private final RetrievalCacheService retrievalCacheService;
+    
+    private final ElasticsearchBulkWriter bulkWriter;
+    
+    private final SearchIndexService searchIndexService;
+    
+    /**
+     * 全文检索结果需要的字段(不含 content)
+     */
+    private static final List<String> RESULT_FIELDS = List.of("title", "type", "fileSize");
+    
+    /**
+     * 内容无命中时从开头截取的摘要长度
+     */
+    private static final int SNIPPET_LENGTH = 200;
+    
     @Override
-    public void indexDocument(Long documentId, Long userId, String title, String content,
+    public void indexDocument(Long documentId, Long userId, Long kbId, String title, String content,
                              String type, Long fileSize, String status) {
         try {
             DocumentES documentES = DocumentES.builder()
                 .id(documentId)
                 .userId(userId)
+                .kbId(kbId)
                 .title(title)
                 .content(content)
                 .type(type)
@@ -51,9 +73,13 @@ public class DocumentESServiceImpl implements DocumentESService {
                 .updateTime(LocalDateTime.now())
                 .build();
             
-            documentESRepository.save(documentES);
+            // 进入批量写入缓冲区, 与其他写操作合并为 bulk 请求
+            searchIndexService.write(INDEX_NAME, index -> {
+                bulkWriter.index(index, String.valueOf(documentId), documentES);
+                return null;
+            });
             
-            log.info("文档已索引到ES: documentId={}, title={}", documentId, title);
+            log.info("文档已提交ES索引: documentId={}, title={}", documentId, title);
         } catch (Exception e) {
             log.error("索引文档到ES失败: documentId={}", documentId, e);
             throw new BusinessException("索引文档失败: " + e.getMessage());
@@ -63,12 +89,15 @@ public class DocumentESServiceImpl implements DocumentESService {
     @Override
     public void updateDocumentStatus(Long documentId, String status) {
         try {
-            documentESRepository.findById(documentId).ifPresent(doc -> {
-                doc.setStatus(status);
-                doc.setUpdateTime(LocalDateTime.now());
-                documentESRepository.save(doc);
-                log.info("更新ES文档状态: documentId={}, status={}", documentId, status);
+            // 局部更新, 不再先读取再整篇重写
+            Map<String, Object> fields = new HashMap<>();
+            fields.put("status", status);
+            fields.put("updateTime", LocalDateTime.now());
+            searchIndexService.write(INDEX_NAME, index -> {
+                bulkWriter.update(index, String.valueOf(documentId), fields);
+                return null;
             });
+            log.info("更新ES文档状态: documentId={}, status={}", documentId, status);
         } catch (Exception e) {
             log.error("更新ES文档状态失败: documentId={}", documentId, e);
             // 不抛出异常，避免影响主流程
@@ -93,23 +122,38 @@ public class DocumentESServiceImpl implements DocumentESService {
      */
     @Override
     public List<DocumentSearchResultVO> fullTextSearchWithHighlight(Long userId, String query, int topK) {
+        return fullTextSearchWithHighlight(userId, null, query, topK);
+    }
+    
+    @Override
+    public List<DocumentSearchResultVO> fullTextSearchWithHighlight(Long userId, Long kbId, String query, int topK) {
         if (StrUtil.isBlank(query)) {
             return new ArrayList<>();
         }
-        
+        return retrievalCacheService.fullTextSearch(userId, kbId, query, topK,
+            () -> doFullTextSearch(userId, kbId, query, topK));
+    }
+    
+    private List<DocumentSearchResultVO> doFullTextSearch(Long userId, Long kbId, String query, int topK) {
         try {
             // 1. 使用原生 Elasticsearch Java API 构建查询
             SearchResponse<DocumentES> response = elasticsearchClient.search(s -> s
-                .index("ican_documents")
+                .index(INDEX_NAME)
                 .query(q -> q
-                    .bool(b -> b
-                        .must(m -> m.term(t -> t.field("userId").value(userId)))
-                        .must(m -> m.multiMatch(mm -> mm
-                            .query(query)
-                            .fields("title", "content")
-                        ))
-                    )
+                    .bool(b -> {
+                        b.must(m -> m.term(t -> t.field("userId").value(userId)))
+                            .must(m -> m.multiMatch(mm -> mm
+                                .query(query)
+                                .fields("title", "content")
+                            ));
+                        if (kbId != null) {
+                            b.filter(f -> f.term(t -> t.field("kbId").value(kbId)));
+                        }
+                        return b;
+                    })
                 )
+                // 只取结果需要的字段, 摘要由高亮器从 content 的 offsets 中截取
+                .source(src -> src.filter(f -> f.includes(RESULT_FIELDS)))
                 .highlight(h -> h
                     .fields("title", f -> f
                         .fragmentSize(150)
@@ -118,6 +162,7 @@ public class DocumentESServiceImpl implements DocumentESService {
                     .fields("content", f -> f
                         .fragmentSize(300)
                         .numberOfFragments(1)
+                        .noMatchSize(SNIPPET_LENGTH)
                     )
                 )
                 .size(topK),
@@ -150,10 +195,10 @@ public class DocumentESServiceImpl implements DocumentESService {
                     } else if (contentHighlights != null && !contentHighlights.isEmpty()) {
                         snippet = String.join(" ... ", contentHighlights);
                     } else {
-                        snippet = truncateContent(doc.getContent(), 200);
+                        snippet = "";
                     }
                 } else {
-                    snippet = truncateContent(doc.getContent(), 200);
+                    snippet = "";
                 }
                 
                 // 安全处理 score
@@ -185,19 +230,6 @@ public class DocumentESServiceImpl implements DocumentESService {
         }
     }
     
-    /**
-     * 截断内容
-     */
-    private String truncateContent(String content, int maxLength) {
-        if (content == null) {
-            return "";
-        }
-        if (content.length() <= maxLength) {
-            return content;
-        }
-        return content.substring(0, maxLength) + "...";
-    }
-    
     /**
      * 从查询中提取关键词
      * 简化版: 按空格分词
@@ -213,7 +245,14 @@ public class DocumentESServiceImpl implements DocumentESService {
     @Override
     public void deleteDocument(Long documentId) {
         try {
-            documentESRepository.deleteById(documentId);
+            // 并发的 bulk 请求不保证顺序, 先等已提交的写入完成, 删除才不会被在途的写入覆盖
+            if (!bulkWriter.flushAndWait()) {
+                log.warn("等待文档写入完成超时, 仍执行删除: documentId={}", documentId);
+            }
+            searchIndexService.mutate(INDEX_NAME, index -> {
+                bulkWriter.delete(index, String.valueOf(documentId));
+                return null;
+            });
             log.info("从ES删除文档: documentId={}", documentId);
         } catch (Exception e) {
             log.error("从ES删除文档失败: documentId={}", documentId, e);
@@ -0,0 +1,152 @@
+package com.ican.service.impl;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Conflicts;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.Script;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.JsonData;
+import com.ican.config.MetadataKeys;
+import com.ican.config.VectorIndexProperties;
+import com.ican.repository.ElasticsearchBulkWriter;
+import com.ican.repository.TenantRoutingVectorStore;
+import com.ican.service.ChunkESService;
+import com.ican.service.DocumentIndexSyncService;
+import com.ican.service.RetrievalMetricsService;
+import com.ican.service.SearchIndexService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import top.continew.starter.core.exception.BusinessException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 索引元数据同步服务实现
+ * 
+ * <p>使用 update-by-query 在 ES 端原地更新，不需要重新嵌入或回传分块内容。</p>
+ * 
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DocumentIndexSyncServiceImpl implements DocumentIndexSyncService {
+    
+    private static final String FULLTEXT_INDEX_NAME = "ican_documents";
+    
+    private final ElasticsearchClient elasticsearchClient;
+    private final TenantRoutingVectorStore tenantRoutingVectorStore;
+    private final SearchIndexService searchIndexService;
+    private final VectorIndexProperties vectorIndexProperties;
+    private final RetrievalMetricsService retrievalMetricsService;
+    private final ElasticsearchBulkWriter bulkWriter;
+    
+    @Override
+    public long syncKnowledgeBase(Long userId, List<Long> documentIds, Long kbId) {
+        if (userId == null || documentIds == null || documentIds.isEmpty()) {
+            return 0;
+        }
+        long startTime = System.currentTimeMillis();
+        List<FieldValue> ids = documentIds.stream()
+            .map(id -> FieldValue.of(String.valueOf(id)))
+            .toList();
+        
+        // 1. 向量索引: metadata.kbId(覆盖共享索引和独享索引, 租户可能正在迁移; 兼容期间同时匹配 Base62 旧 ID)
+        String vectorIndex = vectorIndexProperties.getIndexName();
+        String routing = tenantRoutingVectorStore.resolveRouting(userId);
+        Query vectorQuery = Query.of(q -> q.bool(b -> b
+            .filter(tenantRoutingVectorStore.metadataIdQuery(MetadataKeys.USER_ID, List.of(userId)))
+            .filter(tenantRoutingVectorStore.metadataIdQuery(MetadataKeys.DOCUMENT_ID, documentIds))
+        ));
+        long vectorUpdated;
+        try {
+            Long updated = searchIndexService.mutate(vectorIndex, index -> elasticsearchClient.updateByQuery(u -> {
+                u.index(tenantRoutingVectorStore.mutationTargets(index))
+                    .ignoreUnavailable(true)
+                    .allowNoIndices(true)
+                    .query(vectorQuery)
+                    .script(kbIdScript("ctx._source.metadata", kbId, MetadataKeys.INDEXED_AT, System.currentTimeMillis()))
+                    .conflicts(Conflicts.Proceed)
+                    .refresh(true);
+                if (routing != null) {
+                    u.routing(routing);
+                }
+                return u;
+            }).updated());
+            vectorUpdated = updated != null ? updated : 0;
+        } catch (Exception e) {
+            log.error("同步向量索引知识库失败: userId={}, documentIds={}, kbId={}", userId, documentIds, kbId, e);
+            retrievalMetricsService.increment("index.kb_sync.vector_failed");
+            throw new BusinessException("同步向量索引失败: " + e.getMessage());
+        }
+        
+        // 全文和分块索引经 BulkIngester 异步写入, 先等待已提交的写入落盘, 否则 update-by-query 看不到刚写入的文档
+        if (!bulkWriter.flushAndWait()) {
+            log.warn("等待批量写入完成超时, 未落盘的全文/分块可能保留旧 kbId: userId={}, documentIds={}", userId, documentIds);
+        }
+        
+        // 2. 全文索引: kbId(失败不影响向量同步结果)
+        try {
+            searchIndexService.mutate(FULLTEXT_INDEX_NAME, index -> elasticsearchClient.updateByQuery(u -> u
+                .index(index)
+                .query(q -> q.bool(b -> b
+                    .filter(f -> f.term(t -> t.field("userId").value(userId)))
+                    .filter(f -> f.ids(i -> i.values(documentIds.stream().map(String::valueOf).toList())))
+                ))
+                .script(kbIdScript("ctx._source", kbId, "updateTime", LocalDateTime.now().toString()))
+                .conflicts(Conflicts.Proceed)
+                .refresh(true)
+            ));
+        } catch (Exception e) {
+            log.warn("同步全文索引知识库失败: userId={}, documentIds={}, kbId={}, error={}",
+                userId, documentIds, kbId, e.getMessage());
+            retrievalMetricsService.increment("index.kb_sync.fulltext_failed");
+        }
+        
+        // 3. 分块索引: kbId
+        try {
+            searchIndexService.mutate(ChunkESService.INDEX_NAME, index -> elasticsearchClient.updateByQuery(u -> u
+                .index(index)
+                .ignoreUnavailable(true)
+                .query(q -> q.bool(b -> b
+                    .filter(f -> f.term(t -> t.field("userId").value(String.valueOf(userId))))
+                    .filter(f -> f.terms(t -> t.field("documentId").terms(tv -> tv.value(ids))))
+                ))
+                .script(kbIdScript("ctx._source", kbId, "timestamp", System.currentTimeMillis()))
+                .conflicts(Conflicts.Proceed)
+                .refresh(true)
+            ));
+        } catch (Exception e) {
+            log.warn("同步分块索引知识库失败: userId={}, documentIds={}, kbId={}, error={}",
+                userId, documentIds, kbId, e.getMessage());
+            retrievalMetricsService.increment("index.kb_sync.chunk_failed");
+        }
+        
+        log.info("知识库归属已同步到索引: userId={}, documents={}, kbId={}, vectorUpdated={}, took={}ms",
+            userId, documentIds.size(), kbId, vectorUpdated, System.currentTimeMillis() - startTime);
+        return vectorUpdated;
+    }
+    
+    /**
+     * 设置或移除 kbId 的脚本, 同时刷新写入时间字段(reindex/迁移按写入时间追平增量)
+     * 
+     * @param target 目标对象路径
+     * @param writeTimeField 写入时间字段
+     * @param writeTime 写入时间
+     */
+    private Script kbIdScript(String target, Long kbId, String writeTimeField, Object writeTime) {
+        String update = kbId == null
+            ? target + ".remove('" + MetadataKeys.KB_ID + "');"
+            : target + "." + MetadataKeys.KB_ID + " = params.kbId;";
+        String source = update + " " + target + "." + writeTimeField + " = params.writeTime;";
+        return Script.of(s -> s.inline(i -> {
+            i.source(source).params("writeTime", JsonData.of(writeTime));
+            if (kbId != null) {
+                i.params("kbId", JsonData.of(kbId));
+            }
+            return i;
+        }));
+    }
+}
@@ -1,11 +1,11 @@
 package com.ican.service.impl;
 
 import cn.dev33.satoken.stp.StpUtil;
-import cn.hutool.core.codec.Base62;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.ican.config.MetadataKeys;
 import com.ican.config.RAGConfig;
 import com.ican.model.dto.DocumentQueryDTO;
 import com.ican.model.entity.DocumentChunkDO;
@@ -16,17 +16,29 @@ import com.ican.model.vo.DocumentMetadataVO;
 import com.ican.model.vo.DocumentSearchResultVO;
 import com.ican.model.vo.DocumentUploadVO;
 import com.ican.model.vo.DocumentVO;
+import com.ican.model.vo.HybridSearchResultVO;
+import com.ican.model.vo.SearchLegVO;
+import com.ican.model.vo.PurgeResultVO;
 import com.ican.mapper.DocumentChunkMapper;
 import com.ican.mapper.DocumentMapper;
 import com.ican.mapper.DocumentVectorMapper;
+import com.ican.service.ChunkESService;
 import com.ican.service.DocumentService;
 import com.ican.service.DocumentESService;
+import com.ican.service.DocumentIndexSyncService;
 import com.ican.service.DocumentParserService;
 import com.ican.service.FileStorageService;
 import com.ican.service.DocumentTaskService;
 import com.ican.service.GrobidMetadataService;
 import com.ican.service.SmartChunkingService;
+import com.ican.service.CorpusVersionService;
+import com.ican.service.RankFusionService;
+import com.ican.service.RetrievalMetricsService;
+import com.ican.service.VectorPurgeService;
 import com.ican.mq.DocumentProcessingProducer;
+import com.ican.utils.NumberConversionUtils;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.document.Document;
@@ -45,8 +57,19 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -69,8 +92,42 @@ public class DocumentServiceImpl implements DocumentService {
     private final DocumentProcessingProducer documentProcessingProducer;
     private final DocumentTaskService documentTaskService;
     private final DocumentESService documentESService;
+    private final ChunkESService chunkESService;  // 🆕 分块级全文索引
     private final GrobidMetadataService grobidMetadataService;  // 🆕 GROBID 元数据解析
     private final SmartChunkingService smartChunkingService;  // 🆕 智能分块
+    private final VectorPurgeService vectorPurgeService;  // 按条件清除向量/全文索引
+    private final CorpusVersionService corpusVersionService;  // 🆕 语料版本(答案缓存失效)
+    private final DocumentIndexSyncService documentIndexSyncService;
+    private final RetrievalMetricsService retrievalMetricsService;
+    private final RankFusionService rankFusionService;
+    
+    /**
+     * 混合检索并行执行向量/全文两路的线程池(不注册为 Bean, 避免影响 @Async 默认执行器)
+     */
+    private ThreadPoolExecutor searchLegExecutor;
+    
+    @PostConstruct
+    public void initSearchLegExecutor() {
+        int threads = ragConfig.getHybridSearch().getLegThreads();
+        AtomicInteger counter = new AtomicInteger();
+        searchLegExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(threads * 50),
+            r -> {
+                Thread thread = new Thread(r, "hybrid-search-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            // 队列满时在调用线程执行, 退化为串行而不是丢弃
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        searchLegExecutor.allowCoreThreadTimeOut(true);
+    }
+    
+    @PreDestroy
+    public void shutdownSearchLegExecutor() {
+        if (searchLegExecutor != null) {
+            searchLegExecutor.shutdownNow();
+        }
+    }
     
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -319,7 +376,7 @@ public class DocumentServiceImpl implements DocumentService {
                 smartChunks.isEmpty() ? "none" : smartChunks.get(0).getType());
             
             // 🆕 3. 创建 Document 对象并添加增强元数据
-            // 重要：使用 Base62 编码存储 Long ID，避免向量库 Double 精度丢失
+            // ID 类元数据以数值写入, 索引模板映射为 keyword, 过滤时精确 term 匹配
             // ⚠️ 安全检查：确保每个分块不超过嵌入模型的 token 限制
             // text-embedding-v4 理论最大 8192 tokens,但实际要留更多余量
             int maxTokens = 6000; // 保守值,防止特殊字符和编码问题
@@ -328,19 +385,21 @@ public class DocumentServiceImpl implements DocumentService {
             
             for (int i = 0; i < smartChunks.size(); i++) {
                 SmartChunkingService.ChunkResult chunk = smartChunks.get(i);
+                // 分块是源文本上的视图, 此处才物化为字符串(不含 overlap)
+                String chunkContent = chunk.getContent();
                 
                 // 估算 token 数 (保守估计,留足余量)
-                int estimatedTokens = estimateTokenCount(chunk.getContent());
+                int estimatedTokens = estimateTokenCount(chunkContent);
                 
                 List<String> subChunks;
                 if (estimatedTokens > maxTokens) {
                     // 分块过长，需要二次分割
                     log.warn("检测到超长分块: chunkIndex={}, estimatedTokens={}, 进行二次分割", 
                         i, estimatedTokens);
-                    subChunks = splitLongText(chunk.getContent(), maxTokens);
+                    subChunks = splitLongText(chunkContent, maxTokens);
                     log.info("二次分割完成: 原始1块 -> {}块", subChunks.size());
                 } else {
-                    subChunks = List.of(chunk.getContent());
+                    subChunks = List.of(chunkContent);
                 }
                 
                 // 为每个子分块创建 Document
@@ -349,8 +408,11 @@ public class DocumentServiceImpl implements DocumentService {
                     Map<String, Object> metadata = new HashMap<>();
                     
                     // 基础元数据
-                    metadata.put("documentId", Base62.encode(String.valueOf(documentId)));
-                    metadata.put("userId", Base62.encode(String.valueOf(userId)));
+                    metadata.put("documentId", documentId);
+                    metadata.put("userId", userId);
+                    if (document.getKbId() != null) {
+                        metadata.put(MetadataKeys.KB_ID, document.getKbId());
+                    }
                     metadata.put("title", document.getTitle());
                     metadata.put("type", document.getType());
                     metadata.put("chunkIndex", globalChunkIndex++);
@@ -364,6 +426,14 @@ public class DocumentServiceImpl implements DocumentService {
                     if (subChunks.size() > 1) {
                         metadata.put("originalChunkIndex", i);
                         metadata.put("subChunkIndex", j);
+                    } else if (chunk.hasDocumentRange()) {
+                        // 偏移量相对于持久化的文档全文(ES 文档索引 content 字段)
+                        metadata.put("startOffset", chunk.getDocumentStart());
+                        metadata.put("endOffset", chunk.getDocumentEnd());
+                    }
+                    // overlap 即下一分块的开头: 只记录长度, 构建上下文时由 ChunkContextService 回查下一分块补齐
+                    if (j == subChunks.size() - 1 && chunk.hasOverlap()) {
+                        metadata.put(MetadataKeys.OVERLAP_LENGTH, chunk.getOverlapLength());
                     }
                     
                     // 🆕 章节信息(如果是章节分块)
@@ -401,6 +471,7 @@ public class DocumentServiceImpl implements DocumentService {
             // 优化：记录每个向量的ID和分块内容到数据库
             int batchSize = 10; // 阿里云 text-embedding-v4 限制
             int totalBatches = (int) Math.ceil((double) safeDocuments.size() / batchSize);
+            List<Document> storedDocuments = new ArrayList<>(safeDocuments.size());
             
             for (int i = 0; i < safeDocuments.size(); i += batchSize) {
                 int end = Math.min(i + batchSize, safeDocuments.size());
@@ -427,6 +498,7 @@ public class DocumentServiceImpl implements DocumentService {
                 
                 // 添加到向量库（向量库会为每个Document生成ID）
                 vectorStore.add(batch);
+                storedDocuments.addAll(batch);
                 
                 // 保存向量ID映射和分块内容到数据库
                 for (Document doc : batch) {
@@ -465,11 +537,16 @@ public class DocumentServiceImpl implements DocumentService {
             
             log.info("文档向量化完成: id={}, vectors={}", documentId, documents.size());
             
+            // 🆕 分块级全文索引(_id 与向量ID一致, 用于分块级 BM25 和融合)
+            chunkESService.indexChunks(userId, documentId, document.getKbId(),
+                document.getTitle(), document.getType(), storedDocuments);
+            
             // 🆕 同步到 Elasticsearch 全文索引 (用于混合搜索)
             try {
                 documentESService.indexDocument(
                     documentId,
                     userId,
+                    document.getKbId(),
                     document.getTitle(),
                     content,  // 完整内容用于全文搜索
                     document.getType(),
@@ -483,6 +560,23 @@ public class DocumentServiceImpl implements DocumentService {
                 // 不抛异常,避免影响向量存储主流程
             }
             
+            // 向量化期间文档可能被归档或移出知识库, 此时的同步看不到尚未写入的分块, 按数据库中的最新归属补同步
+            Long indexedKbId = document.getKbId();
+            DocumentDO latest = documentMapper.selectById(documentId);
+            Long currentKbId = latest != null ? latest.getKbId() : indexedKbId;
+            if (!Objects.equals(indexedKbId, currentKbId)) {
+                try {
+                    documentIndexSyncService.syncKnowledgeBase(userId, List.of(documentId), currentKbId);
+                    log.info("向量化期间知识库归属已变更, 已补同步: documentId={}, kbId {} -> {}",
+                        documentId, indexedKbId, currentKbId);
+                } catch (Exception syncError) {
+                    log.error("补同步知识库归属失败: documentId={}, kbId={}", documentId, currentKbId, syncError);
+                }
+            }
+            
+            // 语料已变更, 相关范围的答案缓存失效
+            corpusVersionService.bump(userId, documentId, indexedKbId, currentKbId);
+            
         } catch (Exception e) {
             log.error("文档向量化失败: id={}", documentId, e);
             throw new BusinessException("文档向量化失败: " + e.getMessage());
@@ -491,10 +585,15 @@ public class DocumentServiceImpl implements DocumentService {
     
     @Override
     public List<Document> searchSimilarDocuments(String query, int topK) {
+        // 获取当前用户ID
+        return searchSimilarDocuments(StpUtil.getLoginIdAsLong(), query, topK);
+    }
+    
+    /**
+     * 按指定用户检索(不依赖登录上下文, 可在检索线程池中执行)
+     */
+    private List<Document> searchSimilarDocuments(Long userId, String query, int topK) {
         try {
-            // 获取当前用户ID
-            Long userId = StpUtil.getLoginIdAsLong();
-            
             // 获取配置的相似度阈值
             double threshold = ragConfig.getRetrieval().getSimilarityThreshold();
             log.info("开始文档检索: userId={}, query={}, topK={}, similarityThreshold={}", 
@@ -502,7 +601,7 @@ public class DocumentServiceImpl implements DocumentService {
             
             // 🆕 构建用户过滤条件 (只返回当前用户的文档)
             Filter.Expression userFilter = new FilterExpressionBuilder()
-                .eq("userId", Base62.encode(String.valueOf(userId)))
+                .eq("userId", userId)
                 .build();
             
             // 构建检索请求
@@ -580,29 +679,18 @@ public class DocumentServiceImpl implements DocumentService {
                     // 🆕 同步删除 ES 全文索引
                     try {
                         documentESService.deleteDocument(documentId);
+                        chunkESService.deleteByDocument(documentId);
                         log.info("从ES删除文档索引: documentId={}", documentId);
                     } catch (Exception esError) {
                         log.warn("删除ES索引失败: documentId={}, error={}", documentId, esError.getMessage());
                     }
                 } else {
-                    log.warn("未找到文档向量映射记录，尝试通过metadata查询删除: documentId={}", documentId);
-                    
-                    // 后备方案：通过metadata查询删除（兼容旧数据）
-                    SearchRequest searchRequest = SearchRequest.builder()
-                        .query("") // 空查询
-                        .topK(1000) // 获取尽可能多的结果
-                        .similarityThreshold(0.0) // 最低阈值
-                        .filterExpression(new FilterExpressionBuilder().eq("documentId", 
-                            Base62.encode(String.valueOf(documentId))).build())
-                        .build();
+                    log.warn("未找到文档向量映射记录，按元数据条件清除: documentId={}", documentId);
                     
-                    List<Document> documents = vectorStore.similaritySearch(searchRequest);
-                    if (!documents.isEmpty()) {
-                        vectorStore.delete(documents.stream()
-                            .map(Document::getId)
-                            .toList());
-                        log.info("通过metadata删除文档向量: documentId={}, count={}", documentId, documents.size());
-                    }
+                    // 后备方案：按 documentId/userId 直接在向量索引和全文索引上 delete-by-query（兼容旧数据）
+                    PurgeResultVO purgeResult = vectorPurgeService.purgeDocument(documentId, document.getUserId());
+                    log.info("通过metadata删除文档向量: documentId={}, matched={}, deleted={}, async={}",
+                        documentId, purgeResult.getVectorMatched(), purgeResult.getVectorDeleted(), purgeResult.getAsync());
                 }
             } catch (Exception e) {
                 log.error("从向量库删除文档失败: documentId={}", documentId, e);
@@ -610,6 +698,7 @@ public class DocumentServiceImpl implements DocumentService {
             }
             documentMapper.deleteById(documentId);
             log.info("逻辑删除文档: documentId={}", documentId);
+            corpusVersionService.bump(document.getUserId(), documentId, document.getKbId());
             
             // 3. 从文件存储删除
             try {
@@ -798,12 +887,14 @@ public class DocumentServiceImpl implements DocumentService {
                     new LambdaQueryWrapper<DocumentChunkDO>()
                         .eq(DocumentChunkDO::getDocumentId, documentId)
                 );
+                chunkESService.deleteByDocument(documentId);
                 
                 log.info("文档向量清除成功: documentId={}, count={}", documentId, deletedCount);
             } else {
                 log.info("文档没有向量记录: documentId={}", documentId);
             }
             
+            corpusVersionService.bump(document.getUserId(), documentId, document.getKbId());
             return deletedCount;
             
         } catch (Exception e) {
@@ -917,18 +1008,18 @@ public class DocumentServiceImpl implements DocumentService {
     }
     
     /**
-     * 🆕 混合搜索 - 结合向量检索和全文检索(RRF融合)
+     * 🆕 混合搜索 - 结合向量检索和全文检索(加权融合)
      * 
      * <p>算法流程:</p>
      * <ol>
      *   <li>向量检索: 语义理解,召回相关文档</li>
      *   <li>全文检索: BM25算法,召回关键词匹配文档</li>
-     *   <li>RRF融合: 融合两种检索结果,提高准确率</li>
+     *   <li>融合: 由 {@link RankFusionService} 按 vectorWeight/textWeight 加权融合两种检索结果</li>
      * </ol>
      * 
-     * <p>RRF (Reciprocal Rank Fusion) 公式:</p>
+     * <p>加权 RRF (Reciprocal Rank Fusion) 公式:</p>
      * <pre>
-     * score(doc) = Σ [1 / (k + rank_i)]
+     * score(doc) = Σ [w_i / (k + rank_i)]
      * k = 60 (常数,降低高排名文档的权重差异)
      * </pre>
      * 
@@ -936,81 +1027,197 @@ public class DocumentServiceImpl implements DocumentService {
      * @param topK 最终返回数量
      * @return 融合后的搜索结果(含高亮信息)
      */
-    public List<DocumentSearchResultVO> hybridSearch(String query, int topK) {
+    public HybridSearchResultVO hybridSearch(String query, int topK) {
+        long startTime = System.currentTimeMillis();
+        List<SearchLegVO> legs = new ArrayList<>();
         try {
             Long userId = StpUtil.getLoginIdAsLong();
+            RAGConfig.HybridSearchConfig config = ragConfig.getHybridSearch();
             
-            // 1. 向量检索 (召回 topK*2 个候选)
-            List<Document> vectorResults = searchSimilarDocuments(query, topK * 2);
-            log.info("向量检索完成: results={}", vectorResults.size());
-            
-            // 2. ES 全文检索 (召回 topK*2 个候选)
-            List<DocumentSearchResultVO> fulltextResults = 
-                documentESService.fullTextSearchWithHighlight(userId, query, topK * 2);
-            log.info("全文检索完成: results={}", fulltextResults.size());
+            // 1-2. 向量检索与 ES 全文检索并行执行 (各召回 topK*2 个候选)，共享同一截止时间
+            SearchLeg<List<Document>> vectorLeg = startLeg("vector",
+                () -> searchSimilarDocuments(userId, query, topK * 2), config.getHedgeAfterMs());
+            SearchLeg<List<DocumentSearchResultVO>> fulltextLeg = startLeg("fulltext",
+                () -> fullTextLeg(userId, query, topK * 2), config.getHedgeAfterMs());
             
-            // 3. RRF 融合算法
-            final int K = 60;  // RRF 常数
-            var rrfScores = new java.util.HashMap<Long, Double>();
+            long deadline = startTime + config.getLegTimeoutMs();
+            List<Document> vectorResults = awaitLeg(vectorLeg, deadline);
+            List<DocumentSearchResultVO> fulltextResults = awaitLeg(fulltextLeg, deadline);
+            legs.add(vectorLeg.toVO(vectorResults.size()));
+            legs.add(fulltextLeg.toVO(fulltextResults.size()));
+            log.info("检索完成: vector={}({}ms, {}), fulltext={}({}ms, {})",
+                vectorResults.size(), vectorLeg.tookMs, vectorLeg.status,
+                fulltextResults.size(), fulltextLeg.tookMs, fulltextLeg.status);
             
-            // 3.1 向量检索结果加权
-            for (int i = 0; i < vectorResults.size(); i++) {
-                Document doc = vectorResults.get(i);
+            // 3. 加权融合(RRF / 线性), 向量结果按文档去重, 保留每个文档最相关的分块
+            RankFusionService.RankedList vectorList =
+                new RankFusionService.RankedList("vector", config.getVectorWeight());
+            Map<Long, Document> vectorByDoc = new HashMap<>();
+            for (Document doc : vectorResults) {
                 Long docId = extractDocumentId(doc);
-                if (docId != null) {
-                    double rrfScore = 1.0 / (K + i + 1);  // rank从0开始,+1转为从1开始
-                    rrfScores.merge(docId, rrfScore, Double::sum);
+                if (docId != null && vectorByDoc.putIfAbsent(docId, doc) == null) {
+                    vectorList.add(String.valueOf(docId), doc.getScore() != null ? doc.getScore() : 0.0);
                 }
             }
             
-            // 3.2 全文检索结果加权
-            for (int i = 0; i < fulltextResults.size(); i++) {
-                Long docId = fulltextResults.get(i).getDocumentId();
-                double rrfScore = 1.0 / (K + i + 1);
-                rrfScores.merge(docId, rrfScore, Double::sum);
+            RankFusionService.RankedList fulltextList =
+                new RankFusionService.RankedList("fulltext", config.getTextWeight());
+            Map<Long, DocumentSearchResultVO> fulltextByDoc = new HashMap<>();
+            for (DocumentSearchResultVO result : fulltextResults) {
+                if (result.getDocumentId() != null && fulltextByDoc.putIfAbsent(result.getDocumentId(), result) == null) {
+                    fulltextList.add(String.valueOf(result.getDocumentId()), result.getScore() != null ? result.getScore() : 0.0);
+                }
             }
             
-            // 4. 按 RRF 分数排序,取 topK
-            List<Long> rankedDocIds = rrfScores.entrySet().stream()
-                .sorted((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()))  // 降序
-                .limit(topK)
-                .map(java.util.Map.Entry::getKey)
-                .collect(java.util.stream.Collectors.toList());
+            // 4. 按融合分数排序,取 topK
+            List<RankFusionService.FusedHit> fused = rankFusionService.fuse(List.of(vectorList, fulltextList), topK);
             
             // 5. 构建最终结果(优先使用全文检索结果,因为它有高亮信息)
-            List<DocumentSearchResultVO> finalResults = new ArrayList<>();
-            for (Long docId : rankedDocIds) {
-                // 优先从全文检索结果中查找
-                fulltextResults.stream()
-                    .filter(r -> r.getDocumentId().equals(docId))
-                    .findFirst()
-                    .ifPresentOrElse(
-                        result -> {
-                            result.setScore(rrfScores.get(docId));  // 更新为 RRF 分数
-                            result.setSource("hybrid");  // 标记为混合搜索
-                            finalResults.add(result);
-                        },
-                        () -> {
-                            // 如果全文检索中没有,从向量检索中提取
-                            vectorResults.stream()
-                                .filter(doc -> docId.equals(extractDocumentId(doc)))
-                                .findFirst()
-                                .ifPresent(doc -> {
-                                    DocumentSearchResultVO result = buildResultFromVectorDoc(doc, query, rrfScores.get(docId));
-                                    finalResults.add(result);
-                                });
-                        }
-                    );
+            List<DocumentSearchResultVO> finalResults = new ArrayList<>(fused.size());
+            for (RankFusionService.FusedHit hit : fused) {
+                Long docId = Long.valueOf(hit.getKey());
+                DocumentSearchResultVO result = fulltextByDoc.get(docId);
+                if (result != null) {
+                    result.setScore(hit.getScore());  // 更新为融合分数
+                    result.setSource("hybrid");  // 标记为混合搜索
+                    finalResults.add(result);
+                } else {
+                    // 如果全文检索中没有,从向量检索中提取
+                    finalResults.add(buildResultFromVectorDoc(vectorByDoc.get(docId), query, hit.getScore()));
+                }
             }
             
             log.info("混合搜索完成: query={}, vectorResults={}, fulltextResults={}, fusedResults={}", 
                 query, vectorResults.size(), fulltextResults.size(), finalResults.size());
             
-            return finalResults;
+            return HybridSearchResultVO.builder()
+                .results(finalResults)
+                .legs(legs)
+                .tookMs(System.currentTimeMillis() - startTime)
+                .build();
             
         } catch (Exception e) {
             log.error("混合搜索失败: query={}", query, e);
-            return new ArrayList<>();
+            return HybridSearchResultVO.builder()
+                .results(new ArrayList<>())
+                .legs(legs)
+                .tookMs(System.currentTimeMillis() - startTime)
+                .build();
+        }
+    }
+    
+    /**
+     * 全文检索一路: 优先分块索引(高亮只作用于分块文本), 每个文档取最相关的分块；
+     * 分块索引无结果时(如未重建索引的旧文档)退回文档级全文索引
+     */
+    private List<DocumentSearchResultVO> fullTextLeg(Long userId, String query, int topK) {
+        // 多个分块可能属于同一文档, 多召回一些分块以保证文档数
+        List<DocumentSearchResultVO> chunkResults = chunkESService.search(userId, null, query, topK * 2);
+        if (chunkResults.isEmpty()) {
+            return documentESService.fullTextSearchWithHighlight(userId, query, topK);
+        }
+        Map<Long, DocumentSearchResultVO> bestByDocument = new LinkedHashMap<>();
+        for (DocumentSearchResultVO result : chunkResults) {
+            if (result.getDocumentId() != null) {
+                bestByDocument.putIfAbsent(result.getDocumentId(), result);
+            }
+        }
+        return bestByDocument.values().stream().limit(topK).collect(Collectors.toList());
+    }
+    
+    /**
+     * 在检索线程池中启动一路检索
+     * 
+     * <p>hedgeAfterMs > 0 时启用对冲: 首次请求在该时间内未完成则再发起一次相同请求，取先返回者；
+     * 首次请求在对冲前失败时立即重试一次。</p>
+     */
+    private <T> SearchLeg<T> startLeg(String name, Supplier<T> task, long hedgeAfterMs) {
+        SearchLeg<T> leg = new SearchLeg<>(name, hedgeAfterMs > 0);
+        runAttempt(leg, task, false);
+        if (leg.hedgeEnabled) {
+            CompletableFuture.delayedExecutor(hedgeAfterMs, TimeUnit.MILLISECONDS).execute(() -> {
+                if (!leg.future.isDone() && leg.hedged.compareAndSet(false, true)) {
+                    retrievalMetricsService.increment("hybrid_search." + name + ".hedged");
+                    runAttempt(leg, task, true);
+                }
+            });
+        }
+        return leg;
+    }
+    
+    private <T> void runAttempt(SearchLeg<T> leg, Supplier<T> task, boolean hedge) {
+        searchLegExecutor.execute(() -> {
+            if (leg.future.isDone()) {
+                return;
+            }
+            try {
+                leg.future.complete(task.get());
+            } catch (Exception e) {
+                int failures = leg.failures.incrementAndGet();
+                if (!hedge && leg.hedgeEnabled && leg.hedged.compareAndSet(false, true)) {
+                    log.warn("检索失败, 立即重试: leg={}, error={}", leg.name, e.getMessage());
+                    runAttempt(leg, task, true);
+                } else if (failures >= (leg.hedged.get() ? 2 : 1)) {
+                    leg.future.completeExceptionally(e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * 等待一路检索结果，超过截止时间或失败时返回空列表(由另一路单独参与融合)
+     */
+    private <T> List<T> awaitLeg(SearchLeg<List<T>> leg, long deadline) {
+        List<T> results = new ArrayList<>();
+        try {
+            long remaining = Math.max(deadline - System.currentTimeMillis(), 0);
+            results = leg.future.get(remaining, TimeUnit.MILLISECONDS);
+            leg.status = "ok";
+        } catch (TimeoutException e) {
+            leg.status = "timeout";
+            log.warn("检索超时, 不参与融合: leg={}, timeout={}ms", leg.name, deadline - leg.startTime);
+        } catch (ExecutionException e) {
+            leg.status = "error";
+            log.warn("检索失败, 不参与融合: leg={}, error={}", leg.name, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            leg.status = "error";
+        }
+        leg.tookMs = System.currentTimeMillis() - leg.startTime;
+        retrievalMetricsService.record("hybrid_search." + leg.name + ".ms", leg.tookMs);
+        if (!"ok".equals(leg.status)) {
+            retrievalMetricsService.increment("hybrid_search." + leg.name + "." + leg.status);
+        }
+        return results;
+    }
+    
+    /**
+     * 混合检索中的一路检索
+     */
+    private static class SearchLeg<T> {
+        private final String name;
+        private final boolean hedgeEnabled;
+        private final long startTime = System.currentTimeMillis();
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final AtomicBoolean hedged = new AtomicBoolean(false);
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile String status;
+        private volatile long tookMs;
+        
+        SearchLeg(String name, boolean hedgeEnabled) {
+            this.name = name;
+            this.hedgeEnabled = hedgeEnabled;
+        }
+        
+        SearchLegVO toVO(int resultCount) {
+            return SearchLegVO.builder()
+                .name(name)
+                .status(status)
+                .contributed("ok".equals(status) && resultCount > 0)
+                .hedged(hedged.get())
+                .resultCount(resultCount)
+                .tookMs(tookMs)
+                .build();
         }
     }
     
@@ -1175,16 +1382,13 @@ public class DocumentServiceImpl implements DocumentService {
      * 从 Spring AI Document 中提取文档 ID
      */
     private Long extractDocumentId(Document doc) {
-        try {
-            // Spring AI VectorStore 使用 Base62 编码存储 ID
-            String encodedId = doc.getId();
-            // Base62.decode() 返回 byte[], 需要先转为 String 再转 Long
-            String decodedStr = new String(Base62.decode(encodedId));
-            return Long.valueOf(decodedStr);
-        } catch (Exception e) {
-            log.warn("解析文档ID失败: encodedId={}", doc.getId(), e);
-            return null;
+        // 向量 ID 是分块 UUID, 文档ID取自元数据
+        Object documentId = doc.getMetadata().get(MetadataKeys.DOCUMENT_ID);
+        Long id = documentId == null ? null : NumberConversionUtils.toLong(String.valueOf(documentId));
+        if (id == null) {
+            log.warn("解析文档ID失败: vectorId={}, documentId={}", doc.getId(), documentId);
         }
+        return id;
     }
     
     /**
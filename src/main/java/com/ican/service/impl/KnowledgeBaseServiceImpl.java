@@ -3,6 +3,7 @@ package com.ican.service.impl;
 import cn.dev33.satoken.stp.StpUtil;
 import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.ican.mapper.*;
@@ -11,16 +12,22 @@ import com.ican.model.dto.KnowledgeBaseQueryDTO;
 import com.ican.model.dto.TagQueryDTO;
 import com.ican.model.entity.*;
 import com.ican.model.vo.TagVO;
+import com.ican.service.CorpusVersionService;
+import com.ican.service.DocumentIndexSyncService;
 import com.ican.service.KnowledgeBaseService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import top.continew.starter.core.exception.BusinessException;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -37,6 +44,8 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
     private final TagMapper tagMapper;
     private final DocumentTagMapper documentTagMapper;
     private final DocumentMapper documentMapper;
+    private final DocumentIndexSyncService documentIndexSyncService;
+    private final CorpusVersionService corpusVersionService;
     
     @Override
     @Transactional(rollbackFor = Exception.class)
@@ -167,7 +176,22 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
         kb.setUpdateTime(LocalDateTime.now());
         knowledgeBaseMapper.updateById(kb);
         
-        log.info("删除知识库成功: id={}", kbId);
+        // 文档移出知识库(文档本身保留), 索引中的 kbId 随之移除, 否则知识库问答仍能按旧 kbId 命中
+        List<Long> documentIds = documentMapper.selectList(
+            new LambdaQueryWrapper<DocumentDO>()
+                .select(DocumentDO::getId)
+                .eq(DocumentDO::getKbId, kbId)
+                .eq(DocumentDO::getUserId, userId)
+        ).stream().map(DocumentDO::getId).toList();
+        if (!documentIds.isEmpty()) {
+            documentMapper.update(null, new LambdaUpdateWrapper<DocumentDO>()
+                .set(DocumentDO::getKbId, null)
+                .set(DocumentDO::getUpdateTime, LocalDateTime.now())
+                .in(DocumentDO::getId, documentIds));
+        }
+        syncAfterCommit(userId, documentIds, null, Set.of(kbId));
+        
+        log.info("删除知识库成功: id={}, detachedDocuments={}", kbId, documentIds.size());
     }
     
     @Override
@@ -190,6 +214,8 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
         
         int successCount = 0;
         List<String> errors = new ArrayList<>();
+        List<Long> archivedIds = new ArrayList<>();
+        Set<Long> previousKbIds = new HashSet<>();
         
         // 批量处理文档
         for (Long documentId : documentIds) {
@@ -209,12 +235,16 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
                     continue;
                 }
                 
-                // 关联文档到知识库
+                // 关联文档到知识库(记录原知识库, 其答案缓存同样需要失效)
+                if (document.getKbId() != null && !document.getKbId().equals(kbId)) {
+                    previousKbIds.add(document.getKbId());
+                }
                 document.setKbId(kbId);
                 document.setUpdateTime(LocalDateTime.now());
                 documentMapper.updateById(document);
                 
                 successCount++;
+                archivedIds.add(documentId);
                 log.info("文档归档成功: documentId={}, kbId={}", documentId, kbId);
                 
             } catch (Exception e) {
@@ -230,6 +260,12 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
             knowledgeBaseMapper.updateById(kb);
         }
         
+        // 事务提交后将知识库归属同步到向量和全文索引, 知识库问答才能按 kbId 预过滤
+        if (!archivedIds.isEmpty()) {
+            previousKbIds.add(kbId);
+            syncAfterCommit(userId, archivedIds, kbId, previousKbIds);
+        }
+        
         log.info("批量归档完成: total={}, success={}, failed={}", 
             documentIds.size(), successCount, documentIds.size() - successCount);
         
@@ -240,6 +276,33 @@ public class KnowledgeBaseServiceImpl implements KnowledgeBaseService {
         }
     }
     
+    /**
+     * 事务提交后同步文档的知识库归属到索引, 并使受影响知识库的答案缓存失效
+     * 
+     * <p>同步失败时数据库已提交, 失败计入 index.kb_sync.* 指标, 重新归档或重建索引可修复。
+     * 向量化尚未完成的文档, 由向量化结束时按数据库中的最新归属补同步。</p>
+     * 
+     * @param kbId 新的知识库ID, 为空表示移出知识库
+     * @param affectedKbIds 需要失效答案缓存的知识库
+     */
+    private void syncAfterCommit(Long userId, List<Long> documentIds, Long kbId, Set<Long> affectedKbIds) {
+        TransactionSynchronizationManager.registerSynchronization(
+            new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    if (!documentIds.isEmpty()) {
+                        try {
+                            documentIndexSyncService.syncKnowledgeBase(userId, documentIds, kbId);
+                        } catch (Exception e) {
+                            log.error("同步知识库归属到索引失败: kbId={}, documentIds={}", kbId, documentIds, e);
+                        }
+                    }
+                    corpusVersionService.bump(userId, null, affectedKbIds.toArray(new Long[0]));
+                }
+            }
+        );
+    }
+    
     @Override
     @Transactional(rollbackFor = Exception.class)
     public Long createTag(String name, String color) {
@@ -0,0 +1,229 @@
+package com.ican.service.impl;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.djl.util.PairList;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import cn.hutool.core.util.StrUtil;
+import com.ican.config.RAGConfig;
+import com.ican.service.CrossEncoderService;
+import com.ican.service.RetrievalMetricsService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地 ONNX cross-encoder 评分服务实现
+ *
+ * <p>仅在 rag.rerank.backend=cross-encoder 时加载模型。(问题, 候选) 对按 batch-size 分批编码,
+ * 各批在与 CPU 核数相同的线程池中并行推理；单次推理使用单线程，避免与批间并行叠加后超出核数。</p>
+ *
+ * <p>兼容两种输出: [batch, 1] 的相关性 logit(如 bge-reranker，取 sigmoid) 和 [batch, 2] 的二分类 logits(取正类概率)。</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class OnnxCrossEncoderServiceImpl implements CrossEncoderService {
+
+    private static final String BACKEND = "cross-encoder";
+
+    private final RAGConfig ragConfig;
+    private final RetrievalMetricsService retrievalMetricsService;
+
+    private OrtEnvironment environment;
+    private OrtSession session;
+    private HuggingFaceTokenizer tokenizer;
+    private boolean hasTokenTypeIds;
+    private ThreadPoolExecutor inferenceExecutor;
+    private volatile boolean available;
+
+    @PostConstruct
+    public void init() {
+        if (!BACKEND.equalsIgnoreCase(ragConfig.getRerank().getBackend())) {
+            return;
+        }
+        RAGConfig.CrossEncoderConfig config = ragConfig.getRerank().getCrossEncoder();
+        if (StrUtil.isBlank(config.getModelPath())) {
+            log.warn("未配置 cross-encoder 模型路径, 重排序退回 LLM 评分");
+            return;
+        }
+
+        Path modelPath = Paths.get(config.getModelPath());
+        Path tokenizerPath = StrUtil.isNotBlank(config.getTokenizerPath())
+            ? Paths.get(config.getTokenizerPath())
+            : modelPath.resolveSibling("tokenizer.json");
+        int threads = config.getThreads() != null && config.getThreads() > 0
+            ? config.getThreads()
+            : Runtime.getRuntime().availableProcessors();
+
+        try {
+            environment = OrtEnvironment.getEnvironment();
+            try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+                options.setIntraOpNumThreads(1);
+                options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+                session = environment.createSession(modelPath.toString(), options);
+            }
+            hasTokenTypeIds = session.getInputNames().contains("token_type_ids");
+            tokenizer = HuggingFaceTokenizer.builder()
+                .optTokenizerPath(tokenizerPath)
+                .optMaxLength(config.getMaxLength())
+                .optTruncateSecondOnly()
+                .optPadding(true)
+                .build();
+
+            AtomicInteger counter = new AtomicInteger();
+            inferenceExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "cross-encoder-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            inferenceExecutor.allowCoreThreadTimeOut(true);
+
+            available = true;
+            log.info("cross-encoder 模型加载完成: model={}, tokenizer={}, threads={}, inputs={}",
+                modelPath, tokenizerPath, threads, session.getInputNames());
+        } catch (Exception e) {
+            log.error("cross-encoder 模型加载失败, 重排序退回 LLM 评分: model={}", modelPath, e);
+            close();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        available = false;
+        if (inferenceExecutor != null) {
+            inferenceExecutor.shutdownNow();
+        }
+        if (session != null) {
+            try {
+                session.close();
+            } catch (OrtException e) {
+                log.warn("关闭 cross-encoder 会话失败: {}", e.getMessage());
+            }
+        }
+        if (tokenizer != null) {
+            tokenizer.close();
+        }
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @Override
+    public Map<String, Double> score(String query, Map<String, String> candidates, long deadline) {
+        long startTime = System.currentTimeMillis();
+        List<String> ids = new ArrayList<>(candidates.keySet());
+        int batchSize = Math.max(1, ragConfig.getRerank().getCrossEncoder().getBatchSize());
+
+        Map<List<String>, CompletableFuture<float[]>> futures = new LinkedHashMap<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<String> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            List<String> texts = new ArrayList<>(batch.size());
+            for (String id : batch) {
+                texts.add(candidates.get(id) != null ? candidates.get(id) : "");
+            }
+            futures.put(batch, CompletableFuture.supplyAsync(() -> infer(query, texts), inferenceExecutor));
+        }
+
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                .get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            retrievalMetricsService.increment("rerank.cross_encoder.deadline_exceeded");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("cross-encoder 推理失败: {}", e.getMessage());
+        }
+
+        Map<String, Double> scores = new HashMap<>();
+        for (Map.Entry<List<String>, CompletableFuture<float[]>> entry : futures.entrySet()) {
+            CompletableFuture<float[]> future = entry.getValue();
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                float[] batchScores = future.join();
+                List<String> batch = entry.getKey();
+                for (int i = 0; i < batch.size(); i++) {
+                    scores.put(batch.get(i), (double) batchScores[i]);
+                }
+            } else {
+                future.cancel(false);
+            }
+        }
+        retrievalMetricsService.record("rerank.cross_encoder.ms", System.currentTimeMillis() - startTime);
+        return scores;
+    }
+
+    /**
+     * 对一批 (问题, 候选) 推理, 返回 0-1 相关性分数
+     */
+    private float[] infer(String query, List<String> texts) {
+        PairList<String, String> pairs = new PairList<>(texts.size());
+        for (String text : texts) {
+            pairs.add(query, text);
+        }
+        Encoding[] encodings = tokenizer.batchEncode(pairs);
+
+        int length = 0;
+        for (Encoding encoding : encodings) {
+            length = Math.max(length, encoding.getIds().length);
+        }
+        long[][] inputIds = new long[encodings.length][length];
+        long[][] attentionMask = new long[encodings.length][length];
+        long[][] tokenTypeIds = new long[encodings.length][length];
+        for (int i = 0; i < encodings.length; i++) {
+            long[] ids = encodings[i].getIds();
+            System.arraycopy(ids, 0, inputIds[i], 0, ids.length);
+            System.arraycopy(encodings[i].getAttentionMask(), 0, attentionMask[i], 0, ids.length);
+            System.arraycopy(encodings[i].getTypeIds(), 0, tokenTypeIds[i], 0, ids.length);
+        }
+
+        try (OnnxTensor idsTensor = OnnxTensor.createTensor(environment, inputIds);
+             OnnxTensor maskTensor = OnnxTensor.createTensor(environment, attentionMask);
+             OnnxTensor typeTensor = hasTokenTypeIds ? OnnxTensor.createTensor(environment, tokenTypeIds) : null) {
+            Map<String, OnnxTensor> inputs = new HashMap<>();
+            inputs.put("input_ids", idsTensor);
+            inputs.put("attention_mask", maskTensor);
+            if (typeTensor != null) {
+                inputs.put("token_type_ids", typeTensor);
+            }
+            try (OrtSession.Result result = session.run(inputs)) {
+                float[][] logits = (float[][]) result.get(0).getValue();
+                float[] scores = new float[logits.length];
+                for (int i = 0; i < logits.length; i++) {
+                    float logit = logits[i].length == 1 ? logits[i][0] : logits[i][1] - logits[i][0];
+                    scores[i] = (float) (1.0 / (1.0 + Math.exp(-logit)));
+                }
+                return scores;
+            }
+        } catch (OrtException e) {
+            throw new CompletionException(e);
+        }
+    }
+}
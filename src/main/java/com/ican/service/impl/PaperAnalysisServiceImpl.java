@@ -3,31 +3,32 @@
 import cn.dev33.satoken.stp.StpUtil;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ican.config.MetadataKeys;
+import com.ican.config.PrecomputedContextAdvisor;
 import com.ican.config.RAGConfig;
 import com.ican.mapper.DocumentChunkMapper;
 import com.ican.mapper.DocumentMapper;
 import com.ican.model.entity.DocumentChunkDO;
 import com.ican.model.entity.DocumentDO;
 import com.ican.model.vo.*;
+import com.ican.service.ChunkContextService;
+import com.ican.service.CitationService;
 import com.ican.service.FileStorageService;
 import com.ican.service.GrobidMetadataService;
 import com.ican.service.PaperAnalysisService;
 import com.ican.utils.LLMJsonUtils;
-import com.ican.utils.NumberConversionUtils;
 import com.ican.utils.StructuredOutputUtils;
 import lombok.Builder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.ai.vectorstore.filter.Filter;
 import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.beans.factory.annotation.Qualifier;
-import cn.hutool.core.codec.Base62;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
@@ -48,6 +49,8 @@ public class PaperAnalysisServiceImpl implements PaperAnalysisService {
 
     private final DocumentMapper documentMapper;
     private final DocumentChunkMapper documentChunkMapper;
+    private final CitationService citationService;
+    private final ChunkContextService chunkContextService;
     private final ChatClient ragChatClient;
     private final VectorStore vectorStore;
     private final RedisTemplate<String, Object> redisTemplate;
@@ -105,21 +108,23 @@ public class PaperAnalysisServiceImpl implements PaperAnalysisService {
             
             // 构建过滤条件：只检索当前文档的分块
             Filter.Expression filterExpression = new FilterExpressionBuilder()
-                    .eq("documentId", Base62.encode(String.valueOf(documentId)))
+                    .eq("documentId", documentId)
                     .build();
             
             // 构建检索请求（使用配置的 topK 值）
             int topK = ragConfig.getRetrieval().getTopK();
             SearchRequest searchRequest = SearchRequest.builder()
-                    .query("请总结这篇论文的核心内容、主要创新点、研究方法和实验结果")
+                    .query(SUMMARY_QUERY)
                     .similarityThreshold(0.3)  // 降低阈值以获取更多相关内容
                     .topK(topK)  // 使用配置的 topK 值
                     .filterExpression(filterExpression)
                     .build();
             
-            // 构建 QuestionAnswerAdvisor
-            QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore)
-                    .searchRequest(searchRequest)
+            // 检索一次，结果通过预检索上下文顾问注入
+            List<Document> summaryDocs = vectorStore.similaritySearch(searchRequest);
+            log.info("论文总结检索完成: documentId={}, 检索到 {} 个片段", documentId, summaryDocs.size());
+            PrecomputedContextAdvisor contextAdvisor = PrecomputedContextAdvisor.builder(chunkContextService.withOverlap(summaryDocs))
+                    .promptTemplate(paperSummaryPromptTemplate)
                     .build();
 
             // 增强system message,强调JSON格式和内容完整性
@@ -136,12 +141,12 @@ public class PaperAnalysisServiceImpl implements PaperAnalysisService {
                 记住：你的目标是生成一份完整、详细、有价值的论文总结，而不是空壳结构！
                 """;
             
-            // 🔥 使用 QuestionAnswerAdvisor 进行 RAG 增强的论文总结
+            // 🔥 使用预检索上下文进行 RAG 增强的论文总结
             log.info("开始调用 LLM 生成论文总结（使用 RAG）");
             String rawResponse = ragChatClient.prompt()
-                    .advisors(qaAdvisor)  // 🎯 RAG 会自动检索相关分块并注入上下文
+                    .advisors(contextAdvisor)  // 🎯 注入已检索的相关分块
                     .system(systemMessage)
-                    .user(paperSummaryPromptTemplate.replace("{context}", "基于检索到的相关内容"))
+                    .user(SUMMARY_QUERY)
                     .call()
                     .content();
             
@@ -172,6 +177,7 @@ public class PaperAnalysisServiceImpl implements PaperAnalysisService {
                 Map<String, Object> metadata = new HashMap<>();
                 metadata.put("documentId", String.valueOf(documentId));
                 metadata.put("chunkIndex", chunk.getChunkIndex());
+                metadata.put(MetadataKeys.CHUNK_ID, chunk.getId());
                 metadata.put("title", documentTitle);
 
                 Document doc = Document.builder()
@@ -183,7 +189,7 @@ public class PaperAnalysisServiceImpl implements PaperAnalysisService {
                 retrievedDocs.add(doc);
             }
 
-            List<CitationVO> citations = buildCitations(retrievedDocs, "论文总结", 500);
+            List<CitationVO> citations = citationService.buildCitations(retrievedDocs, "论文总结", 500);
 
             log.info("论文总结完成: documentId={}, citations={}", documentId, citations.size());
 
@@ -289,6 +295,7 @@ public class PaperAnalysisServiceImpl implements PaperAnalysisService {
                 Map<String, Object> metadata = new HashMap<>();
                 metadata.put("documentId", String.valueOf(docId));
                 metadata.put("chunkIndex", chunk.getChunkIndex());
+                metadata.put(MetadataKeys.CHUNK_ID, chunk.getId());
                 metadata.put("title", docTitle);
                 
                 Document doc = Document.builder()
@@ -333,7 +340,7 @@ public class PaperAnalysisServiceImpl implements PaperAnalysisService {
                     comparison.getPapers().size(),
                     comparison.getMatrix().size());
 
-            List<CitationVO> citations = buildCitations(allRetrievedDocs, "论文对比", 200);
+            List<CitationVO> citations = citationService.buildCitations(allRetrievedDocs, "论文对比", 200);
 
             return RagAnswerVO.<PaperComparisonVO>builder()
                     .answer(comparison)
@@ -599,7 +606,7 @@ public class PaperAnalysisServiceImpl implements PaperAnalysisService {
     // ==================== 私有辅助方法 ====================
 
     // 🗑️ 已删除低效的两阶段批处理方法（buildDirectContext, buildTwoStageSummary, generateIntermediateSummary）
-    // 现在使用 QuestionAnswerAdvisor + RAG 进行高效的论文总结
+    // 现在使用单次检索 + PrecomputedContextAdvisor 进行高效的论文总结
 
     /**
      * 提取单篇论文的创新点
@@ -666,73 +673,6 @@ public class PaperAnalysisServiceImpl implements PaperAnalysisService {
         }
     }
 
-    /**
-     * 构建引用列表 - 前端高亮方案
-     */
-    private List<CitationVO> buildCitations(List<Document> docs, String query, int maxLen) {
-        if (docs == null || docs.isEmpty()) {
-            return Collections.emptyList();
-        }
-        
-        // 提取关键词列表(前端用于高亮)
-        List<String> keywords = query == null || query.isBlank() 
-            ? List.of() 
-            : Arrays.stream(query.trim().split("\\s+"))
-                .filter(kw -> !kw.isBlank())
-                .toList();
-        
-        return docs.stream().map(d -> {
-            Long documentId = NumberConversionUtils.toLong(String.valueOf(d.getMetadata().get("documentId")));
-            Integer chunkIndex = NumberConversionUtils.toInteger(String.valueOf(d.getMetadata().get("chunkIndex")));
-            Double score = d.getScore();
-            String title = d.getMetadata().getOrDefault("title", "未知文档").toString();
-            String text = d.getText();
-            if (text != null && text.length() > maxLen) {
-                text = text.substring(0, maxLen) + "...";
-            }
-
-            Long chunkId = null;
-            String position = null;
-            String metadataJson = null;
-
-            try {
-                if (documentId != null && chunkIndex != null) {
-                    DocumentChunkDO chunk = documentChunkMapper.selectOne(
-                            new LambdaQueryWrapper<DocumentChunkDO>()
-                                    .eq(DocumentChunkDO::getDocumentId, documentId)
-                                    .eq(DocumentChunkDO::getChunkIndex, chunkIndex)
-                                    .last("limit 1"));
-                    if (chunk != null) {
-                        chunkId = chunk.getId();
-                        position = "第 " + (chunkIndex + 1) + " 段";
-                    }
-                }
-
-                if (!d.getMetadata().isEmpty()) {
-                    try {
-                        metadataJson = objectMapper.writeValueAsString(d.getMetadata());
-                    } catch (Exception ignored) {
-                        metadataJson = d.getMetadata().toString();
-                    }
-                }
-            } catch (Exception e) {
-                log.trace("查询chunkId失败", e);
-            }
-
-            return CitationVO.builder()
-                    .documentId(documentId)
-                    .title(title)
-                    .chunkId(chunkId)
-                    .chunkIndex(chunkIndex)
-                    .score(score)
-                    .snippet(text)
-                    .keywords(keywords)  // 提供给前端用于高亮
-                    .position(position)
-                    .metadata(metadataJson)
-                    .build();
-        }).toList();
-    }
-
     /**
      * 解析创新点列表
      * 保留 LLMJsonUtils - 这是纯 JSON 解析,不涉及 LLM 调用
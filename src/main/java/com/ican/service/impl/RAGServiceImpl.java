@@ -1,31 +1,35 @@
 package com.ican.service.impl;
 
 import cn.dev33.satoken.stp.StpUtil;
-import cn.hutool.core.codec.Base62;
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ican.config.PrecomputedContextAdvisor;
 import com.ican.config.RAGConfig;
-import com.ican.mapper.DocumentChunkMapper;
 import com.ican.mapper.DocumentMapper;
 import com.ican.mapper.KnowledgeBaseMapper;
-import com.ican.model.entity.DocumentChunkDO;
 import com.ican.model.entity.KnowledgeBaseDO;
 import com.ican.model.entity.DocumentDO;
 import com.ican.model.vo.CitationVO;
+import com.ican.model.vo.DocumentSearchResultVO;
 import com.ican.model.vo.RagChatResultVO;
+import com.ican.repository.HybridRetriever;
+import com.ican.service.AnswerCacheService;
+import com.ican.service.ChunkContextService;
+import com.ican.service.ChunkESService;
+import com.ican.service.CitationService;
+import com.ican.service.CorpusVersionService;
 import com.ican.service.DocumentESService;
 import com.ican.service.DynamicRetrievalService;
 import com.ican.service.RAGService;
+import com.ican.service.RankFusionService;
 import com.ican.service.RerankService;
+import com.ican.service.RetrievalMetricsService;
 import com.ican.utils.NumberConversionUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
 import org.springframework.ai.chat.messages.AssistantMessage;
-import org.springframework.ai.chat.messages.Message;
 import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.metadata.Usage;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
@@ -33,9 +37,13 @@ import org.springframework.ai.vectorstore.filter.Filter;
 import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import reactor.core.Disposable;
 import top.continew.starter.core.exception.BusinessException;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 /**
@@ -57,13 +65,23 @@ public class RAGServiceImpl implements RAGService {
     private final RAGConfig ragConfig;
     private final ChatMemory chatMemoryRepository;
     private final DocumentMapper documentMapper;
-    private final DocumentChunkMapper documentChunkMapper;
+    private final CitationService citationService;
+    private final ChunkContextService chunkContextService;
     private final KnowledgeBaseMapper knowledgeBaseMapper;
     private final DynamicRetrievalService dynamicRetrievalService;
     private final DocumentESService documentESService;
+    private final ChunkESService chunkESService;
     private final RerankService rerankService;
+    private final RetrievalMetricsService retrievalMetricsService;
+    private final AnswerCacheService answerCacheService;
+    private final RankFusionService rankFusionService;
+    private final HybridRetriever hybridRetriever;
     private final ChatClient ragChatClient;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * 流式问答超时时间(毫秒)
+     */
+    private static final long STREAM_TIMEOUT_MS = 300000L;
 
     // 注入提示词模板
     @Qualifier("ragQAPromptTemplate")
@@ -73,14 +91,53 @@ public class RAGServiceImpl implements RAGService {
 
     @Override
     public RagChatResultVO ragChat(String conversationId, String query) {
+        return answer(prepareRagChat(conversationId, query));
+    }
+
+    @Override
+    public SseEmitter ragChatStream(String conversationId, String query) {
+        return streamAnswer(prepareRagChat(conversationId, query));
+    }
+
+    @Override
+    public RagChatResultVO documentChat(Long documentId, String query) {
+        return answer(prepareDocumentChat(documentId, query));
+    }
+
+    @Override
+    public SseEmitter documentChatStream(Long documentId, String query) {
+        return streamAnswer(prepareDocumentChat(documentId, query));
+    }
+
+    @Override
+    public RagChatResultVO knowledgeBaseChat(Long knowledgeBaseId, String query) {
+        return answer(prepareKnowledgeBaseChat(knowledgeBaseId, query));
+    }
+
+    @Override
+    public SseEmitter knowledgeBaseChatStream(Long knowledgeBaseId, String query) {
+        return streamAnswer(prepareKnowledgeBaseChat(knowledgeBaseId, query));
+    }
+
+    /**
+     * RAG 问答的检索阶段: 基于当前用户的所有文档
+     */
+    private RagContext prepareRagChat(String conversationId, String query) {
         log.info("RAG问答: conversationId={}, query={}", conversationId, query);
 
         // 获取当前用户ID（拦截器已确保用户已登录）
         Long userId = StpUtil.getLoginIdAsLong();
 
+        // 🆕 语义答案缓存: 同一用户语料版本下的相似问题直接返回
+        String cacheScope = CorpusVersionService.userScope(userId);
+        RagChatResultVO cached = answerCacheService.get(cacheScope, query);
+        if (cached != null) {
+            return new RagContext("RAG问答", conversationId, query, cacheScope, cached, List.of(), ragQAPromptTemplate);
+        }
+
         // 1. 构建基础过滤条件
         Filter.Expression filterExpression = new FilterExpressionBuilder().eq("userId",
-                Base62.encode(String.valueOf(userId))).build();
+                userId).build();
 
         // 2. 构建检索请求（动态调整检索参数）
         SearchRequest baseRequest = SearchRequest.builder()
@@ -105,7 +162,7 @@ public class RAGServiceImpl implements RAGService {
             
             // 根据是否启用重排序，决定向量精排的严格程度
             boolean useStrictReranking = ragConfig.getRetrieval().getEnableReranking();
-            retrievedDocs = performHybridSearch(userId, query, adjustedRequest, useStrictReranking);
+            retrievedDocs = performHybridSearch(userId, null, null, query, adjustedRequest, useStrictReranking);
             
         } else if (ragConfig.getRetrieval().getEnableReranking()) {
             // 纯向量检索 + 重排序（扩大检索量后精排）
@@ -119,80 +176,30 @@ public class RAGServiceImpl implements RAGService {
             log.info("向量检索完成: 检索到 {} 个文档片段", retrievedDocs.size());
         }
         
-        // 4. 手动构建上下文并注入到 Prompt 中
-        String context = buildContext(retrievedDocs);
-        
-        // 创建 QuestionAnswerAdvisor（使用已检索的文档）
-        // 注意：这里不让 Advisor 重新检索，我们手动注入上下文
-        QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore)
-                .searchRequest(adjustedRequest)
-                .build();
-
-        // 5. 使用提示词模板构建用户提示（注入检索到的上下文）
-        String userPrompt = ragQAPromptTemplate
-                .replace("{question}", query)
-                .replace("{context}", context);
-
-        // 构建包含历史对话的消息列表
-        List<Message> messages = new ArrayList<>();
-
-        // 如果 conversationId 不为空，加载历史对话
-        if (conversationId != null && !conversationId.trim().isEmpty()) {
-            try {
-                messages.addAll(chatMemoryRepository.get(conversationId));
-                log.debug("RAG问答 - 加载历史消息: conversationId={}, historyCount={}",
-                        conversationId, messages.size());
-            } catch (Exception e) {
-                log.warn("加载RAG对话历史失败: conversationId={}", conversationId, e);
-            }
-        }
-
-        // 添加当前用户消息
-        UserMessage userMessage = new UserMessage(userPrompt);
-        messages.add(userMessage);
-
-        // 使用注入的 ragChatClient 执行 RAG 问答
-        // QuestionAnswerAdvisor 会自动完成：检索 -> 上下文注入 -> LLM 生成
-        String response = ragChatClient.prompt()
-                .advisors(qaAdvisor) // Advisor 负责检索和上下文增强
-                .user(userPrompt)
-                .call()
-                .content();
-
-        // 保存对话历史到记忆库
-        if (conversationId != null && !conversationId.trim().isEmpty()) {
-            try {
-                AssistantMessage assistantMessage = new AssistantMessage(response);
-                chatMemoryRepository.add(conversationId, List.of(userMessage, assistantMessage));
-                log.debug("RAG问答 - 保存到记忆库: conversationId={}", conversationId);
-            } catch (Exception e) {
-                log.warn("保存RAG对话历史失败: conversationId={}", conversationId, e);
-            }
-        }
-
-        // 6. 构建引用列表（使用已检索的文档）
-        List<CitationVO> citations = buildCitations(retrievedDocs, query, 300);
-
-        log.info("RAG问答完成: conversationId={}, responseLength={}, citations={}", 
-                conversationId, response.length(), citations.size());
-        return RagChatResultVO.builder()
-                .answer(response)
-                .citations(citations)
-                .build();
+        return new RagContext("RAG问答", conversationId, query, cacheScope, null, retrievedDocs, ragQAPromptTemplate);
     }
 
-    @Override
-    public RagChatResultVO documentChat(Long documentId, String query) {
+    /**
+     * 文档问答的检索阶段: 限定在单一文档的上下文中
+     */
+    private RagContext prepareDocumentChat(Long documentId, String query) {
         log.info("文档问答: documentId={}, query={}", documentId, query);
 
         // 验证文档权限（拦截器已确保用户已登录）
         Long userId = StpUtil.getLoginIdAsLong();
         validateDocumentAccess(documentId, userId);
 
+        // 🆕 语义答案缓存(文档范围)
+        String cacheScope = CorpusVersionService.documentScope(documentId);
+        RagChatResultVO cached = answerCacheService.get(cacheScope, query);
+        if (cached != null) {
+            return new RagContext("文档问答", null, query, cacheScope, cached, List.of(), documentQAPromptTemplate);
+        }
+
         // 构建过滤条件 - 只检索指定文档的内容
         Filter.Expression filterExpression = new FilterExpressionBuilder().and(
-                new FilterExpressionBuilder().eq("documentId", Base62.encode(String.valueOf(documentId))),
-                new FilterExpressionBuilder().eq("userId", Base62.encode(String.valueOf(userId)))).build();
+                new FilterExpressionBuilder().eq("documentId", documentId),
+                new FilterExpressionBuilder().eq("userId", userId)).build();
 
         // 构建检索请求（针对指定文档）
         SearchRequest searchRequest = SearchRequest.builder()
@@ -209,7 +216,7 @@ public class RAGServiceImpl implements RAGService {
             // ✅ 启用混合检索（针对单个文档）
             log.info("文档问答启用混合检索: documentId={}", documentId);
             boolean useStrictReranking = ragConfig.getRetrieval().getEnableReranking();
-            docRetrievedDocs = performHybridSearch(userId, query, searchRequest, useStrictReranking);
+            docRetrievedDocs = performHybridSearch(userId, null, documentId, query, searchRequest, useStrictReranking);
             
         } else if (ragConfig.getRetrieval().getEnableReranking()) {
             // 纯向量检索 + 重排序
@@ -223,36 +230,13 @@ public class RAGServiceImpl implements RAGService {
         
         log.info("文档问答检索完成: documentId={}, 检索到 {} 个片段", documentId, docRetrievedDocs.size());
         
-        // 构建上下文
-        String context = buildContext(docRetrievedDocs);
-        
-        // 创建 QuestionAnswerAdvisor
-        QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore)
-                .searchRequest(searchRequest)
-                .build();
-
-        // 使用提示词模板构建用户提示（注入上下文）
-        String userPrompt = documentQAPromptTemplate
-                .replace("{question}", query)
-                .replace("{context}", context);
-        
-        // 执行文档问答
-        String response = ragChatClient.prompt()
-                .advisors(qaAdvisor)
-                .user(userPrompt)
-                .call()
-                .content();
-        
-        // 构建引用列表
-        List<CitationVO> citations = buildCitations(docRetrievedDocs, query, 300);
-        return RagChatResultVO.builder()
-                .answer(response)
-                .citations(citations)
-                .build();
+        return new RagContext("文档问答", null, query, cacheScope, null, docRetrievedDocs, documentQAPromptTemplate);
     }
 
-    @Override
-    public RagChatResultVO knowledgeBaseChat(Long knowledgeBaseId, String query) {
+    /**
+     * 知识库问答的检索阶段: 在知识库的所有文档中检索
+     */
+    private RagContext prepareKnowledgeBaseChat(Long knowledgeBaseId, String query) {
         log.info("知识库问答: knowledgeBaseId={}, query={}", knowledgeBaseId, query);
         
         // 获取当前用户ID
@@ -261,10 +245,17 @@ public class RAGServiceImpl implements RAGService {
         // 验证知识库访问权限
         validateKnowledgeBaseAccess(knowledgeBaseId, userId);
         
+        // 🆕 语义答案缓存(知识库范围)
+        String cacheScope = CorpusVersionService.kbScope(knowledgeBaseId);
+        RagChatResultVO cached = answerCacheService.get(cacheScope, query);
+        if (cached != null) {
+            return new RagContext("知识库问答", null, query, cacheScope, cached, List.of(), documentQAPromptTemplate);
+        }
+        
         // 1. 构建过滤条件：限定在该知识库的所有文档中
         Filter.Expression filterExpression = new FilterExpressionBuilder().and(
-                new FilterExpressionBuilder().eq("kbId", Base62.encode(String.valueOf(knowledgeBaseId))),
-                new FilterExpressionBuilder().eq("userId", Base62.encode(String.valueOf(userId)))).build();
+                new FilterExpressionBuilder().eq("kbId", knowledgeBaseId),
+                new FilterExpressionBuilder().eq("userId", userId)).build();
         
         // 2. 构建检索请求
         SearchRequest baseRequest = SearchRequest.builder()
@@ -283,7 +274,7 @@ public class RAGServiceImpl implements RAGService {
         if (ragConfig.getRetrieval().getEnableHybridSearch()) {
             log.info("知识库问答启用混合检索: knowledgeBaseId={}", knowledgeBaseId);
             boolean useStrictReranking = ragConfig.getRetrieval().getEnableReranking();
-            retrievedDocs = performHybridSearch(userId, query, adjustedRequest, useStrictReranking);
+            retrievedDocs = performHybridSearch(userId, knowledgeBaseId, null, query, adjustedRequest, useStrictReranking);
             
         } else if (ragConfig.getRetrieval().getEnableReranking()) {
             log.info("知识库问答启用重排序: knowledgeBaseId={}", knowledgeBaseId);
@@ -295,111 +286,205 @@ public class RAGServiceImpl implements RAGService {
         
         log.info("知识库问答检索完成: knowledgeBaseId={}, 检索到 {} 个片段", knowledgeBaseId, retrievedDocs.size());
         
-        // 4. 构建上下文
-        String context = buildContext(retrievedDocs);
-        
-        // 5. 创建 QuestionAnswerAdvisor
-        QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore)
-                .searchRequest(adjustedRequest)
-                .build();
-        
-        // 6. 构建提示词
-        String userPrompt = documentQAPromptTemplate
-                .replace("{question}", query)
-                .replace("{context}", context);
-        
-        // 7. 执行问答
+        return new RagContext("知识库问答", null, query, cacheScope, null, retrievedDocs, documentQAPromptTemplate);
+    }
+
+    /**
+     * 生成阶段(阻塞): 等待完整回答后一次返回回答和引用
+     */
+    private RagChatResultVO answer(RagContext context) {
+        if (context.cached() != null) {
+            saveConversation(context.conversationId(), context.query(), context.cached().getAnswer());
+            return context.cached();
+        }
+
+        // 使用预检索上下文顾问注入已检索(重排)的文档，不再二次检索
         String response = ragChatClient.prompt()
-                .advisors(qaAdvisor)
-                .user(userPrompt)
+                .advisors(contextAdvisor(context))
+                .user(context.query())
                 .call()
                 .content();
-        
-        // 8. 构建引用列表
-        List<CitationVO> citations = buildCitations(retrievedDocs, query, 300);
-        
-        log.info("知识库问答完成: knowledgeBaseId={}, responseLength={}, citations={}", 
-                knowledgeBaseId, response.length(), citations.size());
-        
-        return RagChatResultVO.builder()
+
+        // 保存对话历史到记忆库
+        saveConversation(context.conversationId(), context.query(), response);
+
+        // 构建引用列表（使用已检索的文档）
+        List<CitationVO> citations = citationService.buildCitations(context.retrievedDocs(), context.query(), 300);
+
+        log.info("{}完成: responseLength={}, citations={}", context.label(), response.length(), citations.size());
+        RagChatResultVO result = RagChatResultVO.builder()
                 .answer(response)
                 .citations(citations)
                 .build();
+        answerCacheService.put(context.cacheScope(), context.query(), result);
+        return result;
     }
 
     /**
-     * 构建引用列表 - 前端高亮方案
+     * 生成阶段(SSE): 检索完成后立即推送引用，回答按增量推送，最后推送 token 用量
      * 
-     * 改进: 不再生成 highlightedSnippet, 而是返回 keywords 列表供前端使用
+     * <p>事件顺序: citations({"citations": [...]}) → delta({"delta": "..."})* → done({"promptTokens", "completionTokens",
+     * "totalTokens", "cached"})，出错时发送 error({"message": "..."}) 后关闭。命中答案缓存时 delta 只有一条完整回答。</p>
      */
-    private List<CitationVO> buildCitations(List<Document> docs, String query, int maxLen) {
-        if (docs == null || docs.isEmpty()) {
-            return java.util.Collections.emptyList();
-        }
-        
-        // 提取关键词列表(前端用于高亮)
-        List<String> keywords = query == null || query.isBlank() 
-            ? List.of() 
-            : Arrays.stream(query.trim().split("\\s+"))
-                .filter(kw -> !kw.isBlank())
-                .toList();
-        
-        return docs.stream().map(d -> {
-            // 改进：尝试多种方式获取 documentId
-            Long documentId = NumberConversionUtils.toLong(String.valueOf(d.getMetadata().get("documentId")));
-            Integer chunkIndex = NumberConversionUtils.toInteger(String.valueOf(d.getMetadata().get("chunkIndex")));
-            Double score = d.getScore(); // 使用Document自带的score，而不是从metadata获取
-            String title = d.getMetadata().getOrDefault("title", "未知文档").toString();
-            String text = d.getText();
-            if (text != null && text.length() > maxLen) {
-                text = text.substring(0, maxLen) + "...";
+    private SseEmitter streamAnswer(RagContext context) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+
+        if (context.cached() != null) {
+            RagChatResultVO cached = context.cached();
+            saveConversation(context.conversationId(), context.query(), cached.getAnswer());
+            try {
+                emitter.send(SseEmitter.event().name("citations").data(Map.of("citations", cached.getCitations())));
+                emitter.send(SseEmitter.event().name("delta").data(Map.of("delta", cached.getAnswer())));
+                emitter.send(SseEmitter.event().name("done").data(usageEvent(null, true)));
+                emitter.complete();
+            } catch (Exception e) {
+                log.warn("{}-发送缓存答案失败: {}", context.label(), e.getMessage());
+                emitter.completeWithError(e);
             }
+            return emitter;
+        }
 
-            // 查询 chunkId（可选，不影响主流程）
-            Long chunkId = null;
-            String position = null;
-            String metadataJson = null;
+        // 检索已完成，引用先于回答发送
+        List<CitationVO> citations = citationService.buildCitations(context.retrievedDocs(), context.query(), 300);
+        try {
+            emitter.send(SseEmitter.event().name("citations").data(Map.of("citations", citations)));
+        } catch (Exception e) {
+            log.warn("{}-发送引用失败: {}", context.label(), e.getMessage());
+            emitter.completeWithError(e);
+            return emitter;
+        }
 
-            try {
-                if (documentId != null && chunkIndex != null) {
-                    DocumentChunkDO chunk = documentChunkMapper.selectOne(
-                            new LambdaQueryWrapper<DocumentChunkDO>()
-                                    .eq(DocumentChunkDO::getDocumentId, documentId)
-                                    .eq(DocumentChunkDO::getChunkIndex, chunkIndex)
-                                    .last("limit 1"));
-                    if (chunk != null) {
-                        chunkId = chunk.getId();
-                        // 可以从 chunk 中获取更多信息
-                        position = "第 " + (chunkIndex + 1) + " 段";
+        StringBuilder fullResponse = new StringBuilder();
+        AtomicReference<Usage> usage = new AtomicReference<>();
+
+        // 客户端断开、超时或推送失败后取消模型调用，被取消的回答不完整，不写会话和缓存
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        AtomicReference<Disposable> subscription = new AtomicReference<>();
+        Runnable cancel = () -> {
+            cancelled.set(true);
+            Disposable current = subscription.get();
+            if (current != null) {
+                current.dispose();
+            }
+        };
+        emitter.onCompletion(cancel);
+        emitter.onTimeout(cancel);
+        emitter.onError(e -> cancel.run());
+
+        subscription.set(ragChatClient.prompt()
+                .advisors(contextAdvisor(context))
+                .user(context.query())
+                .stream()
+                .chatResponse()
+                .doOnNext(response -> {
+                    // 开启 stream-usage 后，用量在最后一个响应块中返回
+                    if (response.getMetadata() != null && response.getMetadata().getUsage() != null
+                            && response.getMetadata().getUsage().getTotalTokens() != null
+                            && response.getMetadata().getUsage().getTotalTokens() > 0) {
+                        usage.set(response.getMetadata().getUsage());
                     }
-                } else {
-                    log.trace("无法查询chunkId: documentId={}, chunkIndex={}", documentId, chunkIndex);
-                }
-
-                // 序列化元数据为JSON（可选，用于调试）
-                if (!d.getMetadata().isEmpty()) {
+                    String content = response.getResult() != null && response.getResult().getOutput() != null
+                            ? response.getResult().getOutput().getText()
+                            : null;
+                    if (content == null || content.isEmpty() || cancelled.get()) {
+                        return;
+                    }
+                    fullResponse.append(content);
                     try {
-                        metadataJson = objectMapper.writeValueAsString(d.getMetadata());
-                    } catch (Exception ignored) {
-                        metadataJson = d.getMetadata().toString();
+                        emitter.send(SseEmitter.event().name("delta").data(Map.of("delta", content)));
+                    } catch (Exception e) {
+                        log.warn("{}-发送SSE数据失败(客户端可能已断开): {}", context.label(), e.getMessage());
+                        cancel.run();
+                        emitter.completeWithError(e);
                     }
-                }
-            } catch (Exception e) {
-                log.trace("查询chunkId失败 docId={}, chunkIndex={}", documentId, chunkIndex, e);
-            }
+                })
+                .doOnComplete(() -> {
+                    if (cancelled.get()) {
+                        log.info("{}(流式)已取消: partialLength={}", context.label(), fullResponse.length());
+                        return;
+                    }
+                    String response = fullResponse.toString();
+                    try {
+                        if (!response.isEmpty()) {
+                            saveConversation(context.conversationId(), context.query(), response);
+                            answerCacheService.put(context.cacheScope(), context.query(), RagChatResultVO.builder()
+                                    .answer(response)
+                                    .citations(citations)
+                                    .build());
+                        }
+                        log.info("{}(流式)完成: responseLength={}, citations={}",
+                                context.label(), response.length(), citations.size());
+                        emitter.send(SseEmitter.event().name("done").data(usageEvent(usage.get(), false)));
+                        emitter.complete();
+                    } catch (Exception e) {
+                        log.warn("{}-完成SSE传输失败: {}", context.label(), e.getMessage());
+                        emitter.completeWithError(e);
+                    }
+                })
+                .doOnError(error -> {
+                    log.error("{}(流式)出错: partialLength={}", context.label(), fullResponse.length(), error);
+                    try {
+                        emitter.send(SseEmitter.event().name("error").data(Map.of("message", "回答生成失败，请稍后重试")));
+                        emitter.complete();
+                    } catch (Exception e) {
+                        emitter.completeWithError(error);
+                    }
+                })
+                .subscribe(response -> { }, error -> { }));
+
+        // 订阅建立前已被取消时补做一次
+        if (cancelled.get()) {
+            subscription.get().dispose();
+        }
+        return emitter;
+    }
 
-            return CitationVO.builder()
-                    .documentId(documentId)
-                    .title(title)
-                    .chunkId(chunkId)
-                    .chunkIndex(chunkIndex)
-                    .score(score)
-                    .snippet(text)
-                    .keywords(keywords)  // 提供给前端用于高亮
-                    .position(position)
-                    .metadata(metadataJson)
-                    .build();
-        }).toList();
+    /**
+     * 注入已检索文档的上下文顾问(补齐分块 overlap, 引用仍使用原始分块)
+     */
+    private PrecomputedContextAdvisor contextAdvisor(RagContext context) {
+        return PrecomputedContextAdvisor.builder(chunkContextService.withOverlap(context.retrievedDocs()))
+                .promptTemplate(context.promptTemplate())
+                .contextFormatter(this::buildContext)
+                .build();
+    }
+
+    /**
+     * done 事件数据: token 用量(模型未返回用量或命中缓存时为 0)
+     */
+    private Map<String, Object> usageEvent(Usage usage, boolean cached) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("promptTokens", usage != null && usage.getPromptTokens() != null ? usage.getPromptTokens() : 0);
+        data.put("completionTokens", usage != null && usage.getCompletionTokens() != null ? usage.getCompletionTokens() : 0);
+        data.put("totalTokens", usage != null && usage.getTotalTokens() != null ? usage.getTotalTokens() : 0);
+        data.put("cached", cached);
+        return data;
+    }
+
+    /**
+     * 检索阶段的结果, 供阻塞和流式两种生成方式共用
+     *
+     * @param label 日志中的场景名称
+     * @param conversationId 会话ID(仅 RAG 问答, 其余为空, 不写对话记忆)
+     * @param cached 命中的缓存答案(命中时不检索)
+     */
+    private record RagContext(String label, String conversationId, String query, String cacheScope,
+                              RagChatResultVO cached, List<Document> retrievedDocs, String promptTemplate) {
+    }
+
+    /**
+     * 保存一轮问答到对话记忆
+     */
+    private void saveConversation(String conversationId, String query, String response) {
+        if (conversationId == null || conversationId.trim().isEmpty()) {
+            return;
+        }
+        try {
+            chatMemoryRepository.add(conversationId, List.of(new UserMessage(query), new AssistantMessage(response)));
+            log.debug("RAG问答 - 保存到记忆库: conversationId={}", conversationId);
+        } catch (Exception e) {
+            log.warn("保存RAG对话历史失败: conversationId={}", conversationId, e);
+        }
     }
 
     /**
@@ -407,28 +492,44 @@ public class RAGServiceImpl implements RAGService {
      * 
      * 三阶段策略：
      * 1. ES 召回大量候选（BM25 关键词匹配，快速）
-     * 2. 向量精排（语义相似度，中等规模）
+     * 2. 向量精排（kNN 预过滤限定在 ES 候选文档内；候选过多或已限定单个文档时使用原范围）
      * 3. LLM 重排序（精准评分，小规模）
      * 
      * @param userId 用户ID
+     * @param kbId 知识库ID(为空时不限定知识库)
+     * @param documentId 文档ID(文档问答时非空, ES 召回同样限定在该文档内)
      * @param query 查询文本
      * @param vectorRequest 向量检索请求
      * @param useStrictReranking 是否启用 LLM 重排序
      * @return 精排后的文档列表
      */
-    private List<Document> performHybridSearch(Long userId, String query, SearchRequest vectorRequest, boolean useStrictReranking) {
+    private List<Document> performHybridSearch(Long userId, Long kbId, Long documentId, String query, SearchRequest vectorRequest, boolean useStrictReranking) {
+        if (Boolean.TRUE.equals(ragConfig.getHybridSearch().getNativeRrfEnabled())) {
+            List<Document> nativeResults = performNativeHybridSearch(userId, vectorRequest, useStrictReranking);
+            if (nativeResults != null) {
+                return nativeResults;
+            }
+        }
+        
+        long startTime = System.currentTimeMillis();
+        
         // 第一阶段：ES 快速召回
         int esTopK = ragConfig.getHybridSearch().getVectorTopK() * 
                     (useStrictReranking ? ragConfig.getRetrieval().getRerankExpandFactor() : 2);
         
-        var esResults = documentESService.fullTextSearchWithHighlight(userId, query, esTopK);
+        // 优先分块级全文索引(可与向量命中按分块对齐), 无结果时退回文档级索引(单文档问答时文档级排名无意义, 不退回)
+        List<DocumentSearchResultVO> esResults = chunkESService.search(userId, kbId, documentId, query, esTopK);
+        if (esResults.isEmpty() && documentId == null) {
+            esResults = documentESService.fullTextSearchWithHighlight(userId, kbId, query, esTopK);
+        }
         
         if (esResults.isEmpty()) {
             log.warn("ES 未召回文档，降级为纯向量检索");
+            retrievalMetricsService.increment("hybrid.es_empty");
             return vectorStore.similaritySearch(vectorRequest);
         }
         
-        log.info("阶段1-ES召回: {} 个文档", esResults.size());
+        log.info("阶段1-ES召回: {} 条命中", esResults.size());
         
         // 第二阶段：向量精排
         List<Long> documentIds = esResults.stream()
@@ -436,7 +537,21 @@ public class RAGServiceImpl implements RAGService {
                 .distinct()
                 .collect(Collectors.toList());
         
-        Filter.Expression filter = buildFilterWithDocumentIds(userId, documentIds);
+        // 保留原请求的范围条件(文档/知识库), 否则精排会退化为全用户范围
+        Filter.Expression baseFilter = vectorRequest.hasFilterExpression()
+                ? vectorRequest.getFilterExpression()
+                : new FilterExpressionBuilder().eq("userId", userId).build();
+        
+        // 候选集不超过上限时, kNN 只在 ES 命中的文档内检索; 已限定单个文档时原过滤条件更精确, 不再叠加
+        RAGConfig.HybridSearchConfig hybridConfig = ragConfig.getHybridSearch();
+        boolean restricted = documentId == null
+                && Boolean.TRUE.equals(hybridConfig.getCandidateRestrictionEnabled())
+                && documentIds.size() <= hybridConfig.getMaxCandidateDocuments();
+        Filter.Expression filter = restricted
+                ? buildFilterWithDocumentIds(baseFilter, documentIds)
+                : baseFilter;
+        String mode = restricted ? "restricted" : "unrestricted";
+        retrievalMetricsService.record("hybrid.candidate_documents", documentIds.size());
         double threshold = useStrictReranking ? 
                 ragConfig.getHybridSearch().getVectorSimilarityThreshold() : 
                 vectorRequest.getSimilarityThreshold();
@@ -452,16 +567,146 @@ public class RAGServiceImpl implements RAGService {
                 .filterExpression(filter)
                 .build();
         
+        // 只计 kNN 本身, 不含 ES 召回
+        long vectorStartTime = System.currentTimeMillis();
         List<Document> vectorResults = vectorStore.similaritySearch(refinedRequest);
-        log.info("阶段2-向量精排: {} 个文档 (阈值={})", vectorResults.size(), threshold);
+        log.info("阶段2-向量精排: {} 个文档 (阈值={}, 候选文档={}, mode={})", 
+                vectorResults.size(), threshold, documentIds.size(), mode);
+        retrievalMetricsService.record("hybrid." + mode + ".vector_ms", System.currentTimeMillis() - vectorStartTime);
+        retrievalMetricsService.record("hybrid." + mode + ".results", vectorResults.size());
+        
+        // 分块级融合: 向量名次 + 分块(或所属文档)的 BM25 名次
+        vectorResults = fuseWithFullText(vectorResults, esResults);
         
         // 第三阶段：LLM 重排序（可选）
+        List<Document> finalResults;
         if (useStrictReranking && vectorResults.size() > vectorRequest.getTopK()) {
-            return performLLMReranking(query, vectorResults, vectorRequest.getTopK());
+            finalResults = performLLMReranking(query, vectorResults, vectorRequest.getTopK());
+        } else {
+            finalResults = vectorResults.stream()
+                    .limit(vectorRequest.getTopK())
+                    .collect(Collectors.toList());
+        }
+        
+        retrievalMetricsService.record("hybrid." + mode + ".total_ms", System.currentTimeMillis() - startTime);
+        return finalResults;
+    }
+    
+    /**
+     * 单请求混合检索: ES 原生 rrf retriever 在向量索引上同时执行 kNN 和 BM25 并融合
+     * 
+     * @return 检索结果; ES 不支持 rrf retriever 或请求失败时返回 null, 由调用方退回客户端融合
+     */
+    private List<Document> performNativeHybridSearch(Long userId, SearchRequest vectorRequest, boolean useStrictReranking) {
+        long startTime = System.currentTimeMillis();
+        
+        Filter.Expression filter = vectorRequest.hasFilterExpression()
+                ? vectorRequest.getFilterExpression()
+                : new FilterExpressionBuilder().eq("userId", userId).build();
+        int candidateTopK = useStrictReranking ?
+                vectorRequest.getTopK() * ragConfig.getRetrieval().getRerankExpandFactor() :
+                vectorRequest.getTopK();
+        double threshold = useStrictReranking ?
+                ragConfig.getHybridSearch().getVectorSimilarityThreshold() :
+                vectorRequest.getSimilarityThreshold();
+        
+        List<Document> candidates;
+        try {
+            candidates = hybridRetriever.search(userId, SearchRequest.builder()
+                    .query(vectorRequest.getQuery())
+                    .topK(candidateTopK)
+                    .similarityThreshold(threshold)
+                    .filterExpression(filter)
+                    .build());
+        } catch (Exception e) {
+            log.warn("原生 RRF 混合检索失败，退回客户端融合: {}", e.getMessage());
+            retrievalMetricsService.increment("hybrid.native.fallback");
+            return null;
+        }
+        log.info("原生 RRF 混合检索: {} 个分块 (候选={}, 阈值={})", candidates.size(), candidateTopK, threshold);
+        retrievalMetricsService.record("hybrid.native.search_ms", System.currentTimeMillis() - startTime);
+        retrievalMetricsService.record("hybrid.native.results", candidates.size());
+        
+        List<Document> finalResults;
+        if (useStrictReranking && candidates.size() > vectorRequest.getTopK()) {
+            finalResults = performLLMReranking(vectorRequest.getQuery(), candidates, vectorRequest.getTopK());
+        } else {
+            finalResults = candidates.stream()
+                    .limit(vectorRequest.getTopK())
+                    .collect(Collectors.toList());
         }
         
-        return vectorResults.stream()
-                .limit(vectorRequest.getTopK())
+        retrievalMetricsService.record("hybrid.native.total_ms", System.currentTimeMillis() - startTime);
+        return finalResults;
+    }
+    
+    /**
+     * 分块级加权融合
+     * 
+     * <p>向量一路按分块相似度排序；全文一路优先使用 ican_chunks 的分块命中(按分块ID对齐)，
+     * 只有文档级命中时由分块继承所属文档的 ES 名次和分数(同一文档的分块名次相同)。
+     * 融合方式与权重见 rag.hybrid-search。</p>
+     */
+    private List<Document> fuseWithFullText(List<Document> vectorResults, List<DocumentSearchResultVO> esResults) {
+        if (vectorResults.size() < 2) {
+            return vectorResults;
+        }
+        
+        RAGConfig.HybridSearchConfig hybridConfig = ragConfig.getHybridSearch();
+        if (!esResults.isEmpty() && esResults.get(0).getChunkId() != null) {
+            RankFusionService.RankedList vectorList =
+                    new RankFusionService.RankedList("vector", hybridConfig.getVectorWeight());
+            Map<String, Document> chunkById = new HashMap<>();
+            for (Document doc : vectorResults) {
+                vectorList.add(doc.getId(), doc.getScore() != null ? doc.getScore() : 0.0);
+                chunkById.put(doc.getId(), doc);
+            }
+            RankFusionService.RankedList textList =
+                    new RankFusionService.RankedList("fulltext", hybridConfig.getTextWeight());
+            for (DocumentSearchResultVO hit : esResults) {
+                textList.add(hit.getChunkId(), hit.getScore() != null ? hit.getScore() : 0.0);
+            }
+            // 只有关键词命中的分块没有向量结果, 不进入上下文
+            return rankFusionService.fuse(List.of(vectorList, textList), vectorResults.size() + esResults.size())
+                    .stream()
+                    .map(hit -> chunkById.get(hit.getKey()))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+        }
+        
+        Map<Long, Integer> esRank = new HashMap<>();
+        Map<Long, Double> esScore = new HashMap<>();
+        for (DocumentSearchResultVO result : esResults) {
+            if (result.getDocumentId() != null && !esRank.containsKey(result.getDocumentId())) {
+                esRank.put(result.getDocumentId(), esRank.size());
+                esScore.put(result.getDocumentId(), result.getScore() != null ? result.getScore() : 0.0);
+            }
+        }
+        
+        RankFusionService.RankedList vectorList =
+                new RankFusionService.RankedList("vector", hybridConfig.getVectorWeight());
+        Map<String, Document> chunkById = new HashMap<>();
+        Map<String, Long> chunkDocument = new HashMap<>();
+        List<Document> textMatched = new ArrayList<>();
+        for (Document doc : vectorResults) {
+            vectorList.add(doc.getId(), doc.getScore() != null ? doc.getScore() : 0.0);
+            chunkById.put(doc.getId(), doc);
+            Long documentId = NumberConversionUtils.toLong(String.valueOf(doc.getMetadata().get("documentId")));
+            if (documentId != null && esRank.containsKey(documentId)) {
+                chunkDocument.put(doc.getId(), documentId);
+                textMatched.add(doc);
+            }
+        }
+        
+        textMatched.sort(Comparator.comparingInt(d -> esRank.get(chunkDocument.get(d.getId()))));
+        RankFusionService.RankedList textList =
+                new RankFusionService.RankedList("fulltext", hybridConfig.getTextWeight());
+        for (Document doc : textMatched) {
+            textList.add(doc.getId(), esScore.get(chunkDocument.get(doc.getId())));
+        }
+        
+        return rankFusionService.fuse(List.of(vectorList, textList), vectorResults.size()).stream()
+                .map(hit -> chunkById.get(hit.getKey()))
                 .collect(Collectors.toList());
     }
     
@@ -497,31 +742,31 @@ public class RAGServiceImpl implements RAGService {
     
     /**
      * 使用 RerankService 进行 LLM 重排序
+     * 
+     * <p>候选以向量文档ID(vectorId)标识, 入库时不写 chunkId 元数据也能正常重排。</p>
      */
     private List<Document> performLLMReranking(String query, List<Document> candidates, int topK) {
-        // 构建候选 Map: chunkId -> content
-        Map<Long, String> candidateMap = new LinkedHashMap<>();
-        Map<Long, Document> docMap = new HashMap<>();
+        // 构建候选 Map: vectorId -> content
+        Map<String, String> candidateMap = new LinkedHashMap<>();
+        Map<String, Document> docMap = new HashMap<>();
         
         for (Document doc : candidates) {
-            Object chunkIdObj = doc.getMetadata().get("chunkId");
-            if (chunkIdObj != null) {
-                Long chunkId = NumberConversionUtils.toLong(String.valueOf(chunkIdObj));
-                candidateMap.put(chunkId, doc.getText());
-                docMap.put(chunkId, doc);
+            if (doc.getId() != null && doc.getText() != null) {
+                candidateMap.putIfAbsent(doc.getId(), doc.getText());
+                docMap.putIfAbsent(doc.getId(), doc);
             }
         }
         
         if (candidateMap.isEmpty()) {
-            log.warn("无有效 chunkId，跳过 LLM 重排序");
+            log.warn("无有效候选，跳过 LLM 重排序");
             return candidates.stream().limit(topK).collect(Collectors.toList());
         }
         
         // 调用 RerankService 重排序
-        List<Long> rankedChunkIds = rerankService.rerank(query, candidateMap, topK);
+        List<String> rankedIds = rerankService.rerank(query, candidateMap, topK);
         
         // 转换回 Document 列表
-        List<Document> rerankedDocs = rankedChunkIds.stream()
+        List<Document> rerankedDocs = rankedIds.stream()
                 .map(docMap::get)
                 .filter(Objects::nonNull)
                 .collect(Collectors.toList());
@@ -533,12 +778,14 @@ public class RAGServiceImpl implements RAGService {
     
     /**
      * 构建带文档ID过滤的表达式
+     * 
+     * <p>在原有范围条件上追加 documentId IN (...)，作为 kNN 预过滤条件下推到 ES</p>
      */
-    private Filter.Expression buildFilterWithDocumentIds(Long userId, List<Long> documentIds) {
-        // 注意：Spring AI VectorStore Filter 可能不支持 IN 操作
-        // 这里只做用户过滤，文档范围过滤在后处理中完成
+    private Filter.Expression buildFilterWithDocumentIds(Filter.Expression baseFilter, List<Long> documentIds) {
         FilterExpressionBuilder builder = new FilterExpressionBuilder();
-        return builder.eq("userId", Base62.encode(String.valueOf(userId))).build();
+        return builder.and(
+                new FilterExpressionBuilder.Op(baseFilter),
+                builder.in("documentId", documentIds.toArray())).build();
     }
     
     /**
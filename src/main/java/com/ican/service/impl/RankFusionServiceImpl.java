@@ -0,0 +1,206 @@
+package com.ican.service.impl;
+
+import com.ican.config.RAGConfig;
+import com.ican.service.RankFusionService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 排序融合服务实现
+ * 
+ * <p>每个键经开放寻址哈希表分配一个整数槽位，分数累加在 double[] 中，再用大小为 topK 的 int 堆取前 topK:
+ * O(n + m log topK)，n 为所有路条目总数，m 为不同键数。全程只使用基本类型数组，不装箱。</p>
+ * 
+ * @author 席崇援
+ */
+@Service
+@RequiredArgsConstructor
+public class RankFusionServiceImpl implements RankFusionService {
+    
+    private final RAGConfig ragConfig;
+    
+    @Override
+    public List<FusedHit> fuse(List<RankedList> lists, int topK) {
+        return fuse(lists, FusionMethod.of(ragConfig.getHybridSearch().getFusionMethod()), topK);
+    }
+    
+    @Override
+    public List<FusedHit> fuse(List<RankedList> lists, FusionMethod method, int topK) {
+        int total = 0;
+        for (RankedList list : lists) {
+            total += list.size();
+        }
+        if (total == 0 || topK <= 0) {
+            return new ArrayList<>();
+        }
+        
+        int rrfK = ragConfig.getHybridSearch().getRrfK();
+        SlotTable slots = new SlotTable(total);
+        double[] fused = new double[total];
+        // 记录槽位最近一次被哪一路计分, 用于同一路内去重
+        int[] lastList = new int[total];
+        Arrays.fill(lastList, -1);
+        
+        for (int l = 0; l < lists.size(); l++) {
+            RankedList list = lists.get(l);
+            int size = list.size();
+            if (size == 0) {
+                continue;
+            }
+            
+            double min = Double.MAX_VALUE;
+            double max = -Double.MAX_VALUE;
+            if (method == FusionMethod.LINEAR) {
+                for (int i = 0; i < size; i++) {
+                    min = Math.min(min, list.scoreAt(i));
+                    max = Math.max(max, list.scoreAt(i));
+                }
+            }
+            
+            int rank = 0;
+            for (int i = 0; i < size; i++) {
+                // 分数相同的条目共享名次
+                if (i == 0 || list.scoreAt(i) != list.scoreAt(i - 1)) {
+                    rank = i + 1;
+                }
+                
+                int slot = slots.slotOf(list.getKeys().get(i));
+                if (lastList[slot] == l) {
+                    continue;
+                }
+                lastList[slot] = l;
+                
+                if (method == FusionMethod.LINEAR) {
+                    double normalized = max > min ? (list.scoreAt(i) - min) / (max - min) : 1.0;
+                    fused[slot] += list.getWeight() * normalized;
+                } else {
+                    fused[slot] += list.getWeight() / (rrfK + rank);
+                }
+            }
+        }
+        
+        // 按融合分数降序取前 topK, 同分时保持首次出现顺序
+        int[] top = topSlots(fused, slots.size(), Math.min(topK, slots.size()));
+        List<FusedHit> hits = new ArrayList<>(top.length);
+        for (int slot : top) {
+            hits.add(new FusedHit(slots.key(slot), fused[slot]));
+        }
+        return hits;
+    }
+    
+    /**
+     * 取融合分数最高的 k 个槽位(大小为 k 的最小堆, O(n log k)), 按分数降序返回
+     */
+    private static int[] topSlots(double[] fused, int n, int k) {
+        int[] heap = new int[k];
+        int size = 0;
+        for (int slot = 0; slot < n; slot++) {
+            if (size < k) {
+                heap[size] = slot;
+                siftUp(heap, size++, fused);
+            } else if (k > 0 && better(fused, slot, heap[0])) {
+                heap[0] = slot;
+                siftDown(heap, size, 0, fused);
+            }
+        }
+        // 依次把最差的槽位换到末尾, 得到降序结果
+        for (int end = size - 1; end > 0; end--) {
+            int tmp = heap[0];
+            heap[0] = heap[end];
+            heap[end] = tmp;
+            siftDown(heap, end, 0, fused);
+        }
+        return heap;
+    }
+    
+    /**
+     * 槽位 a 是否排在 b 前面: 分数更高, 或同分且先出现
+     */
+    private static boolean better(double[] fused, int a, int b) {
+        return fused[a] > fused[b] || (fused[a] == fused[b] && a < b);
+    }
+    
+    private static void siftUp(int[] heap, int i, double[] fused) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(fused, heap[parent], heap[i])) {
+                return;
+            }
+            int tmp = heap[parent];
+            heap[parent] = heap[i];
+            heap[i] = tmp;
+            i = parent;
+        }
+    }
+    
+    private static void siftDown(int[] heap, int size, int i, double[] fused) {
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && better(fused, heap[worst], heap[left])) {
+                worst = left;
+            }
+            if (right < size && better(fused, heap[worst], heap[right])) {
+                worst = right;
+            }
+            if (worst == i) {
+                return;
+            }
+            int tmp = heap[worst];
+            heap[worst] = heap[i];
+            heap[i] = tmp;
+            i = worst;
+        }
+    }
+    
+    /**
+     * 键 -> 槽位的开放寻址哈希表(线性探测), 表中存 槽位 + 1, 0 表示空位; 不装箱
+     */
+    private static final class SlotTable {
+        
+        private final int[] table;
+        private final int mask;
+        private final String[] keys;
+        private int size;
+        
+        SlotTable(int capacity) {
+            int tableSize = Integer.highestOneBit(Math.max(2, capacity * 2 - 1)) << 1;
+            this.table = new int[tableSize];
+            this.mask = tableSize - 1;
+            this.keys = new String[capacity];
+        }
+        
+        /**
+         * 查找键的槽位, 不存在时按出现顺序分配
+         */
+        int slotOf(String key) {
+            int h = key.hashCode();
+            int i = (h ^ (h >>> 16)) & mask;
+            while (true) {
+                int entry = table[i];
+                if (entry == 0) {
+                    keys[size] = key;
+                    table[i] = ++size;
+                    return size - 1;
+                }
+                if (keys[entry - 1].equals(key)) {
+                    return entry - 1;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+        
+        String key(int slot) {
+            return keys[slot];
+        }
+        
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.ican.service.impl;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.ican.config.CachingEmbeddingModel;
+import com.ican.config.RAGConfig;
+import com.ican.service.RerankScoreCacheService;
+import com.ican.service.RetrievalMetricsService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 重排序评分缓存服务实现
+ * 
+ * <p>进程内 LRU，容量由 rag.rerank.score-cache-size 限制。键为 sha256(归一化问题) + 评分器版本 + vectorId，
+ * 值为评分器输出的 0-1 分数；被所有重排序策略(LLM listwise / pointwise、本地 cross-encoder)共用。</p>
+ * 
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RerankScoreCacheServiceImpl implements RerankScoreCacheService {
+    
+    private static final String SEPARATOR = "\u0001";
+    
+    private final RAGConfig ragConfig;
+    private final RetrievalMetricsService retrievalMetricsService;
+    
+    private Map<String, Double> lruCache;
+    
+    @PostConstruct
+    public void init() {
+        int maxSize = Math.max(1, ragConfig.getRerank().getScoreCacheSize());
+        lruCache = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+    
+    @Override
+    public Map<String, Double> getScores(String query, String reranker, Collection<String> vectorIds) {
+        Map<String, Double> scores = new HashMap<>();
+        if (!isEnabled() || query == null || vectorIds.isEmpty()) {
+            return scores;
+        }
+        
+        String prefix = keyPrefix(query, reranker);
+        synchronized (lruCache) {
+            for (String vectorId : vectorIds) {
+                Double score = lruCache.get(prefix + vectorId);
+                if (score != null) {
+                    scores.put(vectorId, score);
+                }
+            }
+        }
+        retrievalMetricsService.record("rerank.score_cache.hit", scores.size());
+        retrievalMetricsService.record("rerank.score_cache.miss", vectorIds.size() - scores.size());
+        return scores;
+    }
+    
+    @Override
+    public void putScores(String query, String reranker, Map<String, Double> scores) {
+        if (!isEnabled() || query == null || scores.isEmpty()) {
+            return;
+        }
+        
+        String prefix = keyPrefix(query, reranker);
+        synchronized (lruCache) {
+            for (Map.Entry<String, Double> entry : scores.entrySet()) {
+                lruCache.put(prefix + entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
+    private boolean isEnabled() {
+        return Boolean.TRUE.equals(ragConfig.getRerank().getScoreCacheEnabled());
+    }
+    
+    private String keyPrefix(String query, String reranker) {
+        return DigestUtil.sha256Hex(CachingEmbeddingModel.normalize(query)) + SEPARATOR + reranker + SEPARATOR;
+    }
+}
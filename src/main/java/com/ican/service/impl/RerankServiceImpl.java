@@ -1,6 +1,17 @@
 package com.ican.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ican.config.RAGConfig;
+import com.ican.repository.TenantRoutingVectorStore;
+import com.ican.service.CrossEncoderService;
+import com.ican.service.RerankScoreCacheService;
 import com.ican.service.RerankService;
+import com.ican.service.RetrievalMetricsService;
+import com.ican.utils.BM25Scorer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
@@ -13,6 +24,16 @@ import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -20,9 +41,19 @@ import java.util.stream.Collectors;
  * 
  * 优化策略（按性能从高到低）：
  * 1. Elasticsearch BM25 算法（全文检索评分）- 毫秒级
- * 2. 向量相似度精排（Cosine Similarity）- 毫秒级
+ * 2. 向量相似度精排（Cosine Similarity，复用向量索引中已存储的分块向量）- 毫秒级
  * 3. LLM 精准评分（仅对最终 Top-K 候选）- 秒级
  * 
+ * LLM 评分方式（rag.rerank.mode）：
+ * - listwise: 一个提示词为一批候选打分并返回 JSON，候选多时按批拆分；解析不到分数的候选退回逐条评分
+ * - pointwise: 每个候选单独调用一次 LLM
+ * 两种方式都在共享线程池中并行执行，整个重排序受 rag.rerank.timeout-ms 截止时间约束，
+ * 超时未评分的候选保持上一阶段的顺序
+ * 
+ * rag.rerank.backend=cross-encoder 且模型加载成功时，改用本地 cross-encoder 直接为全部候选评分
+ * 
+ * 候选以 vectorId 标识，LLM / cross-encoder 的评分按 (问题, vectorId, 评分器版本) 缓存，命中的候选跳过评分器
+ * 
  * 性能提升：
  * - 减少 90% 的 LLM 调用次数
  * - 响应时间从 N*2s 降至 K*2s（N >> K）
@@ -42,88 +73,430 @@ public class RerankServiceImpl implements RerankService {
     // Embedding 模型（用于向量相似度计算）
     private final EmbeddingModel embeddingModel;
     
+    private final RAGConfig ragConfig;
+    
+    private final RetrievalMetricsService retrievalMetricsService;
+    
+    private final CrossEncoderService crossEncoderService;
+    
+    // 读取入库时存储的分块向量
+    private final TenantRoutingVectorStore tenantRoutingVectorStore;
+    
+    private final RerankScoreCacheService rerankScoreCacheService;
+    
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    /**
+     * listwise 输出无法按 JSON 解析时, 按 "id: x, score: y" 或 "[x]: y" 提取分数
+     */
+    private static final Pattern ID_SCORE_PATTERN = Pattern.compile(
+        "\"?id\"?\\s*[:=]\\s*\"?(\\d+)\"?\\s*,\\s*\"?score\"?\\s*[:=]\\s*\"?(\\d+(?:\\.\\d+)?)");
+    private static final Pattern LABEL_SCORE_PATTERN = Pattern.compile(
+        "\\[(\\d+)]\\s*[:：=]\\s*(\\d+(?:\\.\\d+)?)");
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+(?:\\.\\d+)?");
+    
+    private static final String CROSS_ENCODER_BACKEND = "cross-encoder";
+    
     // 性能阈值配置
     private static final int LLM_RERANK_THRESHOLD = 5;  // 降低阈值，只对最终候选使用 LLM
     private static final int VECTOR_RERANK_THRESHOLD = 20;  // 向量精排的阈值
     
+    /**
+     * LLM 评分线程池(所有请求共享, 限制并发调用数)
+     */
+    private ThreadPoolExecutor rerankExecutor;
+    
+    @PostConstruct
+    public void initRerankExecutor() {
+        int threads = Math.max(1, ragConfig.getRerank().getParallelism());
+        AtomicInteger counter = new AtomicInteger();
+        rerankExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            r -> {
+                Thread thread = new Thread(r, "rerank-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        rerankExecutor.allowCoreThreadTimeOut(true);
+    }
+    
+    @PreDestroy
+    public void shutdownRerankExecutor() {
+        if (rerankExecutor != null) {
+            rerankExecutor.shutdownNow();
+        }
+    }
+    
     @Override
-    public List<Long> rerank(String query, Map<Long, String> candidates, int topK) {
+    public List<String> rerank(String query, Map<String, String> candidates, int topK) {
         log.info("三层混合 Rerank 开始: query={}, candidateCount={}, topK={}", query, candidates.size(), topK);
         
         if (candidates.isEmpty()) {
             return List.of();
         }
         
+        // 整个重排序共用一个截止时间, 超时后未评分的候选保持原有顺序
+        long deadline = System.currentTimeMillis() + ragConfig.getRerank().getTimeoutMs();
+        
+        // 本地 cross-encoder 每批只需数十毫秒, 直接对全部候选评分, 不再逐层筛选
+        if (CROSS_ENCODER_BACKEND.equalsIgnoreCase(ragConfig.getRerank().getBackend())
+                && crossEncoderService.isAvailable()) {
+            log.info("使用本地 cross-encoder 评分: candidateCount={}", candidates.size());
+            String reranker = CROSS_ENCODER_BACKEND + ":" + ragConfig.getRerank().getCrossEncoder().getModelPath();
+            return rankByScores(candidates, scoreWithCache(query, candidates, reranker,
+                misses -> crossEncoderService.score(query, misses, deadline)), topK);
+        }
+        
         // 策略选择（根据候选数量智能降级）
         if (candidates.size() <= LLM_RERANK_THRESHOLD) {
             // 场景1: 候选很少(≤5) - 直接使用 LLM 精准评分
             log.info("候选数量少({}≤{}), 直接使用 LLM 精准评分", candidates.size(), LLM_RERANK_THRESHOLD);
-            return rerankWithLLM(query, candidates, topK);
+            return rerankWithLLM(query, candidates, topK, deadline);
             
         } else if (candidates.size() <= VECTOR_RERANK_THRESHOLD) {
             // 场景2: 候选中等(6-20) - 向量相似度 + LLM 精排
             log.info("候选数量中等({}≤{}), 使用向量相似度初排 + LLM 精排", candidates.size(), VECTOR_RERANK_THRESHOLD);
-            return rerankWithVectorAndLLM(query, candidates, topK);
+            return rerankWithVectorAndLLM(query, candidates, topK, deadline);
             
         } else {
             // 场景3: 候选很多(>20) - BM25 + 向量相似度 + LLM 精排
             log.info("候选数量大({}), 使用三层混合策略: BM25 → 向量 → LLM", candidates.size());
-            return rerankWithHybridStrategy(query, candidates, topK);
+            return rerankWithHybridStrategy(query, candidates, topK, deadline);
         }
     }
     
     /**
      * 策略1: 直接 LLM 评分（候选 ≤5）
+     * 
+     * <p>candidates 的迭代顺序即上一阶段(向量/BM25/融合)的排序, 未评分的候选按该顺序保留。</p>
+     */
+    private List<String> rerankWithLLM(String query, Map<String, String> candidates, int topK, long deadline) {
+        long startTime = System.currentTimeMillis();
+        boolean listwise = !"pointwise".equalsIgnoreCase(ragConfig.getRerank().getMode());
+        Map<String, Double> scores = scoreWithCache(query, candidates, listwise ? "llm:listwise" : "llm:pointwise",
+            misses -> listwise
+                ? scoreListwise(query, misses, deadline)
+                : scorePointwise(query, misses, deadline));
+        retrievalMetricsService.record("rerank." + (listwise ? "listwise" : "pointwise") + ".llm_ms",
+            System.currentTimeMillis() - startTime);
+        return rankByScores(candidates, scores, topK);
+    }
+    
+    /**
+     * 先读评分缓存, 只把未命中的候选交给评分器, 新分数写回缓存
+     * 
+     * @param reranker 评分器标识, 与 rag.rerank.scorer-version 一起构成缓存键中的评分器版本
      */
-    private List<Long> rerankWithLLM(String query, Map<Long, String> candidates, int topK) {
-        Map<Long, Double> scores = new HashMap<>();
+    private Map<String, Double> scoreWithCache(String query, Map<String, String> candidates, String reranker,
+                                               Function<Map<String, String>, Map<String, Double>> scorer) {
+        String version = reranker + ":v" + ragConfig.getRerank().getScorerVersion();
+        Map<String, Double> scores = rerankScoreCacheService.getScores(query, version, candidates.keySet());
         
-        for (Map.Entry<Long, String> entry : candidates.entrySet()) {
-            double score = computeRelevanceScore(query, entry.getValue());
-            scores.put(entry.getKey(), score);
+        Map<String, String> misses = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : candidates.entrySet()) {
+            if (!scores.containsKey(entry.getKey())) {
+                misses.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (misses.isEmpty()) {
+            log.info("重排序评分全部命中缓存: candidateCount={}", candidates.size());
+            return scores;
         }
         
-        return scores.entrySet().stream()
-            .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
-            .limit(topK)
-            .map(Map.Entry::getKey)
-            .collect(Collectors.toList());
+        Map<String, Double> fresh = scorer.apply(misses);
+        rerankScoreCacheService.putScores(query, version, fresh);
+        scores.putAll(fresh);
+        return scores;
+    }
+    
+    /**
+     * 按分数重排: 截止时间内未拿到分数(超时或评分失败)的候选保留原位置, 已评分的候选按分数降序填入其余位置
+     */
+    private List<String> rankByScores(Map<String, String> candidates, Map<String, Double> scores, int topK) {
+        int unscored = candidates.size() - scores.size();
+        if (unscored > 0) {
+            log.warn("重排序超时或评分失败, {}/{} 个候选保持原有顺序", unscored, candidates.size());
+            retrievalMetricsService.record("rerank.unscored", unscored);
+        }
+        
+        Iterator<String> scoredInOrder = candidates.keySet().stream()
+            .filter(scores::containsKey)
+            .sorted(Comparator.comparing(scores::get).reversed())
+            .iterator();
+        List<String> ranked = new ArrayList<>(candidates.size());
+        for (String id : candidates.keySet()) {
+            ranked.add(scores.containsKey(id) ? scoredInOrder.next() : id);
+        }
+        return ranked.stream().limit(topK).collect(Collectors.toList());
+    }
+    
+    /**
+     * 逐条评分: 每个候选一次 LLM 调用, 在线程池中并行执行
+     * 
+     * @return 截止时间前拿到 LLM 分数的候选(调用或解析失败的候选不在其中, 保持原有顺序且不写入缓存)
+     */
+    private Map<String, Double> scorePointwise(String query, Map<String, String> candidates, long deadline) {
+        Map<String, CompletableFuture<Double>> futures = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : candidates.entrySet()) {
+            futures.put(entry.getKey(), CompletableFuture.supplyAsync(
+                () -> llmRelevanceScore(query, entry.getValue()), rerankExecutor));
+        }
+        Map<String, Double> scores = new LinkedHashMap<>();
+        int failed = 0;
+        for (Map.Entry<String, Double> entry : awaitAll(futures, deadline).entrySet()) {
+            if (entry.getValue() != null) {
+                scores.put(entry.getKey(), entry.getValue());
+            } else {
+                failed++;
+            }
+        }
+        if (failed > 0) {
+            retrievalMetricsService.record("rerank.pointwise.failed", failed);
+        }
+        return scores;
+    }
+    
+    /**
+     * 列表评分: 每批候选一次 LLM 调用, 各批并行, 返回 0-1 分数
+     * 
+     * <p>候选在提示词中以批内序号 [1]..[n] 标注, 不暴露 vectorId; 同一批内的分数可直接比较,
+     * 跨批依赖统一的 0-10 评分标准。批内缺失分数的候选在剩余时间内退回逐条评分。</p>
+     */
+    private Map<String, Double> scoreListwise(String query, Map<String, String> candidates, long deadline) {
+        List<String> ids = new ArrayList<>(candidates.keySet());
+        int batchSize = Math.max(1, ragConfig.getRerank().getListwiseBatchSize());
+        
+        Map<List<String>, CompletableFuture<Map<Integer, Double>>> futures = new LinkedHashMap<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<String> batch = ids.subList(from, Math.min(from + batchSize, ids.size()));
+            futures.put(batch, CompletableFuture.supplyAsync(
+                () -> scoreBatch(query, batch, candidates), rerankExecutor));
+        }
+        Map<List<String>, Map<Integer, Double>> batchResults = awaitAll(futures, deadline);
+        
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (Map.Entry<List<String>, Map<Integer, Double>> result : batchResults.entrySet()) {
+            List<String> batch = result.getKey();
+            for (int i = 0; i < batch.size(); i++) {
+                Double score = result.getValue().get(i + 1);
+                if (score != null) {
+                    scores.put(batch.get(i), score / 10.0);
+                } else {
+                    missing.put(batch.get(i), candidates.get(batch.get(i)));
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            log.warn("listwise 评分缺失 {} 个候选, 退回逐条评分", missing.size());
+            retrievalMetricsService.record("rerank.listwise.fallback", missing.size());
+            scores.putAll(scorePointwise(query, missing, deadline));
+        }
+        return scores;
+    }
+    
+    /**
+     * 等待任务到截止时间, 返回已成功完成的结果, 取消其余任务(未开始的任务不会再执行)
+     */
+    private <K, V> Map<K, V> awaitAll(Map<K, CompletableFuture<V>> futures, long deadline) {
+        try {
+            CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                .get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            retrievalMetricsService.increment("rerank.deadline_exceeded");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // 单个任务失败只影响自身, 下面按任务收集
+        }
+        
+        Map<K, V> results = new LinkedHashMap<>();
+        for (Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet()) {
+            CompletableFuture<V> future = entry.getValue();
+            if (future.isDone() && !future.isCompletedExceptionally()) {
+                results.put(entry.getKey(), future.join());
+            } else {
+                future.cancel(false);
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 一次 LLM 调用为一批候选打分
+     * 
+     * @return 批内序号(从1开始) -> 0-10 分数, 调用或解析失败时为空
+     */
+    private Map<Integer, Double> scoreBatch(String query, List<String> batch, Map<String, String> candidates) {
+        StringBuilder documents = new StringBuilder();
+        for (int i = 0; i < batch.size(); i++) {
+            documents.append("[").append(i + 1).append("] ")
+                .append(truncateDocument(candidates.get(batch.get(i))))
+                .append("\n\n");
+        }
+        
+        String prompt = String.format(
+            "请评估以下 %d 个文档片段与查询的相关性，为每个片段给出0-10的分数。\n\n" +
+            "查询：%s\n\n" +
+            "文档片段：\n%s" +
+            "仅返回 JSON，不要解释，格式：{\"scores\": [{\"id\": 1, \"score\": 8.5}, {\"id\": 2, \"score\": 3}]}，" +
+            "id 为片段编号，必须覆盖全部 %d 个片段。",
+            batch.size(), query, documents, batch.size());
+        
+        List<Message> messages = List.of(
+            new SystemMessage("你是一个文档相关性评估专家。请仅返回 JSON 格式的评分结果。"),
+            new UserMessage(prompt)
+        );
+        
+        try {
+            String response = chatClient.prompt(new Prompt(messages))
+                .call()
+                .content();
+            return parseListwiseScores(response, batch.size());
+        } catch (Exception e) {
+            log.warn("listwise 评分调用失败: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+    
+    /**
+     * 解析 listwise 评分结果
+     * 
+     * <p>兼容: {"scores": [{"id": 1, "score": 8}]}、[{"id": 1, "score": 8}]、{"1": 8, "2": 5}、
+     * 按序号排列的数字数组 [8, 5]、Markdown 代码块包裹, 以及无法解析为 JSON 时的 "id: 1, score: 8" / "[1]: 8" 文本。</p>
+     */
+    private Map<Integer, Double> parseListwiseScores(String response, int size) {
+        Map<Integer, Double> scores = new HashMap<>();
+        if (StrUtil.isBlank(response)) {
+            return scores;
+        }
+        
+        try {
+            JsonNode root = objectMapper.readTree(extractJson(response));
+            JsonNode items = root.isObject() && root.has("scores") ? root.get("scores") : root;
+            if (items.isArray()) {
+                for (int i = 0; i < items.size(); i++) {
+                    JsonNode item = items.get(i);
+                    if (item.isObject()) {
+                        putScore(scores, size, asNumber(item.get("id")), asNumber(item.get("score")));
+                    } else {
+                        // 纯数字数组按位置对应序号
+                        putScore(scores, size, (double) (i + 1), asNumber(item));
+                    }
+                }
+            } else if (items.isObject()) {
+                items.fields().forEachRemaining(field ->
+                    putScore(scores, size, parseNumber(field.getKey()), asNumber(field.getValue())));
+            }
+        } catch (Exception e) {
+            log.debug("listwise 评分 JSON 解析失败, 使用文本匹配: {}", e.getMessage());
+        }
+        
+        if (scores.isEmpty()) {
+            for (Pattern pattern : List.of(ID_SCORE_PATTERN, LABEL_SCORE_PATTERN)) {
+                Matcher matcher = pattern.matcher(response);
+                while (matcher.find()) {
+                    putScore(scores, size, parseNumber(matcher.group(1)), parseNumber(matcher.group(2)));
+                }
+                if (!scores.isEmpty()) {
+                    break;
+                }
+            }
+        }
+        if (scores.isEmpty()) {
+            log.warn("listwise 评分解析失败: {}", StrUtil.maxLength(response, 200));
+        }
+        return scores;
+    }
+    
+    /**
+     * 截取第一个 JSON 对象/数组(去掉代码块标记和前后说明文字)
+     */
+    private String extractJson(String response) {
+        int objectStart = response.indexOf('{');
+        int arrayStart = response.indexOf('[');
+        int start;
+        char close;
+        if (objectStart >= 0 && (arrayStart < 0 || objectStart < arrayStart)) {
+            start = objectStart;
+            close = '}';
+        } else if (arrayStart >= 0) {
+            start = arrayStart;
+            close = ']';
+        } else {
+            return response;
+        }
+        int end = response.lastIndexOf(close);
+        return end > start ? response.substring(start, end + 1) : response.substring(start);
+    }
+    
+    private void putScore(Map<Integer, Double> scores, int size, Double id, Double score) {
+        if (id == null || score == null || score.isNaN()) {
+            return;
+        }
+        int label = id.intValue();
+        if (label >= 1 && label <= size) {
+            scores.putIfAbsent(label, Math.max(0, Math.min(10, score)));
+        }
+    }
+    
+    private Double asNumber(JsonNode node) {
+        if (node == null || node.isNull()) {
+            return null;
+        }
+        return node.isNumber() ? node.asDouble() : parseNumber(node.asText());
+    }
+    
+    private Double parseNumber(String text) {
+        try {
+            return Double.parseDouble(text.replaceAll("[^0-9.]", ""));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+    
+    private String truncateDocument(String document) {
+        if (document == null) {
+            return "";
+        }
+        int maxChars = ragConfig.getRerank().getMaxDocumentChars();
+        return document.length() > maxChars ? document.substring(0, maxChars) + "..." : document;
     }
     
     /**
      * 策略2: 向量相似度 + LLM 精排（候选 6-20）
      */
-    private List<Long> rerankWithVectorAndLLM(String query, Map<Long, String> candidates, int topK) {
+    private List<String> rerankWithVectorAndLLM(String query, Map<String, String> candidates, int topK, long deadline) {
         // 第一步: 使用向量相似度快速筛选出 topK*2 个候选
-        Map<Long, Double> vectorScores = computeVectorScores(query, candidates);
+        Map<String, Double> vectorScores = computeVectorScores(query, candidates);
         
-        List<Long> topCandidates = vectorScores.entrySet().stream()
-            .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
+        List<String> topCandidates = vectorScores.entrySet().stream()
+            .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
             .limit(Math.min(topK * 2, candidates.size()))
             .map(Map.Entry::getKey)
             .collect(Collectors.toList());
         
         log.info("向量初排: 从{}个候选中筛选出{}个", candidates.size(), topCandidates.size());
         
-        // 第二步: 对筛选后的候选使用 LLM 精准评分
-        Map<Long, String> refinedCandidates = new HashMap<>();
-        for (Long id : topCandidates) {
+        // 第二步: 对筛选后的候选使用 LLM 精准评分(按向量分数顺序, 超时未评分的保持该顺序)
+        Map<String, String> refinedCandidates = new LinkedHashMap<>();
+        for (String id : topCandidates) {
             refinedCandidates.put(id, candidates.get(id));
         }
         
-        return rerankWithLLM(query, refinedCandidates, topK);
+        return rerankWithLLM(query, refinedCandidates, topK, deadline);
     }
     
     /**
      * 策略3: BM25 + 向量 + LLM 三层精排（候选 >20）
      */
-    private List<Long> rerankWithHybridStrategy(String query, Map<Long, String> candidates, int topK) {
+    private List<String> rerankWithHybridStrategy(String query, Map<String, String> candidates, int topK, long deadline) {
         // 第一步: BM25 文本相关性评分（最快）
-        Map<Long, Double> bm25Scores = computeBM25Scores(query, candidates);
+        Map<String, Double> bm25Scores = computeBM25Scores(query, candidates);
         
         // 筛选出 Top 30 个候选
-        List<Long> bm25Top = bm25Scores.entrySet().stream()
-            .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
+        List<String> bm25Top = bm25Scores.entrySet().stream()
+            .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
             .limit(Math.min(30, candidates.size()))
             .map(Map.Entry::getKey)
             .collect(Collectors.toList());
@@ -131,50 +504,52 @@ public class RerankServiceImpl implements RerankService {
         log.info("BM25 初排: 从{}个候选中筛选出{}个", candidates.size(), bm25Top.size());
         
         // 第二步: 向量相似度精排（筛选到 topK*2）
-        Map<Long, String> bm25Candidates = new HashMap<>();
-        for (Long id : bm25Top) {
+        Map<String, String> bm25Candidates = new LinkedHashMap<>();
+        for (String id : bm25Top) {
             bm25Candidates.put(id, candidates.get(id));
         }
         
-        Map<Long, Double> vectorScores = computeVectorScores(query, bm25Candidates);
+        Map<String, Double> vectorScores = computeVectorScores(query, bm25Candidates);
         
-        List<Long> vectorTop = vectorScores.entrySet().stream()
-            .sorted(Map.Entry.<Long, Double>comparingByValue().reversed())
+        List<String> vectorTop = vectorScores.entrySet().stream()
+            .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
             .limit(Math.min(topK * 2, bm25Candidates.size()))
             .map(Map.Entry::getKey)
             .collect(Collectors.toList());
         
         log.info("向量精排: 从{}个候选中筛选出{}个", bm25Candidates.size(), vectorTop.size());
         
-        // 第三步: LLM 最终精排（只对最终候选）
-        Map<Long, String> finalCandidates = new HashMap<>();
-        for (Long id : vectorTop) {
+        // 第三步: LLM 最终精排（只对最终候选, 按向量分数顺序）
+        Map<String, String> finalCandidates = new LinkedHashMap<>();
+        for (String id : vectorTop) {
             finalCandidates.put(id, candidates.get(id));
         }
         
-        return rerankWithLLM(query, finalCandidates, topK);
+        return rerankWithLLM(query, finalCandidates, topK, deadline);
     }
     
     /**
      * 计算向量相似度评分
+     * 
+     * <p>候选向量优先取向量索引中入库时存储的分块向量(一次 ES 请求), 只有查不到的候选才批量重新计算,
+     * 通常整个初排只需计算一次问题向量。</p>
      */
-    private Map<Long, Double> computeVectorScores(String query, Map<Long, String> candidates) {
-        Map<Long, Double> scores = new HashMap<>();
+    private Map<String, Double> computeVectorScores(String query, Map<String, String> candidates) {
+        Map<String, Double> scores = new HashMap<>();
         
         try {
             // 生成查询向量
             float[] queryEmbedding = embeddingModel.embed(query);
             
-            // 计算每个候选文档的相似度
-            for (Map.Entry<Long, String> entry : candidates.entrySet()) {
-                try {
-                    float[] docEmbedding = embeddingModel.embed(entry.getValue());
-                    double similarity = cosineSimilarity(queryEmbedding, docEmbedding);
-                    scores.put(entry.getKey(), similarity);
-                } catch (Exception e) {
-                    log.warn("计算文档 {} 的向量相似度失败: {}", entry.getKey(), e.getMessage());
+            Map<String, float[]> embeddings = loadCandidateEmbeddings(candidates);
+            for (Map.Entry<String, String> entry : candidates.entrySet()) {
+                float[] docEmbedding = embeddings.get(entry.getKey());
+                if (docEmbedding == null || docEmbedding.length != queryEmbedding.length) {
+                    log.warn("文档 {} 缺少可用向量, 相似度记为 0", entry.getKey());
                     scores.put(entry.getKey(), 0.0);
+                    continue;
                 }
+                scores.put(entry.getKey(), cosineSimilarity(queryEmbedding, docEmbedding));
             }
             
         } catch (Exception e) {
@@ -187,61 +562,35 @@ public class RerankServiceImpl implements RerankService {
     }
     
     /**
-     * 计算 BM25 评分（基于关键词匹配的增强版）
+     * 获取候选向量: 先按 vectorId 读取已存储的向量, 其余候选一次批量计算
      */
-    private Map<Long, Double> computeBM25Scores(String query, Map<Long, String> candidates) {
-        Map<Long, Double> scores = new HashMap<>();
-        
-        // 简化版 BM25: 词频 + 逆文档频率
-        String[] queryTokens = query.toLowerCase().split("\\s+");
-        
-        // 计算逆文档频率 (IDF)
-        Map<String, Integer> docFreq = new HashMap<>();
-        for (String doc : candidates.values()) {
-            String docLower = doc.toLowerCase();
-            Set<String> uniqueTokens = new HashSet<>();
-            for (String token : queryTokens) {
-                if (docLower.contains(token)) {
-                    uniqueTokens.add(token);
-                }
-            }
-            for (String token : uniqueTokens) {
-                docFreq.put(token, docFreq.getOrDefault(token, 0) + 1);
-            }
-        }
-        
-        int totalDocs = candidates.size();
+    private Map<String, float[]> loadCandidateEmbeddings(Map<String, String> candidates) {
+        Map<String, float[]> embeddings = new HashMap<>(tenantRoutingVectorStore.getEmbeddings(candidates.keySet()));
+        embeddings.keySet().retainAll(candidates.keySet());
         
-        // 计算每个文档的 BM25 分数
-        for (Map.Entry<Long, String> entry : candidates.entrySet()) {
-            String docLower = entry.getValue().toLowerCase();
-            double score = 0.0;
-            
-            for (String token : queryTokens) {
-                if (docLower.contains(token)) {
-                    // 计算词频 (TF)
-                    int tf = countOccurrences(docLower, token);
-                    
-                    // 计算 IDF
-                    int df = docFreq.getOrDefault(token, 1);
-                    double idf = Math.log((totalDocs - df + 0.5) / (df + 0.5) + 1.0);
-                    
-                    // BM25 参数
-                    double k1 = 1.5;
-                    double b = 0.75;
-                    double avgDocLen = 500; // 假设平均文档长度
-                    double docLen = docLower.length();
-                    
-                    // BM25 公式
-                    double tfScore = (tf * (k1 + 1)) / (tf + k1 * (1 - b + b * (docLen / avgDocLen)));
-                    score += idf * tfScore;
-                }
+        List<String> missing = candidates.keySet().stream()
+            .filter(id -> !embeddings.containsKey(id))
+            .collect(Collectors.toList());
+        if (!missing.isEmpty()) {
+            List<String> texts = missing.stream()
+                .map(id -> candidates.get(id) != null ? candidates.get(id) : "")
+                .collect(Collectors.toList());
+            List<float[]> computed = embeddingModel.embed(texts);
+            for (int i = 0; i < missing.size() && i < computed.size(); i++) {
+                embeddings.put(missing.get(i), computed.get(i));
             }
-            
-            scores.put(entry.getKey(), score);
         }
         
-        return scores;
+        retrievalMetricsService.record("rerank.embedding.stored", candidates.size() - missing.size());
+        retrievalMetricsService.record("rerank.embedding.computed", missing.size());
+        return embeddings;
+    }
+    
+    /**
+     * 计算 BM25 评分（CJK 二元分词，候选集内统计 IDF 和平均文档长度）
+     */
+    private Map<String, Double> computeBM25Scores(String query, Map<String, String> candidates) {
+        return BM25Scorer.score(query, candidates);
     }
     
     /**
@@ -269,25 +618,12 @@ public class RerankServiceImpl implements RerankService {
         return dotProduct / (Math.sqrt(norm1) * Math.sqrt(norm2));
     }
     
-    /**
-     * 统计子串出现次数
-     */
-    private int countOccurrences(String text, String substring) {
-        int count = 0;
-        int index = 0;
-        while ((index = text.indexOf(substring, index)) != -1) {
-            count++;
-            index += substring.length();
-        }
-        return count;
-    }
-    
     /**
      * 批量计算关键词评分（用于降级）
      */
-    private Map<Long, Double> computeKeywordScores(String query, Map<Long, String> candidates) {
-        Map<Long, Double> scores = new HashMap<>();
-        for (Map.Entry<Long, String> entry : candidates.entrySet()) {
+    private Map<String, Double> computeKeywordScores(String query, Map<String, String> candidates) {
+        Map<String, Double> scores = new HashMap<>();
+        for (Map.Entry<String, String> entry : candidates.entrySet()) {
             double score = computeKeywordScore(query, entry.getValue());
             scores.put(entry.getKey(), score);
         }
@@ -296,66 +632,73 @@ public class RerankServiceImpl implements RerankService {
     
     @Override
     public double computeRelevanceScore(String query, String document) {
+        Double score = llmRelevanceScore(query, document);
+        return score != null ? score : computeKeywordScore(query, document);
+    }
+    
+    /**
+     * 一次 LLM 调用为单个文档打分
+     * 
+     * @return 0-1 分数, 调用或解析失败时为 null(由调用方决定降级方式, 降级分数不能当作 LLM 分数缓存)
+     */
+    private Double llmRelevanceScore(String query, String document) {
+        String prompt = String.format(
+            "请评估以下文档与查询的相关性，给出0-10的分数（仅返回数字）：\n\n" +
+            "查询：%s\n\n" +
+            "文档：%s",
+            query,
+            truncateDocument(document)
+        );
+        
+        List<Message> messages = List.of(
+            new SystemMessage("你是一个文档相关性评估专家。请仅返回0-10之间的数字分数。"),
+            new UserMessage(prompt)
+        );
+        
         try {
-            // 使用简化的启发式方法计算相关性
-            // 在实际生产中可以使用专门的 rerank 模型
-            
-            String prompt = String.format(
-                "请评估以下文档与查询的相关性，给出0-10的分数（仅返回数字）：\n\n" +
-                "查询：%s\n\n" +
-                "文档：%s",
-                query,
-                document.length() > 500 ? document.substring(0, 500) + "..." : document
-            );
-            
-            List<Message> messages = List.of(
-                new SystemMessage("你是一个文档相关性评估专家。请仅返回0-10之间的数字分数。"),
-                new UserMessage(prompt)
-            );
-            
             String response = chatClient.prompt(new Prompt(messages))
                 .call()
                 .content();
-            
-            // 解析分数
-            double score = parseScore(response);
-            return score / 10.0; // 归一化到 0-1
-            
+            Double score = parseScore(response);
+            return score != null ? score / 10.0 : null; // 归一化到 0-1
         } catch (Exception e) {
-            log.warn("计算相关性分数失败，使用关键词匹配: {}", e.getMessage());
-            return computeKeywordScore(query, document);
+            log.warn("计算相关性分数失败: {}", e.getMessage());
+            return null;
         }
     }
     
     /**
-     * 解析LLM返回的分数
+     * 解析LLM返回的分数(取第一个数字)
+     * 
+     * @return 0-10 分数, 无法解析时为 null
      */
-    private double parseScore(String response) {
-        try {
-            // 提取数字
-            String cleaned = response.replaceAll("[^0-9.]", "");
-            double score = Double.parseDouble(cleaned);
-            return Math.max(0, Math.min(10, score)); // 限制在0-10之间
-        } catch (Exception e) {
-            log.warn("解析分数失败: {}", response);
-            return 5.0; // 默认中等分数
+    private Double parseScore(String response) {
+        Matcher matcher = response != null ? NUMBER_PATTERN.matcher(response) : null;
+        if (matcher == null || !matcher.find()) {
+            log.warn("解析分数失败: {}", StrUtil.maxLength(String.valueOf(response), 200));
+            return null;
         }
+        double score = Double.parseDouble(matcher.group());
+        return Math.max(0, Math.min(10, score)); // 限制在0-10之间
     }
     
     /**
      * 基于关键词匹配的备用评分方法
      */
     private double computeKeywordScore(String query, String document) {
-        String[] queryTokens = query.toLowerCase().split("\\s+");
-        String docLower = document.toLowerCase();
+        Set<String> queryTokens = new HashSet<>(BM25Scorer.tokenize(query));
+        if (queryTokens.isEmpty()) {
+            return 0.0;
+        }
+        Set<String> docTokens = new HashSet<>(BM25Scorer.tokenize(document));
         
         int matchCount = 0;
         for (String token : queryTokens) {
-            if (docLower.contains(token)) {
+            if (docTokens.contains(token)) {
                 matchCount++;
             }
         }
         
-        return (double) matchCount / queryTokens.length;
+        return (double) matchCount / queryTokens.size();
     }
 }
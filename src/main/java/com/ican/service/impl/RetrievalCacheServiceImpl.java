@@ -0,0 +1,193 @@
+package com.ican.service.impl;
+
+import cn.hutool.crypto.digest.DigestUtil;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ican.config.CachingEmbeddingModel;
+import com.ican.config.RAGConfig;
+import com.ican.model.vo.DocumentSearchResultVO;
+import com.ican.service.CorpusVersionService;
+import com.ican.service.RetrievalCacheService;
+import com.ican.service.RetrievalMetricsService;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 检索结果缓存服务实现
+ * 
+ * <p>Redis 键: rag:retrieval:{vec|ft|chunk}:user:{userId}:v{version}:{sha256}。
+ * 值为排好序的命中列表(分块ID、分数、文本和元数据)，命中时无需回查 ES。
+ * 空结果不缓存，避免把 ES 降级返回的空列表当成有效结果。</p>
+ * 
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RetrievalCacheServiceImpl implements RetrievalCacheService {
+    
+    private static final String RETRIEVAL_CACHE_PREFIX = "rag:retrieval:";
+    
+    private final RedisTemplate<String, Object> redisTemplate;
+    private final CorpusVersionService corpusVersionService;
+    private final RetrievalMetricsService retrievalMetricsService;
+    private final RAGConfig ragConfig;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    
+    @Override
+    public List<Document> vectorSearch(Long userId, SearchRequest request, Supplier<List<Document>> loader) {
+        return documentSearch("vec", "vector", userId, request, loader);
+    }
+    
+    @Override
+    public List<Document> hybridSearch(Long userId, SearchRequest request, Supplier<List<Document>> loader) {
+        return documentSearch("hybrid", "hybrid", userId, request, loader);
+    }
+    
+    private List<Document> documentSearch(String type, String metricName, Long userId, SearchRequest request,
+                                          Supplier<List<Document>> loader) {
+        if (!isEnabled() || userId == null || request.getQuery() == null) {
+            return loader.get();
+        }
+        
+        String key = cacheKey(type, userId,
+            CachingEmbeddingModel.normalize(request.getQuery()),
+            String.valueOf(request.getFilterExpression()),
+            String.valueOf(request.getTopK()),
+            String.valueOf(request.getSimilarityThreshold()));
+        if (key == null) {
+            return loader.get();
+        }
+        
+        List<CachedHit> cached = read(key, new TypeReference<List<CachedHit>>() {}, metricName);
+        if (cached != null) {
+            List<Document> documents = new ArrayList<>(cached.size());
+            for (CachedHit hit : cached) {
+                documents.add(Document.builder()
+                    .id(hit.getId())
+                    .text(hit.getText())
+                    .metadata(hit.getMetadata())
+                    .score(hit.getScore())
+                    .build());
+            }
+            return documents;
+        }
+        
+        List<Document> documents = loader.get();
+        if (!documents.isEmpty()) {
+            List<CachedHit> hits = new ArrayList<>(documents.size());
+            for (Document doc : documents) {
+                hits.add(new CachedHit(doc.getId(), doc.getText(), doc.getMetadata(), doc.getScore()));
+            }
+            write(key, hits);
+        }
+        return documents;
+    }
+    
+    @Override
+    public List<DocumentSearchResultVO> fullTextSearch(Long userId, Long kbId, String query, int topK,
+                                                       Supplier<List<DocumentSearchResultVO>> loader) {
+        return textSearch("ft", "fulltext", userId, String.valueOf(kbId), query, topK, loader);
+    }
+    
+    @Override
+    public List<DocumentSearchResultVO> chunkSearch(Long userId, Long kbId, Long documentId, String query, int topK,
+                                                    Supplier<List<DocumentSearchResultVO>> loader) {
+        String scope = documentId == null ? String.valueOf(kbId) : kbId + ":doc:" + documentId;
+        return textSearch("chunk", "chunk", userId, scope, query, topK, loader);
+    }
+    
+    private List<DocumentSearchResultVO> textSearch(String type, String metricName, Long userId, String scope,
+                                                    String query, int topK,
+                                                    Supplier<List<DocumentSearchResultVO>> loader) {
+        if (!isEnabled() || userId == null || query == null) {
+            return loader.get();
+        }
+        
+        String key = cacheKey(type, userId,
+            CachingEmbeddingModel.normalize(query),
+            scope,
+            String.valueOf(topK));
+        if (key == null) {
+            return loader.get();
+        }
+        
+        List<DocumentSearchResultVO> cached = read(key, new TypeReference<List<DocumentSearchResultVO>>() {}, metricName);
+        if (cached != null) {
+            return cached;
+        }
+        
+        List<DocumentSearchResultVO> results = loader.get();
+        if (!results.isEmpty()) {
+            write(key, results);
+        }
+        return results;
+    }
+    
+    private boolean isEnabled() {
+        return Boolean.TRUE.equals(ragConfig.getRetrievalCache().getEnabled());
+    }
+    
+    /**
+     * 缓存键(含语料版本); 版本读取失败时返回 null, 直接走检索不读写缓存
+     */
+    private String cacheKey(String type, Long userId, String... parts) {
+        String scope = CorpusVersionService.userScope(userId);
+        long version = corpusVersionService.currentVersion(scope);
+        if (version < 0) {
+            return null;
+        }
+        String digest = DigestUtil.sha256Hex(String.join("\u0001", parts));
+        return RETRIEVAL_CACHE_PREFIX + type + ":" + scope + ":v" + version + ":" + digest;
+    }
+    
+    private <T> T read(String key, TypeReference<T> type, String metricName) {
+        try {
+            Object value = redisTemplate.opsForValue().get(key);
+            if (value == null) {
+                retrievalMetricsService.increment("retrieval_cache." + metricName + ".miss");
+                return null;
+            }
+            retrievalMetricsService.increment("retrieval_cache." + metricName + ".hit");
+            return objectMapper.readValue(value.toString(), type);
+        } catch (Exception e) {
+            log.warn("读取检索缓存失败: key={}, error={}", key, e.getMessage());
+            return null;
+        }
+    }
+    
+    private void write(String key, Object value) {
+        try {
+            redisTemplate.opsForValue().set(key, objectMapper.writeValueAsString(value),
+                ragConfig.getRetrievalCache().getTtlMinutes(), TimeUnit.MINUTES);
+        } catch (Exception e) {
+            log.warn("写入检索缓存失败: key={}, error={}", key, e.getMessage());
+        }
+    }
+    
+    /**
+     * 缓存的向量命中(不含 embedding)
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    private static class CachedHit {
+        private String id;
+        private String text;
+        private Map<String, Object> metadata;
+        private Double score;
+    }
+}
@@ -0,0 +1,57 @@
+package com.ican.service.impl;
+
+import com.ican.model.vo.MetricStatVO;
+import com.ican.service.RetrievalMetricsService;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 检索指标服务实现
+ * 
+ * <p>基于 LongAdder 无锁累加，记录开销可以忽略，适合放在检索热路径上。</p>
+ * 
+ * @author 席崇援
+ */
+@Service
+public class RetrievalMetricsServiceImpl implements RetrievalMetricsService {
+    
+    private final Map<String, Stat> stats = new ConcurrentHashMap<>();
+    
+    @Override
+    public void record(String name, long value) {
+        stats.computeIfAbsent(name, k -> new Stat()).add(value);
+    }
+    
+    @Override
+    public Map<String, MetricStatVO> snapshot() {
+        Map<String, MetricStatVO> result = new TreeMap<>();
+        stats.forEach((name, stat) -> {
+            long count = stat.count.sum();
+            long sum = stat.sum.sum();
+            result.put(name, MetricStatVO.builder()
+                .count(count)
+                .sum(sum)
+                .avg(count == 0 ? 0.0 : (double) sum / count)
+                .max(stat.max.get())
+                .build());
+        });
+        return result;
+    }
+    
+    private static class Stat {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        
+        void add(long value) {
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+    }
+}
@@ -0,0 +1,551 @@
+package com.ican.service.impl;
+
+import cn.hutool.core.util.StrUtil;
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Conflicts;
+import co.elastic.clients.elasticsearch._types.OpType;
+import co.elastic.clients.elasticsearch._types.Script;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.indices.IndexSettings;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import co.elastic.clients.elasticsearch.tasks.GetTasksResponse;
+import co.elastic.clients.json.JsonData;
+import com.ican.config.FullTextIndexProperties;
+import com.ican.config.MetadataKeys;
+import com.ican.config.VectorIndexProperties;
+import com.ican.repository.ElasticsearchBulkWriter;
+import com.ican.service.ChunkESService;
+import com.ican.service.DocumentESService;
+import com.ican.service.SearchIndexService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import top.continew.starter.core.exception.BusinessException;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * 搜索索引生命周期服务实现
+ *
+ * <p>reindex 并切换别名的步骤：</p>
+ * <ol>
+ *   <li>打开复制窗口(记录之后的删除和 by-query 更新), 按当前模板创建 {别名}-v{时间戳}, 复制期间关闭刷新、副本数置 0</li>
+ *   <li>服务端 _reindex 全量复制, 共享向量索引按配置重新计算 _routing</li>
+ *   <li>按写入时间追平复制期间的写入, 不停写</li>
+ *   <li>停写: 再追平一轮, 按顺序回放复制窗口内的删除和更新, 原子切换别名(旧的同名物理索引在同一请求中删除)</li>
+ *   <li>恢复写入, 删除旧索引</li>
+ * </ol>
+ *
+ * <p>追平依赖写入时间字段: ican_documents 为 updateTime, ican_chunks 为 timestamp, 向量索引为
+ * metadata.indexedAt(写入 ES 时盖戳, 不是分块构建时间)。</p>
+ *
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SearchIndexServiceImpl implements SearchIndexService {
+
+    private static final String VERSION_SEPARATOR = "-v";
+
+    private static final long TASK_POLL_INTERVAL_MS = 2000L;
+
+    /**
+     * 共享向量索引: 启用 routing 时按 metadata.userId 重新路由, 否则清除 routing
+     */
+    private static final String SHARED_ROUTING_SCRIPT = """
+        if (params.routing && ctx._source.metadata != null && ctx._source.metadata.userId != null) {
+            ctx._routing = String.valueOf(ctx._source.metadata.userId);
+        } else {
+            ctx._routing = null;
+        }
+        """;
+
+    private static final String CLEAR_ROUTING_SCRIPT = "ctx._routing = null";
+
+    /**
+     * 向量写入时间(写入 ES 时盖戳)
+     */
+    private static final String VECTOR_WRITE_TIME_FIELD = "metadata." + MetadataKeys.INDEXED_AT;
+
+    private final ElasticsearchClient elasticsearchClient;
+    private final FullTextIndexProperties fullTextIndexProperties;
+    private final VectorIndexProperties vectorIndexProperties;
+    private final ElasticsearchBulkWriter bulkWriter;
+
+    /**
+     * 启动时需要 reindex 的别名(逗号分隔), 用于映射或分词器变更
+     */
+    @Value("${search.index.reindex-on-startup:}")
+    private String reindexOnStartup;
+
+    /**
+     * 分片数与配置不一致时是否自动 reindex
+     */
+    @Value("${search.index.reindex-on-shard-change:true}")
+    private Boolean reindexOnShardChange;
+
+    /**
+     * 追平增量时向前多取的时间(毫秒), 覆盖写入时间戳与服务器时钟的偏差
+     */
+    @Value("${search.index.catch-up-margin-ms:60000}")
+    private Long catchUpMarginMs;
+
+    /**
+     * 切换别名后是否删除旧物理索引
+     */
+    @Value("${search.index.delete-old-index:true}")
+    private Boolean deleteOldIndex;
+
+    /**
+     * 运行中的 reindex 任务(别名 -> 新物理索引名)
+     */
+    private final Map<String, CompletableFuture<String>> runningJobs = new ConcurrentHashMap<>();
+
+    /**
+     * 写入闸门(闸门键 -> 读写锁): 写入持读锁, 别名切换持写锁
+     */
+    private final Map<String, ReentrantReadWriteLock> writeGates = new ConcurrentHashMap<>();
+
+    /**
+     * 打开的复制窗口(闸门键 -> 窗口)
+     */
+    private final Map<String, Set<MutationLog>> copyWindows = new ConcurrentHashMap<>();
+
+    private ExecutorService reindexExecutor;
+
+    @PostConstruct
+    public void initReindexExecutor() {
+        reindexExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "es-reindex");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdownReindexExecutor() {
+        if (reindexExecutor != null) {
+            reindexExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void ensureIndex(String alias, Integer shards) {
+        try {
+            if (elasticsearchClient.indices().exists(e -> e.index(alias)).value()) {
+                return;
+            }
+            String physical = alias + VERSION_SEPARATOR + System.currentTimeMillis();
+            elasticsearchClient.indices().create(c -> c
+                .index(physical)
+                .settings(s -> s.numberOfShards(String.valueOf(shards)))
+                .aliases(alias, a -> a.isWriteIndex(true))
+            );
+            log.info("索引创建成功: alias={}, index={}, shards={}", alias, physical, shards);
+        } catch (Exception e) {
+            log.error("索引创建失败: alias={}", alias, e);
+            throw new BusinessException("索引创建失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void createIndex(String index, Integer shards) {
+        try {
+            if (elasticsearchClient.indices().exists(e -> e.index(index)).value()) {
+                return;
+            }
+            elasticsearchClient.indices().create(c -> c
+                .index(index)
+                .settings(s -> s.numberOfShards(String.valueOf(shards)))
+            );
+            log.info("索引创建成功: index={}, shards={}", index, shards);
+        } catch (Exception e) {
+            log.error("索引创建失败: index={}", index, e);
+            throw new BusinessException("索引创建失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void applyDynamicSettings(String alias) {
+        IndexSpec spec = spec(alias);
+        try {
+            putDynamicSettings(alias, String.valueOf(spec.replicas()), spec.refreshInterval());
+            log.info("索引动态设置已应用: index={}, replicas={}, refreshInterval={}",
+                alias, spec.replicas(), spec.refreshInterval());
+        } catch (Exception e) {
+            log.error("索引动态设置应用失败: index={}", alias, e);
+            throw new BusinessException("索引动态设置应用失败: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> reindex(String alias) {
+        // 先校验别名, 不支持的索引直接抛出
+        spec(alias);
+        synchronized (runningJobs) {
+            CompletableFuture<String> running = runningJobs.get(alias);
+            if (running != null) {
+                return running;
+            }
+            CompletableFuture<String> job = CompletableFuture.supplyAsync(() -> reindexAndSwap(alias), reindexExecutor);
+            runningJobs.put(alias, job);
+            job.whenComplete((target, e) -> {
+                runningJobs.remove(alias, job);
+                if (e != null) {
+                    log.error("索引 reindex 失败: alias={}", alias, e);
+                }
+            });
+            return job;
+        }
+    }
+
+    @Override
+    public boolean isReindexing(String alias) {
+        return runningJobs.containsKey(alias);
+    }
+
+    @Override
+    public <T> T write(String alias, IndexWrite<T> write) throws Exception {
+        Lock lock = writeGate(alias).readLock();
+        lock.lock();
+        try {
+            return write.apply(alias);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public <T> T mutate(String alias, IndexWrite<T> mutation) throws Exception {
+        Lock lock = writeGate(alias).readLock();
+        lock.lock();
+        try {
+            // 先记录再执行: 回放快照之后才记录的操作, 执行时复制已经完成, 会直接作用到新索引
+            Set<MutationLog> windows = copyWindows.get(gateKey(alias));
+            if (windows != null) {
+                for (MutationLog window : windows) {
+                    window.record(mutation);
+                }
+            }
+            return mutation.apply(alias);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public CopyWindow openCopyWindow(String alias) {
+        MutationLog window = new MutationLog(gateKey(alias));
+        copyWindows.computeIfAbsent(window.key, k -> ConcurrentHashMap.newKeySet()).add(window);
+        return window;
+    }
+
+    @Override
+    public <T> T blockWrites(String alias, Callable<T> action) throws Exception {
+        Lock lock = writeGate(alias).writeLock();
+        lock.lock();
+        try {
+            // 批量写入器中已提交的操作可能仍在途, 等其落盘后再做最后一轮追平
+            if (!bulkWriter.flushAndWait()) {
+                throw new BusinessException("等待批量写入完成超时, 放弃切换: " + alias);
+            }
+            return action.call();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void reconcile() {
+        Set<String> targets = new LinkedHashSet<>(StrUtil.splitTrim(reindexOnStartup, ','));
+        for (String alias : List.of(DocumentESService.INDEX_NAME, ChunkESService.INDEX_NAME,
+                vectorIndexProperties.getIndexName())) {
+            try {
+                applyDynamicSettings(alias);
+                Integer current = currentShards(alias);
+                int expected = spec(alias).shards();
+                if (Boolean.TRUE.equals(reindexOnShardChange) && current != null && current != expected) {
+                    log.info("索引分片数与配置不一致, 提交 reindex: alias={}, current={}, expected={}",
+                        alias, current, expected);
+                    targets.add(alias);
+                }
+            } catch (Exception e) {
+                log.warn("索引对账失败: alias={}", alias, e);
+            }
+        }
+        try {
+            // 独享向量索引固定 1 分片, 只应用动态设置
+            applyDynamicSettings(vectorIndexProperties.tenantIndexPrefix() + "*");
+        } catch (Exception e) {
+            log.warn("独享向量索引动态设置应用失败", e);
+        }
+        for (String alias : targets) {
+            try {
+                reindex(alias);
+            } catch (Exception e) {
+                log.warn("提交 reindex 失败: alias={}", alias, e);
+            }
+        }
+    }
+
+    /**
+     * reindex 到新物理索引并切换别名
+     */
+    private String reindexAndSwap(String alias) {
+        IndexSpec spec = spec(alias);
+        try {
+            Map<String, IndexState> current = elasticsearchClient.indices().get(g -> g
+                .index(alias)
+                .ignoreUnavailable(true)
+                .allowNoIndices(true)
+            ).result();
+            if (current.isEmpty()) {
+                ensureIndex(alias, spec.shards());
+                return alias;
+            }
+            if (current.size() > 1) {
+                throw new BusinessException("别名指向多个索引, 无法切换: " + current.keySet());
+            }
+            String source = current.keySet().iterator().next();
+            boolean legacy = source.equals(alias);
+
+            long start = System.currentTimeMillis();
+            String target = alias + VERSION_SEPARATOR + start;
+            try (CopyWindow window = openCopyWindow(alias)) {
+                createIndex(target, spec.shards());
+                putDynamicSettings(target, "0", "-1");
+
+                // 1. 全量复制
+                copy(source, target, spec, null);
+
+                // 2. 追平复制期间的写入(不停写)
+                long catchUpStart = System.currentTimeMillis();
+                copy(source, target, spec, start - catchUpMarginMs);
+
+                // 3. 停写: 追平最后一轮, 回放复制窗口内的删除和更新, 原子切换别名
+                putDynamicSettings(target, String.valueOf(spec.replicas()), spec.refreshInterval());
+                int replayed = blockWrites(alias, () -> {
+                    copy(source, target, spec, catchUpStart - catchUpMarginMs);
+                    int count = window.replay(target);
+                    elasticsearchClient.indices().refresh(r -> r.index(target));
+                    elasticsearchClient.indices().updateAliases(u -> {
+                        if (legacy) {
+                            u.actions(a -> a.removeIndex(r -> r.index(source)));
+                        } else {
+                            u.actions(a -> a.remove(r -> r.index(source).alias(alias)));
+                        }
+                        return u.actions(a -> a.add(ad -> ad.index(target).alias(alias).isWriteIndex(true)));
+                    });
+                    return count;
+                });
+                log.info("索引别名已切换: alias={}, {} -> {}, replayed={}", alias, source, target, replayed);
+            }
+
+            // 4. 删除旧索引(旧的同名物理索引已在切换请求中删除)
+            if (!legacy && Boolean.TRUE.equals(deleteOldIndex)) {
+                elasticsearchClient.indices().delete(d -> d.index(source));
+            }
+
+            long count = elasticsearchClient.count(c -> c.index(target)).count();
+            log.info("索引 reindex 完成: alias={}, {} -> {}, shards={}, docs={}, took={}ms",
+                alias, source, target, spec.shards(), count, System.currentTimeMillis() - start);
+            return target;
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new BusinessException("索引 reindex 失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 服务端 _reindex(异步任务 + 轮询), since 非空时只复制该时间之后写入的文档
+     */
+    private void copy(String source, String target, IndexSpec spec, Long since) throws Exception {
+        String taskId = elasticsearchClient.reindex(r -> {
+            r.source(s -> {
+                s.index(source);
+                if (since != null) {
+                    s.query(spec.changedSince().apply(since));
+                }
+                return s;
+            })
+                .dest(d -> d.index(target).opType(OpType.Index))
+                .conflicts(Conflicts.Proceed)
+                .waitForCompletion(false);
+            if (spec.routingScript() != null) {
+                r.script(spec.routingScript());
+            }
+            return r;
+        }).task();
+
+        while (true) {
+            GetTasksResponse task = elasticsearchClient.tasks().get(g -> g.taskId(taskId));
+            if (task.completed()) {
+                if (task.error() != null) {
+                    throw new BusinessException("reindex 任务失败: " + task.error().reason());
+                }
+                return;
+            }
+            Thread.sleep(TASK_POLL_INTERVAL_MS);
+        }
+    }
+
+    private void putDynamicSettings(String index, String replicas, String refreshInterval) throws Exception {
+        elasticsearchClient.indices().putSettings(p -> p
+            .index(index)
+            .allowNoIndices(true)
+            .ignoreUnavailable(true)
+            .settings(s -> s
+                .numberOfReplicas(replicas)
+                .refreshInterval(t -> t.time(refreshInterval)))
+        );
+    }
+
+    /**
+     * 别名当前指向的物理索引分片数
+     */
+    private Integer currentShards(String alias) throws Exception {
+        Map<String, IndexState> current = elasticsearchClient.indices().get(g -> g
+            .index(alias)
+            .ignoreUnavailable(true)
+            .allowNoIndices(true)
+        ).result();
+        if (current.size() != 1) {
+            return null;
+        }
+        IndexSettings settings = current.values().iterator().next().settings();
+        if (settings == null) {
+            return null;
+        }
+        String shards = settings.index() != null ? settings.index().numberOfShards() : settings.numberOfShards();
+        return shards != null ? Integer.valueOf(shards) : null;
+    }
+
+    /**
+     * 别名对应的索引规格
+     */
+    private IndexSpec spec(String alias) {
+        if (DocumentESService.INDEX_NAME.equals(alias)) {
+            FullTextIndexProperties.IndexSettings settings = fullTextIndexProperties.getDocuments();
+            return new IndexSpec(settings.getNumberOfShards(), settings.getNumberOfReplicas(),
+                settings.getRefreshInterval(), since -> dateRange("updateTime", since), null);
+        }
+        if (ChunkESService.INDEX_NAME.equals(alias)) {
+            FullTextIndexProperties.IndexSettings settings = fullTextIndexProperties.getChunks();
+            return new IndexSpec(settings.getNumberOfShards(), settings.getNumberOfReplicas(),
+                settings.getRefreshInterval(), since -> longRange("timestamp", since), null);
+        }
+        if (vectorIndexProperties.getIndexName().equals(alias)) {
+            boolean routing = Boolean.TRUE.equals(vectorIndexProperties.getRoutingEnabled());
+            return new IndexSpec(vectorIndexProperties.getNumberOfShards(), vectorIndexProperties.getNumberOfReplicas(),
+                vectorIndexProperties.getRefreshInterval(), since -> longRange(VECTOR_WRITE_TIME_FIELD, since),
+                Script.of(s -> s.inline(i -> i
+                    .source(SHARED_ROUTING_SCRIPT)
+                    .params("routing", JsonData.of(routing)))));
+        }
+        if (alias.startsWith(vectorIndexProperties.tenantIndexPrefix())) {
+            return new IndexSpec(1, vectorIndexProperties.getNumberOfReplicas(),
+                vectorIndexProperties.getRefreshInterval(), since -> longRange(VECTOR_WRITE_TIME_FIELD, since),
+                Script.of(s -> s.inline(i -> i.source(CLEAR_ROUTING_SCRIPT))));
+        }
+        throw new BusinessException("不支持的索引: " + alias);
+    }
+
+    private Query longRange(String field, long since) {
+        return Query.of(q -> q.range(r -> r.number(n -> n.field(field).gte((double) since))));
+    }
+
+    /**
+     * DocumentES 的时间字段为不带时区的 LocalDateTime, 按相同格式比较
+     */
+    private Query dateRange(String field, long since) {
+        String value = LocalDateTime.ofInstant(Instant.ofEpochMilli(since), ZoneId.systemDefault()).toString();
+        return Query.of(q -> q.range(r -> r.date(d -> d.field(field).gte(value))));
+    }
+
+    private ReentrantReadWriteLock writeGate(String alias) {
+        return writeGates.computeIfAbsent(gateKey(alias), k -> new ReentrantReadWriteLock(true));
+    }
+
+    /**
+     * 闸门键: 向量共享索引和独享索引(名称以共享索引名为前缀)共用一个闸门
+     */
+    private String gateKey(String alias) {
+        String vectorIndex = vectorIndexProperties.getIndexName();
+        return alias.startsWith(vectorIndex) ? vectorIndex : alias;
+    }
+
+    /**
+     * 复制窗口: 按提交顺序记录删除和更新
+     */
+    private final class MutationLog implements CopyWindow {
+
+        private final String key;
+        private final List<IndexWrite<?>> mutations = new ArrayList<>();
+
+        private MutationLog(String key) {
+            this.key = key;
+        }
+
+        private synchronized void record(IndexWrite<?> mutation) {
+            mutations.add(mutation);
+        }
+
+        @Override
+        public int replay(String target) throws Exception {
+            List<IndexWrite<?>> snapshot;
+            synchronized (this) {
+                snapshot = new ArrayList<>(mutations);
+                mutations.clear();
+            }
+            for (IndexWrite<?> mutation : snapshot) {
+                mutation.apply(target);
+            }
+            // 按 ID 删除等操作经批量写入器异步执行, 等其落盘后再切换
+            if (!snapshot.isEmpty() && !bulkWriter.flushAndWait()) {
+                throw new BusinessException("回放复制窗口内的操作超时: " + target);
+            }
+            return snapshot.size();
+        }
+
+        @Override
+        public void close() {
+            Set<MutationLog> windows = copyWindows.get(key);
+            if (windows != null) {
+                windows.remove(this);
+            }
+        }
+    }
+
+    /**
+     * 索引规格
+     *
+     * @param shards 分片数
+     * @param replicas 副本数
+     * @param refreshInterval 刷新间隔
+     * @param changedSince 增量查询(写入时间 >= since)
+     * @param routingScript reindex 时重新计算 _routing 的脚本(可为空)
+     */
+    private record IndexSpec(int shards, int replicas, String refreshInterval,
+                             Function<Long, Query> changedSince, Script routingScript) {
+    }
+}
@@ -13,7 +13,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 /**
  * 智能文档分块服务实现
@@ -41,7 +40,7 @@ public class SmartChunkingServiceImpl implements SmartChunkingService {
         // 决策: 有章节信息 → 章节分块, 否则 → 语义分块
         if (metadata != null && metadata.getSections() != null && !metadata.getSections().isEmpty()) {
             log.info("检测到章节结构,使用章节分块策略: sections={}", metadata.getSections().size());
-            return chunkBySections(metadata, overlapSize);
+            return chunkBySections(content, metadata, overlapSize);
         } else {
             log.info("未检测到章节结构,使用语义分块策略");
             return semanticChunk(content, chunkSize, overlapSize);
@@ -49,7 +48,7 @@ public class SmartChunkingServiceImpl implements SmartChunkingService {
     }
     
     @Override
-    public List<ChunkResult> chunkBySections(DocumentMetadataVO metadata, int overlapSize) {
+    public List<ChunkResult> chunkBySections(String content, DocumentMetadataVO metadata, int overlapSize) {
         if (metadata == null || metadata.getSections() == null || metadata.getSections().isEmpty()) {
             log.warn("章节信息为空,无法进行章节分块");
             return new ArrayList<>();
@@ -58,36 +57,45 @@ public class SmartChunkingServiceImpl implements SmartChunkingService {
         List<ChunkResult> results = new ArrayList<>();
         List<DocumentMetadataVO.Section> sections = metadata.getSections();
         
+        // 1. 一次性拼接所有章节为共享源文本: 标题(带层级标记) + 内容
+        //    各分块只记录自身在源文本中的偏移量,不再各自复制字符串
+        StringBuilder sourceBuilder = new StringBuilder();
+        int[] starts = new int[sections.size()];
+        int[] ends = new int[sections.size()];
+        
         for (int i = 0; i < sections.size(); i++) {
             DocumentMetadataVO.Section section = sections.get(i);
-            
-            // 构建分块内容: 标题 + 内容
-            StringBuilder chunkContent = new StringBuilder();
-            
-            // 添加标题(带层级标记)
-            String titlePrefix = "#".repeat(section.getLevel()) + " ";
-            chunkContent.append(titlePrefix).append(section.getTitle()).append("\n\n");
-            chunkContent.append(section.getContent());
-            
-            // 添加 overlap: 包含下一章节的开头部分
-            if (i < sections.size() - 1 && overlapSize > 0) {
-                DocumentMetadataVO.Section nextSection = sections.get(i + 1);
-                String nextContent = nextSection.getContent();
-                
-                // 计算 overlap 字符数(简化: overlapSize * 4)
-                int overlapChars = overlapSize * 4;
-                if (nextContent.length() > overlapChars) {
-                    chunkContent.append("\n\n--- 下一章节预览 ---\n");
-                    chunkContent.append(nextContent.substring(0, overlapChars)).append("...");
+            if (i > 0) {
+                sourceBuilder.append("\n\n");
+            }
+            starts[i] = sourceBuilder.length();
+            int level = section.getLevel() != null ? section.getLevel() : 1;
+            sourceBuilder.append("#".repeat(level)).append(' ')
+                .append(StrUtil.nullToEmpty(section.getTitle())).append("\n\n")
+                .append(StrUtil.nullToEmpty(section.getContent()));
+            ends[i] = sourceBuilder.length();
+        }
+        String source = sourceBuilder.toString();
+        
+        // 2. 生成视图分块, overlap 仅记录下一章节开头的偏移量;
+        //    文档偏移量按章节正文在持久化全文中顺序查找, 找不到则不记录
+        int overlapChars = overlapSize * 4;  // token -> chars
+        int cursor = 0;
+        for (int i = 0; i < sections.size(); i++) {
+            DocumentMetadataVO.Section section = sections.get(i);
+            ChunkResult chunk = ChunkResult.view(source, "section", starts[i], ends[i]);
+            chunk.setDocumentRange(-1, -1);
+            String sectionContent = section.getContent();
+            if (StrUtil.isNotEmpty(content) && StrUtil.isNotBlank(sectionContent)) {
+                int found = content.indexOf(sectionContent, cursor);
+                if (found >= 0) {
+                    chunk.setDocumentRange(found, found + sectionContent.length());
+                    cursor = found + sectionContent.length();
                 }
             }
-            
-            ChunkResult chunk = new ChunkResult(
-                chunkContent.toString(),
-                "section",
-                section.getStartPosition(),
-                section.getEndPosition()
-            );
+            if (i < sections.size() - 1 && overlapChars > 0) {
+                chunk.setOverlap(starts[i + 1], Math.min(starts[i + 1] + overlapChars, ends[i + 1]));
+            }
             chunk.setSectionTitle(section.getTitle());
             chunk.setSectionLevel(section.getLevel());
             
@@ -105,59 +113,45 @@ public class SmartChunkingServiceImpl implements SmartChunkingService {
         }
         
         try {
-            // 1. 分割为句子
-            List<String> sentences = splitIntoSentences(content);
-            log.info("句子分割完成: sentences={}", sentences.size());
+            // 1. 分割为句子(记录句子在原文中的偏移量)
+            List<int[]> sentenceSpans = splitIntoSentences(content);
+            log.info("句子分割完成: sentences={}", sentenceSpans.size());
             
-            if (sentences.size() <= 1) {
+            if (sentenceSpans.size() <= 1) {
                 // 只有一句话,直接返回
-                ChunkResult chunk = new ChunkResult(content, "semantic", 0, content.length());
-                return List.of(chunk);
+                return List.of(ChunkResult.view(content, "semantic", 0, content.length()));
             }
             
-            // 2. 计算句子间的语义相似度
+            // 2. 计算句子间的语义相似度(嵌入时才物化句子文本)
+            List<String> sentences = new ArrayList<>(sentenceSpans.size());
+            for (int[] span : sentenceSpans) {
+                sentences.add(content.substring(span[0], span[1]));
+            }
             List<Double> similarities = computeSentenceSimilarities(sentences);
             
             // 3. 在相似度低的地方分块
             List<Integer> breakpoints = findBreakpoints(similarities, SEMANTIC_THRESHOLD);
             log.info("语义断裂点: count={}, positions={}", breakpoints.size(), breakpoints);
             
-            // 4. 根据断裂点生成分块
+            // 4. 根据断裂点生成分块: 分块为原文 [首句起点, 末句终点) 上的视图
             List<ChunkResult> results = new ArrayList<>();
-            int currentPosition = 0;
             int startIdx = 0;
             
             for (int breakIdx : breakpoints) {
-                // 合并 [startIdx, breakIdx] 的句子
-                String chunkContent = mergeSentences(sentences, startIdx, breakIdx + 1);
-                
-                ChunkResult chunk = new ChunkResult(
-                    chunkContent,
-                    "semantic",
-                    currentPosition,
-                    currentPosition + chunkContent.length()
-                );
-                results.add(chunk);
-                
-                currentPosition += chunkContent.length();
+                results.add(ChunkResult.view(content, "semantic",
+                    sentenceSpans.get(startIdx)[0], sentenceSpans.get(breakIdx)[1]));
                 startIdx = breakIdx + 1;
             }
             
             // 添加最后一个分块
-            if (startIdx < sentences.size()) {
-                String chunkContent = mergeSentences(sentences, startIdx, sentences.size());
-                ChunkResult chunk = new ChunkResult(
-                    chunkContent,
-                    "semantic",
-                    currentPosition,
-                    currentPosition + chunkContent.length()
-                );
-                results.add(chunk);
+            if (startIdx < sentenceSpans.size()) {
+                results.add(ChunkResult.view(content, "semantic",
+                    sentenceSpans.get(startIdx)[0], sentenceSpans.get(sentenceSpans.size() - 1)[1]));
             }
             
-            // 5. 添加 overlap
+            // 5. 记录 overlap 偏移量
             if (overlapSize > 0) {
-                results = addOverlap(results, overlapSize);
+                addOverlap(results, overlapSize);
             }
             
             log.info("语义分块完成: sentences={}, chunks={}", sentences.size(), results.size());
@@ -171,29 +165,40 @@ public class SmartChunkingServiceImpl implements SmartChunkingService {
     
     /**
      * 分割为句子
+     * 
+     * @return 每个句子在原文中的 [start, end) 偏移量(已去除首尾空白)
      */
-    private List<String> splitIntoSentences(String content) {
-        List<String> sentences = new ArrayList<>();
+    private List<int[]> splitIntoSentences(String content) {
+        List<int[]> spans = new ArrayList<>();
         Matcher matcher = SENTENCE_PATTERN.matcher(content);
         
         int lastEnd = 0;
         while (matcher.find()) {
-            String sentence = content.substring(lastEnd, matcher.end()).trim();
-            if (StrUtil.isNotBlank(sentence)) {
-                sentences.add(sentence);
-            }
+            addTrimmedSpan(content, lastEnd, matcher.end(), spans);
             lastEnd = matcher.end();
         }
         
         // 添加最后一句
         if (lastEnd < content.length()) {
-            String lastSentence = content.substring(lastEnd).trim();
-            if (StrUtil.isNotBlank(lastSentence)) {
-                sentences.add(lastSentence);
-            }
+            addTrimmedSpan(content, lastEnd, content.length(), spans);
         }
         
-        return sentences;
+        return spans;
+    }
+    
+    /**
+     * 去除首尾空白后记录非空句子区间
+     */
+    private void addTrimmedSpan(String content, int start, int end, List<int[]> spans) {
+        while (start < end && Character.isWhitespace(content.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(content.charAt(end - 1))) {
+            end--;
+        }
+        if (start < end) {
+            spans.add(new int[]{start, end});
+        }
     }
     
     /**
@@ -287,45 +292,19 @@ public class SmartChunkingServiceImpl implements SmartChunkingService {
         return breakpoints;
     }
     
-    /**
-     * 合并句子
-     */
-    private String mergeSentences(List<String> sentences, int start, int end) {
-        return sentences.subList(start, end).stream()
-            .collect(Collectors.joining(" "));
-    }
-    
     /**
      * 添加 overlap
+     * 
+     * <p>只记录下一个块开头在原文中的偏移量,不把重叠文本拼进分块内容,
+     * 避免重复嵌入、重复入库以及在 LLM 提示词中出现两次。</p>
      */
-    private List<ChunkResult> addOverlap(List<ChunkResult> chunks, int overlapSize) {
-        if (chunks.size() <= 1) {
-            return chunks;
+    private void addOverlap(List<ChunkResult> chunks, int overlapSize) {
+        int overlapChars = overlapSize * 4;  // token -> chars
+        for (int i = 0; i < chunks.size() - 1; i++) {
+            ChunkResult nextChunk = chunks.get(i + 1);
+            chunks.get(i).setOverlap(nextChunk.getStartPosition(),
+                Math.min(nextChunk.getStartPosition() + overlapChars, nextChunk.getEndPosition()));
         }
-        
-        List<ChunkResult> withOverlap = new ArrayList<>();
-        
-        for (int i = 0; i < chunks.size(); i++) {
-            ChunkResult chunk = chunks.get(i);
-            StringBuilder newContent = new StringBuilder(chunk.getContent());
-            
-            // 添加下一个块的开头作为 overlap
-            if (i < chunks.size() - 1) {
-                ChunkResult nextChunk = chunks.get(i + 1);
-                String nextContent = nextChunk.getContent();
-                
-                int overlapChars = overlapSize * 4;  // token -> chars
-                if (nextContent.length() > overlapChars) {
-                    newContent.append("\n\n--- overlap ---\n");
-                    newContent.append(nextContent.substring(0, overlapChars));
-                }
-            }
-            
-            chunk.setContent(newContent.toString());
-            withOverlap.add(chunk);
-        }
-        
-        return withOverlap;
     }
     
     /**
@@ -333,18 +312,18 @@ public class SmartChunkingServiceImpl implements SmartChunkingService {
      */
     private List<ChunkResult> fallbackChunk(String content, int chunkSize, int overlapSize) {
         List<ChunkResult> results = new ArrayList<>();
-        int chunkChars = chunkSize * 4;  // token -> chars
-        int overlapChars = overlapSize * 4;
+        int chunkChars = Math.max(1, chunkSize * 4);  // token -> chars
+        int overlapChars = Math.max(0, overlapSize * 4);
         
         int start = 0;
         while (start < content.length()) {
             int end = Math.min(start + chunkChars, content.length());
-            String chunkContent = content.substring(start, end);
             
-            ChunkResult chunk = new ChunkResult(chunkContent, "fallback", start, end);
+            ChunkResult chunk = ChunkResult.view(content, "fallback", start, end);
+            chunk.setOverlap(end, Math.min(end + overlapChars, content.length()));
             results.add(chunk);
             
-            start += (chunkChars - overlapChars);
+            start = end;
         }
         
         log.info("降级分块完成: chunks={}", results.size());
@@ -1,25 +1,22 @@
 package com.ican.service.impl;
 
 import cn.dev33.satoken.stp.StpUtil;
-import cn.hutool.core.codec.Base62;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.ican.mapper.DocumentChunkMapper;
 import com.ican.mapper.TeachingPlanMapper;
-import com.ican.model.entity.DocumentChunkDO;
 import com.ican.model.entity.TeachingPlanDO;
 import com.ican.model.vo.CitationVO;
 import com.ican.model.vo.RagAnswerVO;
 import com.ican.model.vo.TeachingPlanListVO;
 import com.ican.model.vo.TeachingPlanVO;
+import com.ican.service.ChunkContextService;
+import com.ican.service.CitationService;
 import com.ican.service.TeachingPlanService;
-import com.ican.utils.NumberConversionUtils;
 import com.ican.utils.StructuredOutputUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.ai.chat.client.ChatClient;
-import org.springframework.ai.chat.client.advisor.vectorstore.QuestionAnswerAdvisor;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
@@ -28,6 +25,7 @@ import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import top.continew.starter.core.exception.BusinessException;
+import com.ican.config.PrecomputedContextAdvisor;
 import com.ican.config.RAGConfig;
 
 import java.util.*;
@@ -46,7 +44,8 @@ import java.util.stream.Collectors;
 public class TeachingPlanServiceImpl implements TeachingPlanService {
 
     private final TeachingPlanMapper teachingPlanMapper;
-    private final DocumentChunkMapper documentChunkMapper;
+    private final CitationService citationService;
+    private final ChunkContextService chunkContextService;
     private final ChatClient ragChatClient;
     private final VectorStore vectorStore;
     private final ObjectMapper objectMapper = new ObjectMapper();
@@ -68,17 +67,14 @@ public class TeachingPlanServiceImpl implements TeachingPlanService {
         // 构建过滤表达式
         Filter.Expression filterExpression;
         if (documentIds != null && !documentIds.isEmpty()) {
-            String[] encodedDocIds = documentIds.stream()
-                    .map(id -> Base62.encode(String.valueOf(id)))
-                    .toArray(String[]::new);
             filterExpression = new FilterExpressionBuilder()
                     .and(
-                            new FilterExpressionBuilder().eq("userId", Base62.encode(String.valueOf(userId))),
-                            new FilterExpressionBuilder().in("documentId", (Object[]) encodedDocIds))
+                            new FilterExpressionBuilder().eq("userId", userId),
+                            new FilterExpressionBuilder().in("documentId", documentIds.toArray()))
                     .build();
         } else {
             filterExpression = new FilterExpressionBuilder().eq("userId",
-                    Base62.encode(String.valueOf(userId))).build();
+                    userId).build();
         }
 
         // 提取核心关键词
@@ -89,29 +85,21 @@ public class TeachingPlanServiceImpl implements TeachingPlanService {
         List<Document> retrievedDocs = performMultiQuerySearch(searchQueries, filterExpression, 10, 0.5);
         log.info("多查询检索完成: 共检索到 {} 个文档片段", retrievedDocs.size());
 
-        // 构建基础SearchRequest
-        SearchRequest baseRequest = SearchRequest.builder()
-                .query(topic)
-                .similarityThreshold(0.5)
-                .topK(ragConfig.getRetrieval().getTopK())
-                .filterExpression(filterExpression)
-                .build();
-
-        QuestionAnswerAdvisor qaAdvisor = QuestionAnswerAdvisor.builder(vectorStore)
-                .searchRequest(baseRequest)
+        // 多查询检索结果直接作为上下文注入，不再由顾问二次检索；
+        // 教学设计模板交给顾问, 课题/学段/学科与参考资料在同一次替换中填入
+        PrecomputedContextAdvisor contextAdvisor = PrecomputedContextAdvisor.builder(chunkContextService.withOverlap(retrievedDocs))
+                .promptTemplate(teachingPlanPromptTemplate)
+                .param("topic", topic)
+                .param("grade", grade)
+                .param("subject", subject)
                 .build();
 
         try {
-            String userPrompt = teachingPlanPromptTemplate
-                    .replace("{topic}", topic)
-                    .replace("{grade}", grade)
-                    .replace("{subject}", subject);
-
             log.info("教学设计生成 - 开始调用LLM");
             String rawResponse = ragChatClient.prompt()
-                    .advisors(qaAdvisor)
+                    .advisors(contextAdvisor)
                     .system("你是一位经验丰富的教学设计专家。请根据提供的参考资料和要求，生成完整详细的教学设计方案。必须严格按照指定的JSON格式返回，所有字段都必须填写完整，不要使用占位符或空数组。")
-                    .user(userPrompt)
+                    .user(topic)
                     .call()
                     .content();
 
@@ -126,7 +114,7 @@ public class TeachingPlanServiceImpl implements TeachingPlanService {
 
             teachingPlan.validate();
 
-            List<CitationVO> citations = buildCitations(retrievedDocs, topic, 300);
+            List<CitationVO> citations = citationService.buildCitations(retrievedDocs, topic, 300);
             log.info("教学设计生成完成: topic={}, citations={}", topic, citations.size());
 
             return RagAnswerVO.<TeachingPlanVO>builder()
@@ -377,71 +365,4 @@ public class TeachingPlanServiceImpl implements TeachingPlanService {
         return result;
     }
 
-    /**
-     * 构建引用列表 - 前端高亮方案
-     */
-    private List<CitationVO> buildCitations(List<Document> docs, String query, int maxLen) {
-        if (docs == null || docs.isEmpty()) {
-            return Collections.emptyList();
-        }
-        
-        // 提取关键词列表(前端用于高亮)
-        List<String> keywords = query == null || query.isBlank() 
-            ? List.of() 
-            : Arrays.stream(query.trim().split("\\s+"))
-                .filter(kw -> !kw.isBlank())
-                .toList();
-        
-        return docs.stream().map(d -> {
-            Long documentId = NumberConversionUtils.toLong(String.valueOf(d.getMetadata().get("documentId")));
-            Integer chunkIndex = NumberConversionUtils.toInteger(String.valueOf(d.getMetadata().get("chunkIndex")));
-            Double score = d.getScore();
-            String title = d.getMetadata().getOrDefault("title", "未知文档").toString();
-            String text = d.getText();
-            if (text != null && text.length() > maxLen) {
-                text = text.substring(0, maxLen) + "...";
-            }
-
-            Long chunkId = null;
-            String position = null;
-            String metadataJson = null;
-
-            try {
-                if (documentId != null && chunkIndex != null) {
-                    DocumentChunkDO chunk = documentChunkMapper.selectOne(
-                            new LambdaQueryWrapper<DocumentChunkDO>()
-                                    .eq(DocumentChunkDO::getDocumentId, documentId)
-                                    .eq(DocumentChunkDO::getChunkIndex, chunkIndex)
-                                    .last("limit 1"));
-                    if (chunk != null) {
-                        chunkId = chunk.getId();
-                        position = "第 " + (chunkIndex + 1) + " 段";
-                    }
-                }
-
-                if (!d.getMetadata().isEmpty()) {
-                    try {
-                        metadataJson = objectMapper.writeValueAsString(d.getMetadata());
-                    } catch (Exception ignored) {
-                        metadataJson = d.getMetadata().toString();
-                    }
-                }
-            } catch (Exception e) {
-                log.trace("查询chunkId失败", e);
-            }
-
-            return CitationVO.builder()
-                    .documentId(documentId)
-                    .title(title)
-                    .chunkId(chunkId)
-                    .chunkIndex(chunkIndex)
-                    .score(score)
-                    .snippet(text)
-                    .keywords(keywords)  // 提供给前端用于高亮
-                    .position(position)
-                    .metadata(metadataJson)
-                    .build();
-        }).toList();
-    }
-
 }
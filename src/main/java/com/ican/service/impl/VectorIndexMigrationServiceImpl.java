@@ -0,0 +1,301 @@
+package com.ican.service.impl;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.mapping.Property;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.BulkRequest;
+import co.elastic.clients.elasticsearch.core.BulkResponse;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.indices.IndexState;
+import com.ican.config.MetadataKeys;
+import com.ican.config.VectorIndexProperties;
+import com.ican.repository.TenantRoutingVectorStore;
+import com.ican.repository.TenantRoutingVectorStore.VectorChunk;
+import com.ican.service.SearchIndexService;
+import com.ican.service.VectorIndexMigrationService;
+import com.ican.utils.NumberConversionUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.stereotype.Service;
+import top.continew.starter.core.exception.BusinessException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 向量索引迁移服务实现
+ * 
+ * <p>迁移步骤：</p>
+ * <ol>
+ *   <li>打开复制窗口(记录之后的向量删除和 by-query 更新), 按索引模板创建新索引 {index}-v{时间戳}</li>
+ *   <li>PIT + search_after 分批读取旧索引(含向量), 将 userId/documentId/kbId 解码为数值后批量写入</li>
+ *   <li>按写入时间 metadata.indexedAt 追平复制期间的写入, 不停写</li>
+ *   <li>停止向量写入: 再追平一轮, 回放复制窗口内的删除和更新, 原子地删除旧索引并将原索引名作为别名指向新索引</li>
+ * </ol>
+ * 
+ * <p>迁移前写入的分块没有 indexedAt, 只由全量复制覆盖; 复制开始后的写入都带写入时间, 不依赖分块构建时间。</p>
+ * 
+ * <p>启动时默认在后台执行; 迁移完成前 {@link TenantRoutingVectorStore} 保持旧数据兼容
+ * (ID 过滤同时匹配 Base62 编码值, 检索不指定 routing), 旧向量在迁移期间仍可检索。</p>
+ * 
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VectorIndexMigrationServiceImpl implements VectorIndexMigrationService, CommandLineRunner {
+    
+    private static final String PIT_KEEP_ALIVE = "5m";
+    
+    /**
+     * 需要从 Base62 字符串解码为数值的元数据字段
+     */
+    private static final List<String> ID_FIELDS = List.of(
+        MetadataKeys.USER_ID, MetadataKeys.DOCUMENT_ID, MetadataKeys.KB_ID);
+    
+    private final ElasticsearchClient elasticsearchClient;
+    private final TenantRoutingVectorStore tenantRoutingVectorStore;
+    private final VectorIndexProperties properties;
+    private final SearchIndexService searchIndexService;
+    
+    /**
+     * 追平增量时向前多取的时间(毫秒), 覆盖写入时间戳与服务器时钟的偏差
+     */
+    @Value("${search.index.catch-up-margin-ms:60000}")
+    private Long catchUpMarginMs;
+    
+    @Override
+    public void run(String... args) {
+        boolean pending;
+        try {
+            pending = hasPendingIndex();
+        } catch (Exception e) {
+            log.warn("检查向量索引迁移状态失败, 保持旧数据兼容: {}", e.getMessage());
+            return;
+        }
+        if (!pending) {
+            tenantRoutingVectorStore.setLegacyIdFallback(false);
+            return;
+        }
+        if (!Boolean.TRUE.equals(properties.getMigrateOnStartup())) {
+            log.warn("存在未迁移的向量索引且未开启启动迁移, 保持旧数据兼容(检索不使用 routing)");
+            return;
+        }
+        
+        // 后台迁移, 不阻塞启动; 完成前旧数据通过兼容过滤仍可检索
+        Thread thread = new Thread(() -> {
+            try {
+                Map<String, Long> result = migrateAll();
+                tenantRoutingVectorStore.setLegacyIdFallback(false);
+                log.info("向量索引迁移完成: {}", result);
+            } catch (Exception e) {
+                log.error("向量索引迁移失败, 保持旧数据兼容", e);
+            }
+        }, "vector-index-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * 是否存在尚未迁移的向量索引
+     */
+    private boolean hasPendingIndex() throws Exception {
+        List<String> indices = new ArrayList<>();
+        indices.add(properties.getIndexName());
+        for (Long userId : tenantRoutingVectorStore.getDedicatedTenants()) {
+            indices.add(properties.tenantIndexName(userId));
+        }
+        for (String indexName : indices) {
+            Map<String, IndexState> existing = elasticsearchClient.indices().get(g -> g
+                .index(indexName)
+                .ignoreUnavailable(true)
+                .allowNoIndices(true)
+            ).result();
+            for (IndexState state : existing.values()) {
+                if (!isMigrated(state)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    public Map<String, Long> migrateAll() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put(properties.getIndexName(), migrate(properties.getIndexName(), true));
+        for (Long userId : tenantRoutingVectorStore.getDedicatedTenants()) {
+            String index = properties.tenantIndexName(userId);
+            result.put(index, migrate(index, false));
+        }
+        return result;
+    }
+    
+    @Override
+    public long migrate(String indexName, boolean shared) {
+        try {
+            Map<String, IndexState> existing = elasticsearchClient.indices().get(g -> g
+                .index(indexName)
+                .ignoreUnavailable(true)
+                .allowNoIndices(true)
+            ).result();
+            if (existing.isEmpty()) {
+                return 0;
+            }
+            
+            Map.Entry<String, IndexState> current = existing.entrySet().iterator().next();
+            String source = current.getKey();
+            if (isMigrated(current.getValue())) {
+                log.info("向量索引已是新映射, 跳过迁移: index={}", source);
+                return 0;
+            }
+            
+            long start = System.currentTimeMillis();
+            String target = indexName + "-v" + start;
+            long copied;
+            long caughtUp;
+            try (SearchIndexService.CopyWindow window = searchIndexService.openCopyWindow(indexName)) {
+                searchIndexService.createIndex(target, shared ? properties.getNumberOfShards() : 1);
+                
+                // 1. 全量复制
+                copied = copyDocuments(source, target, shared, null);
+                
+                // 2. 追平复制期间的写入(同一分块覆盖写入), 不停写
+                long catchUpStart = System.currentTimeMillis();
+                long firstPass = copyDocuments(source, target, shared, start - catchUpMarginMs);
+                
+                // 3. 停写: 追平最后一轮, 回放删除/更新, 原子切换(删除旧索引, 原名作为别名指向新索引)
+                caughtUp = firstPass + searchIndexService.blockWrites(indexName, () -> {
+                    long lastPass = copyDocuments(source, target, shared, catchUpStart - catchUpMarginMs);
+                    int replayed = window.replay(target);
+                    elasticsearchClient.indices().refresh(r -> r.index(target));
+                    elasticsearchClient.indices().updateAliases(u -> u
+                        .actions(a -> a.removeIndex(r -> r.index(source)))
+                        .actions(a -> a.add(ad -> ad.index(target).alias(indexName)))
+                    );
+                    log.info("向量索引已切换: {} -> {}, lastPass={}, replayed={}", source, target, lastPass, replayed);
+                    return lastPass;
+                });
+            }
+            
+            log.info("向量索引迁移完成: {} -> {}, alias={}, copied={}, caughtUp={}, took={}ms",
+                source, target, indexName, copied, caughtUp, System.currentTimeMillis() - start);
+            return copied;
+        } catch (BusinessException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("向量索引迁移失败: index={}", indexName, e);
+            throw new BusinessException("向量索引迁移失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 分批复制分块, 解码 ID 元数据并按 userId 重新路由
+     * 
+     * @param since 非空时只复制写入时间(metadata.indexedAt)不早于该时间的分块
+     */
+    private long copyDocuments(String source, String target, boolean shared, Long since) throws Exception {
+        Query query = since == null ? null
+            : Query.of(q -> q.range(r -> r.number(n -> n
+                .field("metadata." + MetadataKeys.INDEXED_AT)
+                .gte((double) since))));
+        String pitId = elasticsearchClient.openPointInTime(o -> o
+            .index(source)
+            .keepAlive(k -> k.time(PIT_KEEP_ALIVE))
+        ).id();
+        
+        long copied = 0;
+        List<FieldValue> searchAfter = null;
+        try {
+            while (true) {
+                final String currentPit = pitId;
+                final List<FieldValue> after = searchAfter;
+                SearchResponse<VectorChunk> response = elasticsearchClient.search(s -> {
+                    s.size(properties.getMigrationBatchSize())
+                        .pit(p -> p.id(currentPit).keepAlive(k -> k.time(PIT_KEEP_ALIVE)))
+                        .sort(so -> so.field(f -> f.field("_shard_doc")));
+                    if (query != null) {
+                        s.query(query);
+                    }
+                    if (after != null) {
+                        s.searchAfter(after);
+                    }
+                    return s;
+                }, VectorChunk.class);
+                
+                List<Hit<VectorChunk>> hits = response.hits().hits();
+                if (hits.isEmpty()) {
+                    break;
+                }
+                bulkWrite(target, hits, shared);
+                copied += hits.size();
+                
+                pitId = response.pitId() != null ? response.pitId() : pitId;
+                searchAfter = hits.get(hits.size() - 1).sort();
+                log.info("向量索引迁移进度: {} -> {}, copied={}", source, target, copied);
+            }
+        } finally {
+            final String finalPit = pitId;
+            elasticsearchClient.closePointInTime(c -> c.id(finalPit));
+        }
+        return copied;
+    }
+    
+    private void bulkWrite(String target, List<Hit<VectorChunk>> hits, boolean shared) throws Exception {
+        BulkRequest.Builder bulk = new BulkRequest.Builder();
+        for (Hit<VectorChunk> hit : hits) {
+            VectorChunk chunk = hit.source();
+            if (chunk == null) {
+                continue;
+            }
+            Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
+            for (String field : ID_FIELDS) {
+                Object value = metadata.get(field);
+                if (value != null && !(value instanceof Number)) {
+                    metadata.put(field, NumberConversionUtils.toLong(String.valueOf(value)));
+                }
+            }
+            chunk.setMetadata(metadata);
+            
+            Object userId = metadata.get(MetadataKeys.USER_ID);
+            String routing = shared && Boolean.TRUE.equals(properties.getRoutingEnabled()) && userId != null
+                ? String.valueOf(userId)
+                : null;
+            bulk.operations(op -> op.index(idx -> {
+                idx.index(target).id(hit.id()).document(chunk);
+                if (routing != null) {
+                    idx.routing(routing);
+                }
+                return idx;
+            }));
+        }
+        
+        BulkResponse response = elasticsearchClient.bulk(bulk.build());
+        if (response.errors()) {
+            long failed = response.items().stream().filter(item -> item.error() != null).count();
+            throw new BusinessException("向量索引迁移写入失败: " + failed + " 条");
+        }
+    }
+    
+    /**
+     * metadata.userId 已映射为 keyword 即视为完成迁移
+     */
+    private boolean isMigrated(IndexState state) {
+        if (state.mappings() == null) {
+            return false;
+        }
+        Property metadata = state.mappings().properties().get("metadata");
+        if (metadata == null || !metadata.isObject()) {
+            return false;
+        }
+        Property userId = metadata.object().properties().get(MetadataKeys.USER_ID);
+        return userId != null && userId.isKeyword();
+    }
+}
@@ -0,0 +1,261 @@
+package com.ican.service.impl;
+
+import co.elastic.clients.elasticsearch.ElasticsearchClient;
+import co.elastic.clients.elasticsearch._types.Conflicts;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.DeleteByQueryResponse;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.ican.config.VectorIndexProperties;
+import com.ican.mapper.DocumentChunkMapper;
+import com.ican.mapper.DocumentMapper;
+import com.ican.mapper.DocumentVectorMapper;
+import com.ican.model.entity.DocumentChunkDO;
+import com.ican.model.entity.DocumentDO;
+import com.ican.model.entity.DocumentVectorDO;
+import com.ican.model.vo.PurgeResultVO;
+import com.ican.repository.ElasticsearchBulkWriter;
+import com.ican.repository.TenantRoutingVectorStore;
+import com.ican.service.ChunkESService;
+import com.ican.service.CorpusVersionService;
+import com.ican.service.SearchIndexService;
+import com.ican.service.VectorPurgeService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import top.continew.starter.core.exception.BusinessException;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 索引清除服务实现
+ * 
+ * <p>直接在 ES 上执行 delete-by-query：</p>
+ * <ul>
+ *   <li>不需要嵌入调用(旧方案用空查询做相似度检索)</li>
+ *   <li>不受 topK=1000 限制，所有匹配分块都会被删除</li>
+ *   <li>命中结果不再回传到 JVM</li>
+ * </ul>
+ * 
+ * @author 席崇援
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VectorPurgeServiceImpl implements VectorPurgeService {
+    
+    private static final String FULLTEXT_INDEX_NAME = "ican_documents";
+    
+    private final ElasticsearchClient elasticsearchClient;
+    private final TenantRoutingVectorStore tenantRoutingVectorStore;
+    private final CorpusVersionService corpusVersionService;
+    private final SearchIndexService searchIndexService;
+    private final VectorIndexProperties vectorIndexProperties;
+    private final ElasticsearchBulkWriter bulkWriter;
+    private final DocumentMapper documentMapper;
+    private final DocumentVectorMapper documentVectorMapper;
+    private final DocumentChunkMapper documentChunkMapper;
+    
+    /**
+     * 匹配分块数超过该阈值时改为 ES 后台任务删除
+     */
+    @Value("${search.purge.async-threshold:5000}")
+    private Long asyncThreshold;
+    
+    @Override
+    public PurgeResultVO purge(Long userId, Long documentId, Long kbId) {
+        return purge(userId, documentId, kbId, true);
+    }
+    
+    /**
+     * 按条件清除索引
+     * 
+     * @param allowAsync 是否允许匹配数量超过阈值时改为 ES 后台任务删除
+     */
+    private PurgeResultVO purge(Long userId, Long documentId, Long kbId, boolean allowAsync) {
+        if (userId == null) {
+            throw new BusinessException("清除索引必须指定用户");
+        }
+        long startTime = System.currentTimeMillis();
+        
+        // 租户向量所在索引及 routing(删除覆盖共享索引和独享索引, 租户可能正在迁移)
+        String vectorIndexName = tenantRoutingVectorStore.resolveIndex(userId);
+        String routing = tenantRoutingVectorStore.resolveRouting(userId);
+        Query vectorQuery = buildVectorQuery(userId, documentId, kbId);
+        Query fulltextQuery = buildFulltextQuery(userId, documentId, kbId);
+        
+        // 1. 统计匹配数量，决定同步还是异步删除
+        Long vectorMatched = countVectors(vectorIndexName, routing, vectorQuery);
+        boolean async = allowAsync && vectorMatched != null && vectorMatched > asyncThreshold;
+        
+        PurgeResultVO.PurgeResultVOBuilder result = PurgeResultVO.builder()
+            .userId(userId)
+            .documentId(documentId)
+            .kbId(kbId)
+            .vectorMatched(vectorMatched)
+            .async(async);
+        
+        // 2. 向量索引 delete-by-query
+        try {
+            DeleteByQueryResponse response = deleteByQuery(vectorIndexProperties.getIndexName(), routing, vectorQuery, async);
+            result.vectorDeleted(response.deleted()).vectorTaskId(response.task());
+        } catch (Exception e) {
+            log.error("向量索引按条件删除失败: userId={}, documentId={}, kbId={}", userId, documentId, kbId, e);
+            throw new BusinessException("清除向量索引失败: " + e.getMessage());
+        }
+        
+        // 3. 全文索引 delete-by-query(失败不影响向量清除结果), 先等待在途的异步写入落盘
+        if (!bulkWriter.flushAndWait()) {
+            log.warn("等待全文索引写入完成超时, 仍执行清除: userId={}, documentId={}, kbId={}", userId, documentId, kbId);
+        }
+        try {
+            DeleteByQueryResponse response = deleteByQuery(FULLTEXT_INDEX_NAME, null, fulltextQuery, async);
+            result.fulltextDeleted(response.deleted()).fulltextTaskId(response.task());
+        } catch (Exception e) {
+            log.warn("全文索引按条件删除失败: userId={}, documentId={}, kbId={}, error={}",
+                userId, documentId, kbId, e.getMessage());
+        }
+        
+        // 4. 分块全文索引 delete-by-query
+        try {
+            deleteByQuery(ChunkESService.INDEX_NAME, null, buildChunkQuery(userId, documentId, kbId), async);
+        } catch (Exception e) {
+            log.warn("分块索引按条件删除失败: userId={}, documentId={}, kbId={}, error={}",
+                userId, documentId, kbId, e.getMessage());
+        }
+        
+        corpusVersionService.bump(userId, documentId, kbId);
+        
+        PurgeResultVO purgeResult = result.tookMs(System.currentTimeMillis() - startTime).build();
+        log.info("索引清除完成: userId={}, documentId={}, kbId={}, async={}, vectorMatched={}, vectorDeleted={}, fulltextDeleted={}, took={}ms",
+            userId, documentId, kbId, async, vectorMatched, purgeResult.getVectorDeleted(),
+            purgeResult.getFulltextDeleted(), purgeResult.getTookMs());
+        return purgeResult;
+    }
+    
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public PurgeResultVO purgeWithRecords(Long userId, Long documentId, Long kbId) {
+        // 同步删除: 后台删除任务仍在执行时重置文档, 立即重建的新向量会被该任务按 documentId 一并删除。
+        // 索引清除失败会直接抛出, 数据库记录保持不变
+        PurgeResultVO result = purge(userId, documentId, kbId, false);
+        
+        // 按同样的条件定位数据库中的文档(userId 为安全过滤)
+        List<Long> documentIds = documentMapper.selectList(new LambdaQueryWrapper<DocumentDO>()
+                .select(DocumentDO::getId)
+                .eq(DocumentDO::getUserId, userId)
+                .eq(documentId != null, DocumentDO::getId, documentId)
+                .eq(kbId != null, DocumentDO::getKbId, kbId))
+            .stream()
+            .map(DocumentDO::getId)
+            .toList();
+        if (documentIds.isEmpty()) {
+            result.setDocumentsReset(0);
+            return result;
+        }
+        
+        // 向量/分块映射随索引一起删除, 文档重置为待索引状态, 可通过重建索引恢复
+        documentVectorMapper.delete(new LambdaQueryWrapper<DocumentVectorDO>()
+            .in(DocumentVectorDO::getDocumentId, documentIds));
+        documentChunkMapper.delete(new LambdaQueryWrapper<DocumentChunkDO>()
+            .in(DocumentChunkDO::getDocumentId, documentIds));
+        int reset = documentMapper.update(null, new LambdaUpdateWrapper<DocumentDO>()
+            .in(DocumentDO::getId, documentIds)
+            .set(DocumentDO::getStatus, "pending")
+            .set(DocumentDO::getUpdateTime, LocalDateTime.now()));
+        result.setDocumentsReset(reset);
+        
+        log.info("索引清除后同步数据库记录: userId={}, documentId={}, kbId={}, documents={}",
+            userId, documentId, kbId, reset);
+        return result;
+    }
+    
+    /**
+     * 执行 delete-by-query(经写入闸门, reindex/迁移期间回放到新索引)
+     * 
+     * @param routing 租户 routing, 为空时访问全部分片
+     * @param async true 时不等待完成, ES 返回后台任务ID
+     */
+    private DeleteByQueryResponse deleteByQuery(String alias, String routing, Query query, boolean async) throws Exception {
+        return searchIndexService.mutate(alias, index -> elasticsearchClient.deleteByQuery(d -> {
+            d.index(tenantRoutingVectorStore.mutationTargets(index))
+                .query(query)
+                .conflicts(Conflicts.Proceed)
+                .ignoreUnavailable(true)
+                .allowNoIndices(true)
+                .refresh(!async)
+                .waitForCompletion(!async);
+            if (routing != null) {
+                d.routing(routing);
+            }
+            return d;
+        }));
+    }
+    
+    /**
+     * 统计向量索引中匹配的分块数量
+     */
+    private Long countVectors(String index, String routing, Query query) {
+        try {
+            return elasticsearchClient.count(c -> {
+                c.index(index).ignoreUnavailable(true).query(query);
+                if (routing != null) {
+                    c.routing(routing);
+                }
+                return c;
+            }).count();
+        } catch (Exception e) {
+            log.warn("统计待清除向量数量失败, 按同步方式删除: error={}", e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * 构建向量索引过滤条件(元数据存储在 metadata.* 下, 兼容期间 ID 同时匹配 Base62 编码值)
+     */
+    private Query buildVectorQuery(Long userId, Long documentId, Long kbId) {
+        BoolQuery.Builder bool = new BoolQuery.Builder();
+        bool.filter(tenantRoutingVectorStore.metadataIdQuery("userId", List.of(userId)));
+        if (documentId != null) {
+            bool.filter(tenantRoutingVectorStore.metadataIdQuery("documentId", List.of(documentId)));
+        }
+        if (kbId != null) {
+            bool.filter(tenantRoutingVectorStore.metadataIdQuery("kbId", List.of(kbId)));
+        }
+        return Query.of(q -> q.bool(bool.build()));
+    }
+    
+    /**
+     * 分块索引查询条件(ID 类字段为 keyword)
+     */
+    private Query buildChunkQuery(Long userId, Long documentId, Long kbId) {
+        BoolQuery.Builder bool = new BoolQuery.Builder();
+        bool.filter(f -> f.term(t -> t.field("userId").value(String.valueOf(userId))));
+        if (documentId != null) {
+            bool.filter(f -> f.term(t -> t.field("documentId").value(String.valueOf(documentId))));
+        }
+        if (kbId != null) {
+            bool.filter(f -> f.term(t -> t.field("kbId").value(String.valueOf(kbId))));
+        }
+        return Query.of(q -> q.bool(bool.build()));
+    }
+    
+    /**
+     * 构建全文索引过滤条件(ES _id 即文档ID)
+     */
+    private Query buildFulltextQuery(Long userId, Long documentId, Long kbId) {
+        BoolQuery.Builder bool = new BoolQuery.Builder();
+        bool.filter(f -> f.term(t -> t.field("userId").value(userId)));
+        if (documentId != null) {
+            bool.filter(f -> f.ids(i -> i.values(String.valueOf(documentId))));
+        }
+        if (kbId != null) {
+            bool.filter(f -> f.term(t -> t.field("kbId").value(kbId)));
+        }
+        return Query.of(q -> q.bool(bool.build()));
+    }
+}
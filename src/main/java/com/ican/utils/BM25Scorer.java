@@ -0,0 +1,160 @@
+package com.ican.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 候选集内的 BM25 评分工具类
+ *
+ * 功能：
+ * - CJK 感知分词: 连续的汉字/假名/谚文切成重叠二元组(单字成词时保留单字)，字母数字按词切分并转小写
+ * - 每个候选集只扫描一遍文档，建立查询词的倒排表(词 -> 各文档词频)，文档长度取真实词元数
+ * - 词频、文档频率、文档长度均使用基本类型数组，不做子串搜索
+ *
+ * 只为查询中出现的词分配编号，文档中其余词元仅计入长度，不占用内存。
+ *
+ * @author 席崇援
+ */
+public final class BM25Scorer {
+
+    /**
+     * 词频饱和参数
+     */
+    private static final double K1 = 1.2;
+
+    /**
+     * 文档长度归一化参数
+     */
+    private static final double B = 0.75;
+
+    private BM25Scorer() {
+    }
+
+    /**
+     * 对候选集计算 BM25 分数
+     *
+     * @param query      查询文本
+     * @param candidates 候选文档(id -> 内容)
+     * @return id -> BM25 分数(未命中任何查询词为 0)
+     */
+    public static <K> Map<K, Double> score(String query, Map<K, String> candidates) {
+        Map<K, Double> scores = new LinkedHashMap<>();
+        if (candidates.isEmpty()) {
+            return scores;
+        }
+
+        // 查询词表: 词 -> 编号
+        Map<String, Integer> terms = new HashMap<>();
+        for (String token : tokenize(query)) {
+            terms.putIfAbsent(token, terms.size());
+        }
+
+        int docCount = candidates.size();
+        int termCount = terms.size();
+        int[][] postings = new int[termCount][docCount];
+        int[] docFreq = new int[termCount];
+        int[] docLen = new int[docCount];
+        long totalLen = 0;
+
+        // 一遍扫描建立倒排表
+        List<K> ids = new ArrayList<>(candidates.keySet());
+        for (int d = 0; d < docCount; d++) {
+            int[] length = new int[1];
+            int doc = d;
+            forEachToken(candidates.get(ids.get(d)), token -> {
+                length[0]++;
+                Integer term = terms.get(token);
+                if (term != null && postings[term][doc]++ == 0) {
+                    docFreq[term]++;
+                }
+            });
+            docLen[d] = length[0];
+            totalLen += length[0];
+        }
+
+        double avgDocLen = Math.max(1.0, (double) totalLen / docCount);
+        double[] idf = new double[termCount];
+        for (int t = 0; t < termCount; t++) {
+            idf[t] = Math.log(1.0 + (docCount - docFreq[t] + 0.5) / (docFreq[t] + 0.5));
+        }
+
+        for (int d = 0; d < docCount; d++) {
+            double norm = K1 * (1 - B + B * docLen[d] / avgDocLen);
+            double score = 0.0;
+            for (int t = 0; t < termCount; t++) {
+                int tf = postings[t][d];
+                if (tf > 0) {
+                    score += idf[t] * tf * (K1 + 1) / (tf + norm);
+                }
+            }
+            scores.put(ids.get(d), score);
+        }
+        return scores;
+    }
+
+    /**
+     * 分词
+     *
+     * @param text 文本
+     * @return 词元列表(按出现顺序，可能重复)
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        forEachToken(text, tokens::add);
+        return tokens;
+    }
+
+    /**
+     * 逐个回调词元，避免为整篇文档构建词元列表
+     */
+    private static void forEachToken(String text, TokenConsumer consumer) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < length && isCjk(text.charAt(i))) {
+                    i++;
+                }
+                if (i - start == 1) {
+                    consumer.accept(String.valueOf(c));
+                } else {
+                    for (int j = start; j < i - 1; j++) {
+                        consumer.accept(text.substring(j, j + 2));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i)) && !isCjk(text.charAt(i))) {
+                    i++;
+                }
+                consumer.accept(text.substring(start, i).toLowerCase());
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isCjk(char c) {
+        if (c < 0x80) {
+            return false;
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+            || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA
+            || script == Character.UnicodeScript.HANGUL;
+    }
+
+    @FunctionalInterface
+    private interface TokenConsumer {
+        void accept(String token);
+    }
+}
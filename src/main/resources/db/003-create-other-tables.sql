@@ -38,10 +38,12 @@ CREATE TABLE IF NOT EXISTS `document_chunks` (
     `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `is_deleted` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否删除(0:否 1:是)',
     PRIMARY KEY (`id`) USING BTREE,
-    KEY `idx_document_id` (`document_id`) USING BTREE,
+    -- 引用构建按 (document_id, chunk_index) 批量回查分块ID; 同时覆盖按 document_id 的查询
+    KEY `idx_document_chunk` (`document_id`, `chunk_index`) USING BTREE,
     KEY `idx_chunk_index` (`chunk_index`) USING BTREE,
     KEY `idx_vector_id` (`vector_id`) USING BTREE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci COMMENT='文档块表';
+-- 已有库升级: 执行 004-upgrade-document-chunks-index.sql
 
 -- 文档向量映射表
 CREATE TABLE IF NOT EXISTS `document_vectors` (
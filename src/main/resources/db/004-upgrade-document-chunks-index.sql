@@ -0,0 +1,29 @@
+-- ============================
+-- SmartPaperAI 已有库升级: document_chunks 复合索引
+-- 引用构建按 (document_id, chunk_index) 批量回查分块ID, 新库由 003 建表时直接创建
+-- 可重复执行: 索引已存在/已删除时跳过
+-- ============================
+
+USE `ican`;
+
+-- 添加 (document_id, chunk_index) 复合索引
+SET @ddl = IF(
+    (SELECT COUNT(*) FROM information_schema.STATISTICS
+     WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'document_chunks' AND INDEX_NAME = 'idx_document_chunk') = 0,
+    'ALTER TABLE `document_chunks` ADD KEY `idx_document_chunk` (`document_id`, `chunk_index`) USING BTREE',
+    'DO 0'
+);
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 删除被复合索引覆盖的单列索引
+SET @ddl = IF(
+    (SELECT COUNT(*) FROM information_schema.STATISTICS
+     WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'document_chunks' AND INDEX_NAME = 'idx_document_id') > 0,
+    'ALTER TABLE `document_chunks` DROP KEY `idx_document_id`',
+    'DO 0'
+);
+PREPARE stmt FROM @ddl;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;